@@ -0,0 +1,232 @@
+package com.shaposhnyk.benchmarks;
+
+import com.shaposhnyk.NamedSource;
+import com.shaposhnyk.NamedSources;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+
+import static java.util.stream.Collectors.toList;
+
+/**
+ * Seeded generator of synthetic domain name corpora. The same settings always produce the same
+ * lines, so numbers of different implementations and runs can be compared.
+ *
+ * <p>Every line is derived from the seed and its index alone, a duplicate by deriving the line of
+ * an earlier index again, so lines are streamed w/o keeping a corpus in memory, see {@link
+ * #write(Path)}. Ordered corpora take a pass over all indexes per depth of names
+ */
+public final class CorpusGenerator {
+  /** Order in which names of a hierarchy appear in sources */
+  public enum Order {
+    PARENTS_FIRST,
+    CHILDREN_FIRST,
+    RANDOM
+  }
+
+  private static final String[] SYLLABLES = {
+    "www", "api", "mail", "dev", "db", "portal", "internal", "svc", "cdn", "auth", "ftp", "app",
+    "acme", "test", "prod", "edge"
+  };
+
+  private long seed = 42;
+  private int size = 10_000;
+  private int sources = 1;
+  private int topLevelLabels = 4;
+  private int fanOut = 16;
+  // weights of names having 1, 2, 3, ... labels below the top-level one
+  private double[] depthWeights = {0.15, 0.35, 0.25, 0.15, 0.1};
+  private double duplicateRatio = 0.05;
+  private Order order = Order.RANDOM;
+
+  public CorpusGenerator withSeed(long seed) {
+    this.seed = seed;
+    return this;
+  }
+
+  /** @param size number of generated lines, including duplicates */
+  public CorpusGenerator withSize(int size) {
+    this.size = size;
+    return this;
+  }
+
+  /** @param sources number of sources to spread the lines over */
+  public CorpusGenerator withSources(int sources) {
+    this.sources = sources;
+    return this;
+  }
+
+  public CorpusGenerator withTopLevelLabels(int topLevelLabels) {
+    this.topLevelLabels = topLevelLabels;
+    return this;
+  }
+
+  /** @param fanOut number of distinct labels at every level below the top-level one */
+  public CorpusGenerator withFanOut(int fanOut) {
+    this.fanOut = fanOut;
+    return this;
+  }
+
+  /** @param depthWeights relative weights of names with 1, 2, 3, ... labels below top-level one */
+  public CorpusGenerator withDepthWeights(double... depthWeights) {
+    this.depthWeights = depthWeights.clone();
+    return this;
+  }
+
+  /** @param duplicateRatio probability of a line to repeat one of the previous lines */
+  public CorpusGenerator withDuplicateRatio(double duplicateRatio) {
+    this.duplicateRatio = duplicateRatio;
+    return this;
+  }
+
+  public CorpusGenerator withOrder(Order order) {
+    this.order = order;
+    return this;
+  }
+
+  /** Receives generated lines one by one */
+  private interface LineConsumer {
+    void accept(int source, String name) throws IOException;
+  }
+
+  /** @return lines of every source */
+  public List<List<String>> generate() {
+    List<List<String>> lines = new ArrayList<>();
+    for (int s = 0; s < sources; s++) {
+      lines.add(new ArrayList<>(size / sources + 1));
+    }
+    try {
+      forEachLine((source, name) -> lines.get(source).add(name));
+    } catch (IOException e) {
+      throw new UncheckedIOException(e); // not thrown by the consumer
+    }
+    return lines;
+  }
+
+  /** @return in-memory sources named source0.txt, source1.txt, ... */
+  public List<NamedSource> namedSources() {
+    List<List<String>> lines = generate();
+    List<NamedSource> namedSources = new ArrayList<>();
+    for (int s = 0; s < lines.size(); s++) {
+      namedSources.add(NamedSources.of(Paths.get(sourceName(s)), lines.get(s)));
+    }
+    return namedSources;
+  }
+
+  /** @return all generated lines in order of sources */
+  public List<String> names() {
+    return generate().stream().flatMap(List::stream).collect(toList());
+  }
+
+  /** Writes every source into a file of the given directory, line by line */
+  public List<Path> write(Path directory) throws IOException {
+    Files.createDirectories(directory);
+    List<Path> files = new ArrayList<>();
+    List<BufferedWriter> writers = new ArrayList<>();
+    try {
+      for (int s = 0; s < sources; s++) {
+        Path file = directory.resolve(sourceName(s));
+        writers.add(Files.newBufferedWriter(file, StandardCharsets.UTF_8));
+        files.add(file);
+      }
+      forEachLine(
+          (source, name) -> {
+            BufferedWriter writer = writers.get(source);
+            writer.write(name);
+            writer.newLine();
+          });
+    } finally {
+      for (BufferedWriter writer : writers) {
+        writer.close();
+      }
+    }
+    return files;
+  }
+
+  /** Generates lines in the order of indexes, or depth by depth for ordered corpora */
+  private void forEachLine(LineConsumer consumer) throws IOException {
+    if (order == Order.RANDOM) {
+      for (int i = 0; i < size; i++) {
+        consumer.accept(sourceAt(i), nameAt(i));
+      }
+      return;
+    }
+
+    int minLabels = 2; // a top-level label and at least one below it
+    int maxLabels = depthWeights.length + 1;
+    for (int pass = 0; pass <= maxLabels - minLabels; pass++) {
+      int labels = order == Order.PARENTS_FIRST ? minLabels + pass : maxLabels - pass;
+      for (int i = 0; i < size; i++) {
+        String name = nameAt(i);
+        if (labelCount(name) == labels) {
+          consumer.accept(sourceAt(i), name);
+        }
+      }
+    }
+  }
+
+  /** @return source of a line, which is the first value drawn for its index */
+  private int sourceAt(int index) {
+    return randomAt(index).nextInt(sources);
+  }
+
+  /** @return name of a line, the one of an earlier line for duplicates */
+  private String nameAt(int index) {
+    while (true) {
+      SplittableRandom random = randomAt(index);
+      random.nextInt(sources); // see sourceAt()
+      if (index == 0 || random.nextDouble() >= duplicateRatio) {
+        return randomName(random);
+      }
+      index = random.nextInt(index);
+    }
+  }
+
+  private SplittableRandom randomAt(int index) {
+    return new SplittableRandom(seed * 0x9E3779B97F4A7C15L + index);
+  }
+
+  private String randomName(SplittableRandom random) {
+    StringBuilder name = new StringBuilder("tld").append(random.nextInt(topLevelLabels));
+    int depth = 1 + pickDepth(random);
+    for (int level = 0; level < depth; level++) {
+      int label = random.nextInt(fanOut);
+      name.insert(0, '.')
+          .insert(0, label / SYLLABLES.length)
+          .insert(0, SYLLABLES[label % SYLLABLES.length]);
+    }
+    return name.toString();
+  }
+
+  private int pickDepth(SplittableRandom random) {
+    double total = Arrays.stream(depthWeights).sum();
+    double point = random.nextDouble() * total;
+    for (int i = 0; i < depthWeights.length; i++) {
+      point -= depthWeights[i];
+      if (point < 0) {
+        return i;
+      }
+    }
+    return depthWeights.length - 1;
+  }
+
+  private static String sourceName(int index) {
+    return "source" + index + ".txt";
+  }
+
+  private static int labelCount(String name) {
+    int count = 1;
+    for (int i = 0; i < name.length(); i++) {
+      if (name.charAt(i) == '.') {
+        count++;
+      }
+    }
+    return count;
+  }
+}
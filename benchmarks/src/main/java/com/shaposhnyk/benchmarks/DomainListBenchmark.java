@@ -0,0 +1,148 @@
+package com.shaposhnyk.benchmarks;
+
+import com.shaposhnyk.Domain;
+import com.shaposhnyk.DomainList;
+import com.shaposhnyk.DomainListBruteForce;
+import com.shaposhnyk.DomainListCompact;
+import com.shaposhnyk.DomainListConcurrent;
+import com.shaposhnyk.DomainListLabels;
+import com.shaposhnyk.DomainListMap;
+import com.shaposhnyk.DomainListTrie;
+import com.shaposhnyk.DomainListener;
+import com.shaposhnyk.LabelDictionary;
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures every DomainList implementation on the same synthetic corpus. Bulk operations
+ * (addDomain, mergeDomain) build a whole list per invocation, queries are run against a list
+ * built once per trial
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DomainListBenchmark {
+  private static final Path SOURCE = Paths.get("source.txt");
+
+  @Param({"map", "trie", "labels", "compact", "concurrent", "bruteforce"})
+  public String implementation;
+
+  @Param({"10000"})
+  public int size;
+
+  @Param({"16"})
+  public int fanOut;
+
+  @Param({"0.05"})
+  public double duplicateRatio;
+
+  @Param({"RANDOM", "PARENTS_FIRST", "CHILDREN_FIRST"})
+  public CorpusGenerator.Order order;
+
+  private LabelDictionary dictionary;
+  private List<String> names;
+  private List<String> independentNames;
+  private DomainList built;
+  private String[] queries;
+  private Domain[] containsQueries;
+  private int cursor;
+
+  @Setup(Level.Trial)
+  public void setUp() {
+    dictionary = new LabelDictionary();
+    names =
+        new CorpusGenerator()
+            .withSize(size)
+            .withFanOut(fanOut)
+            .withDuplicateRatio(duplicateRatio)
+            .withOrder(order)
+            .names();
+
+    built = newList();
+    names.forEach(name -> built.merge(newDomain(name), DomainListener.NOOP));
+    independentNames = new ArrayList<>();
+    built.getDomains().forEach(d -> independentNames.add(d.getDomainName()));
+
+    Random random = new Random(7);
+    queries = new String[1024];
+    containsQueries = new Domain[queries.length];
+    for (int i = 0; i < queries.length; i++) {
+      queries[i] = names.get(random.nextInt(names.size()));
+      containsQueries[i] = newDomain(queries[i]);
+    }
+  }
+
+  @Benchmark
+  @OutputTimeUnit(TimeUnit.MILLISECONDS)
+  public DomainList addDomain() {
+    DomainList list = newList();
+    for (String name : independentNames) {
+      list.addDomain(newDomain(name));
+    }
+    return list;
+  }
+
+  @Benchmark
+  @OutputTimeUnit(TimeUnit.MILLISECONDS)
+  public DomainList mergeDomain() {
+    DomainList list = newList();
+    for (String name : names) {
+      list.merge(newDomain(name), DomainListener.NOOP); // mergeDomain() would copy the list
+    }
+    return list;
+  }
+
+  @Benchmark
+  public List<Domain> findParentsOf() {
+    return built.findParentsOf(queries[nextQuery()]);
+  }
+
+  @Benchmark
+  public List<Domain> findSubDomains() {
+    return built.findSubDomains(queries[nextQuery()]);
+  }
+
+  @Benchmark
+  public boolean contains() {
+    return built.contains(containsQueries[nextQuery()]);
+  }
+
+  private int nextQuery() {
+    cursor = (cursor + 1) & (queries.length - 1);
+    return cursor;
+  }
+
+  private DomainList newList() {
+    switch (implementation) {
+      case "map":
+        return new DomainListMap();
+      case "trie":
+        return new DomainListTrie();
+      case "labels":
+        return new DomainListLabels(dictionary);
+      case "compact":
+        return new DomainListCompact();
+      case "concurrent":
+        return new DomainListConcurrent();
+      case "bruteforce":
+        return new DomainListBruteForce(new ArrayList<>());
+      default:
+        throw new IllegalArgumentException("Unknown implementation: " + implementation);
+    }
+  }
+
+  private Domain newDomain(String name) {
+    return "labels".equals(implementation)
+        ? Domain.of(name, SOURCE, dictionary)
+        : Domain.of(name, SOURCE);
+  }
+}
@@ -0,0 +1,70 @@
+package com.shaposhnyk.benchmarks;
+
+import com.shaposhnyk.Domain;
+import com.shaposhnyk.DomainService;
+import com.shaposhnyk.LabelDictionary;
+import com.shaposhnyk.NamedSource;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/** End-to-end grouping of in-memory sources, from raw lines to the different-source report */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DomainServiceBenchmark {
+  @Param({"100000"})
+  public int size;
+
+  @Param({"4"})
+  public int sources;
+
+  @Param({"64"})
+  public int fanOut;
+
+  @Param({"0.05"})
+  public double duplicateRatio;
+
+  @Param({"RANDOM", "PARENTS_FIRST", "CHILDREN_FIRST"})
+  public CorpusGenerator.Order order;
+
+  private List<NamedSource> namedSources;
+
+  @Setup(Level.Trial)
+  public void setUp() {
+    namedSources =
+        new CorpusGenerator()
+            .withSize(size)
+            .withSources(sources)
+            .withFanOut(fanOut)
+            .withDuplicateRatio(duplicateRatio)
+            .withOrder(order)
+            .namedSources();
+  }
+
+  @Benchmark
+  public List<Domain> domainsWithSubDomains() {
+    return new DomainService().domainsWithSubDomains(namedSources);
+  }
+
+  @Benchmark
+  public List<Domain> domainsWithSubDomainsLabels() {
+    return new DomainService(new LabelDictionary()).domainsWithSubDomains(namedSources);
+  }
+
+  @Benchmark
+  public List<Domain> domainsWithSubDomainsParallel() {
+    return new DomainService().domainsWithSubDomainsParallel(namedSources);
+  }
+
+  @Benchmark
+  public List<Domain> groupAndFilter() {
+    DomainService service = new DomainService();
+    return service.flatMapAndfilterDomainsWithDiffSourceSubDomains(
+        service.domainsWithSubDomains(namedSources));
+  }
+}
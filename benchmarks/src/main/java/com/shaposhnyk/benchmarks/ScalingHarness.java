@@ -0,0 +1,236 @@
+package com.shaposhnyk.benchmarks;
+
+import com.shaposhnyk.DomainListener;
+import com.shaposhnyk.DomainService;
+import com.shaposhnyk.NamedSource;
+import com.shaposhnyk.NamedSources;
+import com.shaposhnyk.ReportSink;
+import com.shaposhnyk.ReportSinks;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+
+/**
+ * End-to-end run of {@link DomainService#solveProblem(List, ReportSink)} on corpora of growing
+ * sizes written to disk, from reading files to writing the report file. Every run records wall
+ * time of the phases, bytes allocated by the running thread, peak heap usage and collections, all
+ * from the management beans, and the results go to scaling.csv of the work directory.
+ *
+ * <p>The exponent columns are slopes between neighbouring sizes on a log-log scale, e.g. a time
+ * exponent of 1.0 is linear growth, and anything clearly above it is a super-linear regression.
+ * Corpora are streamed to files once per size and reused by later runs, so they do not take heap
+ * of the measured runs, and sizes up to 100M lines are only limited by the disk and the service.
+ * Run it with a fixed heap, e.g.
+ *
+ * <pre>
+ * java -Xms4g -Xmx4g -cp benchmarks/target/benchmarks.jar \
+ *     com.shaposhnyk.benchmarks.ScalingHarness target/scaling 10000 100000 1000000
+ * </pre>
+ */
+public final class ScalingHarness {
+  private static final int SOURCES = 4;
+  private static final int FAN_OUT = 64;
+
+  private ScalingHarness() {}
+
+  /** Arguments: work directory, then sizes in lines, 10K to 1M by default */
+  public static void main(String... args) throws IOException {
+    if (args.length < 1) {
+      System.err.println("Usage: <workDir> [<lines>...]");
+      System.exit(2);
+    }
+    Path workDirectory = Paths.get(args[0]);
+    SortedSet<Integer> sizes = new TreeSet<>();
+    for (int i = 1; i < args.length; i++) {
+      sizes.add(Integer.parseInt(args[i]));
+    }
+    if (sizes.isEmpty()) {
+      sizes.addAll(Arrays.asList(10_000, 100_000, 1_000_000));
+    }
+
+    run(workDirectory, sizes.first()); // warm-up, not reported
+    List<Result> results = new ArrayList<>();
+    for (int size : sizes) {
+      Result result = run(workDirectory, size);
+      System.out.println(result);
+      results.add(result);
+    }
+
+    Path report = workDirectory.resolve("scaling.csv");
+    try (PrintWriter out = new PrintWriter(Files.newBufferedWriter(report))) {
+      out.println(
+          "lines,wall_ms,ingest_ms,filter_ms,report_ms,allocated_mb,allocation_mb_per_s,"
+              + "peak_heap_mb,gc_count,gc_ms,report_bytes,time_exponent,allocation_exponent");
+      Result previous = null;
+      for (Result result : results) {
+        out.printf(
+            Locale.ROOT,
+            "%d,%d,%d,%d,%d,%.1f,%.1f,%.1f,%d,%d,%d,%s,%s%n",
+            result.lines,
+            result.wallNanos / 1_000_000,
+            result.phaseNanos[DomainListener.Phase.INGEST.ordinal()] / 1_000_000,
+            result.phaseNanos[DomainListener.Phase.FILTER.ordinal()] / 1_000_000,
+            result.phaseNanos[DomainListener.Phase.REPORT.ordinal()] / 1_000_000,
+            megabytes(result.allocatedBytes),
+            megabytes(result.allocatedBytes) * 1e9 / result.wallNanos,
+            megabytes(result.peakHeapBytes),
+            result.gcCount,
+            result.gcMillis,
+            result.reportBytes,
+            exponent(previous, result, previous == null ? 0 : previous.wallNanos, result.wallNanos),
+            exponent(
+                previous,
+                result,
+                previous == null ? 0 : previous.allocatedBytes,
+                result.allocatedBytes));
+        previous = result;
+      }
+    }
+    System.out.println("Scaling report: " + report);
+  }
+
+  private static Result run(Path workDirectory, int size) throws IOException {
+    Path corpus = workDirectory.resolve("corpus-" + size);
+    List<Path> files = corpusFiles(corpus);
+    if (files.size() != SOURCES) {
+      files =
+          new CorpusGenerator()
+              .withSize(size)
+              .withSources(SOURCES)
+              .withFanOut(FAN_OUT)
+              .write(corpus);
+    }
+    List<NamedSource> sources = new ArrayList<>();
+    for (Path file : files) {
+      sources.add(NamedSources.of(file));
+    }
+    Path reportFile = workDirectory.resolve("report-" + size + ".txt");
+
+    Result result = new Result(size);
+    DomainListener listener =
+        new DomainListener() {
+          @Override
+          public void phaseCompleted(Phase phase, long nanos) {
+            result.phaseNanos[phase.ordinal()] += nanos;
+          }
+        };
+    DomainService service = new DomainService(null, listener);
+
+    System.gc();
+    List<MemoryPoolMXBean> heapPools = new ArrayList<>();
+    for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+      if (pool.getType() == MemoryType.HEAP && pool.isValid()) {
+        pool.resetPeakUsage();
+        heapPools.add(pool);
+      }
+    }
+    long gcCount = -gcCount();
+    long gcMillis = -gcMillis();
+    long allocated = -allocatedBytes();
+    long start = System.nanoTime();
+
+    // solveProblem() runs in the calling thread, so its allocations are the ones of this thread
+    try (ReportSink sink = ReportSinks.text(Files.newOutputStream(reportFile))) {
+      service.solveProblem(sources, sink);
+    }
+
+    result.wallNanos = System.nanoTime() - start;
+    result.allocatedBytes = allocated + allocatedBytes();
+    result.gcCount = gcCount + gcCount();
+    result.gcMillis = gcMillis + gcMillis();
+    for (MemoryPoolMXBean pool : heapPools) {
+      // peaks of pools are not simultaneous, so the sum is an upper bound
+      result.peakHeapBytes += pool.getPeakUsage().getUsed();
+    }
+    result.reportBytes = Files.size(reportFile);
+    return result;
+  }
+
+  private static List<Path> corpusFiles(Path corpus) {
+    List<Path> files = new ArrayList<>();
+    for (int s = 0; s < SOURCES; s++) {
+      Path file = corpus.resolve("source" + s + ".txt");
+      if (!Files.isRegularFile(file)) {
+        return Collections.emptyList();
+      }
+      files.add(file);
+    }
+    return files;
+  }
+
+  /** @return bytes allocated by the current thread, or 0 if the JVM does not count them */
+  private static long allocatedBytes() {
+    java.lang.management.ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+    if (!(threads instanceof com.sun.management.ThreadMXBean)) {
+      return 0;
+    }
+    return ((com.sun.management.ThreadMXBean) threads)
+        .getThreadAllocatedBytes(Thread.currentThread().getId());
+  }
+
+  private static long gcCount() {
+    long count = 0;
+    for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+      count += Math.max(0, gc.getCollectionCount());
+    }
+    return count;
+  }
+
+  private static long gcMillis() {
+    long millis = 0;
+    for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+      millis += Math.max(0, gc.getCollectionTime());
+    }
+    return millis;
+  }
+
+  /** @return slope of a measure between two runs on a log-log scale, empty for the first run */
+  private static String exponent(Result previous, Result result, long before, long after) {
+    if (previous == null || before <= 0 || after <= 0) {
+      return "";
+    }
+    double slope =
+        Math.log((double) after / before) / Math.log((double) result.lines / previous.lines);
+    return String.format(Locale.ROOT, "%.2f", slope);
+  }
+
+  private static double megabytes(long bytes) {
+    return bytes / (1024.0 * 1024.0);
+  }
+
+  private static final class Result {
+    private final int lines;
+    private final long[] phaseNanos = new long[DomainListener.Phase.values().length];
+    private long wallNanos;
+    private long allocatedBytes;
+    private long peakHeapBytes;
+    private long gcCount;
+    private long gcMillis;
+    private long reportBytes;
+
+    Result(int lines) {
+      this.lines = lines;
+    }
+
+    @Override
+    public String toString() {
+      return String.format(
+          Locale.ROOT,
+          "%d lines: %d ms, allocated %.1f MB, peak heap %.1f MB, %d GCs in %d ms",
+          lines,
+          wallNanos / 1_000_000,
+          megabytes(allocatedBytes),
+          megabytes(peakHeapBytes),
+          gcCount,
+          gcMillis);
+    }
+  }
+}
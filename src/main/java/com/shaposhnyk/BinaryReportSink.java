@@ -0,0 +1,126 @@
+package com.shaposhnyk;
+
+import java.io.DataInputStream;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.function.Consumer;
+
+/**
+ * Compact binary report, big-endian. A header of magic and version ints is followed by records,
+ * each one starting with a tag byte:
+ *
+ * <ul>
+ *   <li>'S' defines a source before its first use: int id, int length of the name in UTF-8 (-1
+ *       for a null source) and the name
+ *   <li>'D' is a top-level domain: its name as int length and UTF-8 bytes, int source id, int
+ *       number of sub-domains, then every sub-domain as a name and a source id
+ *   <li>'E' ends the report
+ * </ul>
+ */
+final class BinaryReportSink extends BufferedReportSink {
+  static final int MAGIC = 0x444F4D52; // DOMR
+  static final int VERSION = 1;
+
+  private final Map<Path, Integer> sourceIds = new HashMap<>();
+  private boolean closed;
+
+  BinaryReportSink(WritableByteChannel channel, Flushable stream) {
+    super(channel, stream);
+    writeInt(MAGIC);
+    writeInt(VERSION);
+  }
+
+  @Override
+  public void write(Domain topDomain) {
+    Collection<Domain> subDomains = topDomain.getSubDomainsView();
+    defineSource(topDomain.getSourceLocation());
+    for (Domain subDomain : subDomains) {
+      defineSource(subDomain.getSourceLocation());
+    }
+
+    writeByte('D');
+    writeDomain(topDomain);
+    writeInt(subDomains.size());
+    for (Domain subDomain : subDomains) {
+      writeDomain(subDomain);
+    }
+  }
+
+  private void defineSource(Path source) {
+    if (sourceIds.containsKey(source)) {
+      return;
+    }
+    int id = sourceIds.size();
+    sourceIds.put(source, id);
+    writeByte('S');
+    writeInt(id);
+    if (source == null) {
+      writeInt(-1);
+    } else {
+      String name = source.toString();
+      writeInt(utf8Length(name));
+      writeUtf8(name);
+    }
+  }
+
+  private void writeDomain(Domain domain) {
+    String name = domain.getDomainName();
+    writeInt(utf8Length(name));
+    writeUtf8(name);
+    writeInt(sourceIds.get(domain.getSourceLocation()));
+  }
+
+  @Override
+  public void close() {
+    if (!closed) {
+      closed = true;
+      writeByte('E');
+    }
+    super.close();
+  }
+
+  /** Reads a report written by this sink, domains are created with their sub-domains */
+  static void read(InputStream input, Consumer<Domain> topDomainConsumer) throws IOException {
+    DataInputStream in = new DataInputStream(input);
+    if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+      throw new IOException("Not a binary report or unsupported version");
+    }
+
+    List<Path> sources = new ArrayList<>();
+    SourceRegistry registry = new SourceRegistry();
+    while (true) {
+      int tag = in.readByte();
+      if (tag == 'E') {
+        return;
+      } else if (tag == 'S') {
+        int id = in.readInt();
+        int length = in.readInt();
+        Path source = length < 0 ? null : Paths.get(readString(in, length));
+        sources.add(id, source);
+      } else if (tag == 'D') {
+        String name = readString(in, in.readInt());
+        Path source = sources.get(in.readInt());
+        Domain[] subDomains = new Domain[in.readInt()];
+        for (int i = 0; i < subDomains.length; i++) {
+          String subName = readString(in, in.readInt());
+          subDomains[i] = Domain.of(subName, sources.get(in.readInt()), registry);
+        }
+        topDomainConsumer.accept(Domain.of(name, source, registry, Arrays.asList(subDomains)));
+      } else {
+        throw new IOException("Unknown record " + tag);
+      }
+    }
+  }
+
+  private static String readString(DataInputStream in, int length) throws IOException {
+    byte[] bytes = new byte[length];
+    in.readFully(bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+}
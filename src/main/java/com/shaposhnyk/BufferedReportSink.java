@@ -0,0 +1,149 @@
+package com.shaposhnyk;
+
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Base of report sinks writing into a reusable byte buffer, which is drained to a channel once it
+ * is full. Strings are encoded to UTF-8 right into the buffer, so writing a domain does not
+ * allocate anything
+ */
+abstract class BufferedReportSink implements ReportSink {
+  private static final int BUFFER_SIZE = 64 * 1024;
+
+  private final WritableByteChannel channel;
+  private final Flushable stream; // stream behind the channel, null if there is none
+  private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+
+  BufferedReportSink(WritableByteChannel channel, Flushable stream) {
+    this.channel = channel;
+    this.stream = stream;
+  }
+
+  final void writeByte(int b) {
+    ensure(1);
+    buffer.put((byte) b);
+  }
+
+  final void writeInt(int value) {
+    ensure(Integer.BYTES);
+    buffer.putInt(value);
+  }
+
+  final void writeBytes(byte[] bytes) {
+    int offset = 0;
+    while (offset < bytes.length) {
+      ensure(1);
+      int length = Math.min(buffer.remaining(), bytes.length - offset);
+      buffer.put(bytes, offset, length);
+      offset += length;
+    }
+  }
+
+  /** Writes chars of a string as UTF-8 */
+  final void writeUtf8(CharSequence chars) {
+    for (int i = 0; i < chars.length(); i++) {
+      char c = chars.charAt(i);
+      if (c < 0x80) {
+        writeByte(c);
+      } else if (c < 0x800) {
+        ensure(2);
+        buffer.put((byte) (0xC0 | c >> 6)).put((byte) (0x80 | c & 0x3F));
+      } else if (Character.isHighSurrogate(c)
+          && i + 1 < chars.length()
+          && Character.isLowSurrogate(chars.charAt(i + 1))) {
+        int codePoint = Character.toCodePoint(c, chars.charAt(++i));
+        ensure(4);
+        buffer
+            .put((byte) (0xF0 | codePoint >> 18))
+            .put((byte) (0x80 | codePoint >> 12 & 0x3F))
+            .put((byte) (0x80 | codePoint >> 6 & 0x3F))
+            .put((byte) (0x80 | codePoint & 0x3F));
+      } else if (Character.isSurrogate(c)) {
+        writeByte('?'); // unpaired surrogate, as String.getBytes(UTF_8) does
+      } else {
+        ensure(3);
+        buffer
+            .put((byte) (0xE0 | c >> 12))
+            .put((byte) (0x80 | c >> 6 & 0x3F))
+            .put((byte) (0x80 | c & 0x3F));
+      }
+    }
+  }
+
+  /** @return number of bytes of a string encoded as UTF-8 */
+  static int utf8Length(CharSequence chars) {
+    int length = 0;
+    for (int i = 0; i < chars.length(); i++) {
+      char c = chars.charAt(i);
+      if (c < 0x80) {
+        length++;
+      } else if (c < 0x800) {
+        length += 2;
+      } else if (Character.isHighSurrogate(c)
+          && i + 1 < chars.length()
+          && Character.isLowSurrogate(chars.charAt(i + 1))) {
+        length += 4;
+        i++;
+      } else if (Character.isSurrogate(c)) {
+        length++;
+      } else {
+        length += 3;
+      }
+    }
+    return length;
+  }
+
+  static byte[] utf8(String string) {
+    return string.getBytes(StandardCharsets.UTF_8);
+  }
+
+  private void ensure(int bytes) {
+    if (buffer.remaining() < bytes) {
+      drain();
+    }
+  }
+
+  private void drain() {
+    // casts bind to Buffer methods, ByteBuffer overrides them only since Java 9
+    ((Buffer) buffer).flip();
+    try {
+      while (buffer.hasRemaining()) {
+        channel.write(buffer);
+      }
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    ((Buffer) buffer).clear();
+  }
+
+  @Override
+  public void flush() {
+    drain();
+    if (stream != null) {
+      try {
+        stream.flush();
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    }
+  }
+
+  @Override
+  public void close() {
+    try {
+      flush();
+    } finally {
+      try {
+        channel.close();
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    }
+  }
+}
@@ -14,17 +14,54 @@ import java.util.*;
  * <p>I would use here a Kotlin's data class, or java 14 ;) data class
  */
 public class Domain {
+  // null for label-encoded domains, which keep only their label ids
   private final String domainName;
 
-  private final Path sourceLocation;
+  private final int[] labels;
 
-  private final DomainList subDomains;
+  private final LabelDictionary dictionary;
 
-  Domain(String domainName, Path sourceLocation, List<Domain> subDomains) {
+  // id of the first source the domain was found in, in the registry of its sources
+  private final int sourceId;
+
+  // all sources the domain was found in, the set keeps the registry of the first one
+  private SourceSet sources;
+
+  // sources of the domain and of all its sub-domains, it may keep sources of removed sub-domains
+  private SourceSet subtreeSources;
+
+  // created with the first sub-domain, leaves have none
+  private DomainList subDomains;
+
+  // number of domains in the subtree, -1 if unknown. Any modification of a subtree goes through
+  // the sub-domain list of every ancestor, so getting it for modification resets the size
+  private int subtreeSize = -1;
+
+  // hash of the name, sources and sub-domains, 0 if unknown. It is reset the same way as the size
+  private long structureHash;
+
+  Domain(
+      String domainName,
+      Path sourceLocation,
+      SourceRegistry registry,
+      Collection<Domain> subDomains) {
     this.domainName = Objects.requireNonNull(domainName);
-    this.sourceLocation = sourceLocation;
-    this.subDomains = new DomainListMap();
-    subDomains.forEach(this.subDomains::addDomain);
+    this.labels = null;
+    this.dictionary = null;
+    this.sourceId = registry.idOf(sourceLocation);
+    this.sources = SourceSet.of(registry, sourceId);
+    this.subtreeSources = sources;
+    subDomains.forEach(this::attachSubDomain);
+  }
+
+  private Domain(
+      int[] labels, LabelDictionary dictionary, Path sourceLocation, SourceRegistry registry) {
+    this.domainName = null;
+    this.labels = labels;
+    this.dictionary = dictionary;
+    this.sourceId = registry.idOf(sourceLocation);
+    this.sources = SourceSet.of(registry, sourceId);
+    this.subtreeSources = sources;
   }
 
   // @VisibleForTesting
@@ -32,9 +69,15 @@ public class Domain {
     return of(domainName, Paths.get(""));
   }
 
-  /** @return domain w/o sub-domains from a location */
+  /** @return domain w/o sub-domains from a location of {@link SourceRegistry#SHARED} */
   public static Domain of(String domainName, Path path) {
-    return of(domainName, path, new ArrayList<>(0));
+    return of(domainName, path, Collections.emptyList());
+  }
+
+  /** @return domain w/o sub-domains from a location of the given registry */
+  public static Domain of(String domainName, Path path, SourceRegistry registry) {
+    return new Domain(
+        DomainNormalizer.toCanonicalCase(domainName), path, registry, Collections.emptyList());
   }
 
   /**
@@ -48,48 +91,286 @@ public class Domain {
   }
 
   public static Domain of(String domainName, Path path, Collection<Domain> subDomains) {
-    // if we aim to support IDN's, then probably usage of toLowerCase() should be
-    // reconsidered
-    return new Domain(
-        domainName.toLowerCase(), path, new ArrayList<>(subDomains)); // preserve-order
+    return of(domainName, path, SourceRegistry.SHARED, subDomains);
+  }
+
+  public static Domain of(
+      String domainName, Path path, SourceRegistry registry, Collection<Domain> subDomains) {
+    return new Domain(DomainNormalizer.toCanonicalCase(domainName), path, registry, subDomains);
+  }
+
+  /**
+   * Creates a domain stored as a sequence of label ids of the given dictionary, instead of a
+   * string. Domain name will be converted to lowercase
+   *
+   * @return label-encoded domain w/o sub-domains from a location
+   */
+  public static Domain of(String domainName, Path path, LabelDictionary dictionary) {
+    return of(domainName, path, dictionary, SourceRegistry.SHARED);
+  }
+
+  /** Same as {@link #of(String, Path, LabelDictionary)}, for a location of the given registry */
+  public static Domain of(
+      String domainName, Path path, LabelDictionary dictionary, SourceRegistry registry) {
+    int[] labels = dictionary.encode(DomainNormalizer.toCanonicalCase(domainName));
+    return new Domain(labels, dictionary, path, registry);
   }
 
   public String getDomainName() {
-    return domainName;
+    return domainName != null ? domainName : dictionary.decode(labels);
+  }
+
+  /** @return label ids starting from the top-level one, or null if not encoded with dictionary */
+  int[] getLabels(LabelDictionary dictionary) {
+    return this.dictionary == dictionary ? labels : null;
   }
 
+  /** @return the first source the domain was found in */
   public Path getSourceLocation() {
-    return sourceLocation;
+    return sourceId == SourceRegistry.NO_SOURCE ? null : sources.getRegistry().sourceOf(sourceId);
   }
 
+  int getSourceId() {
+    return sourceId;
+  }
+
+  /** @return true if both domains were first found in the same source */
+  boolean hasSameSourceAs(Domain another) {
+    if (sources.getRegistry() == another.sources.getRegistry()) {
+      return sourceId == another.sourceId;
+    }
+    return Objects.equals(getSourceLocation(), another.getSourceLocation());
+  }
+
+  /** @return true if the subtree has no sources other than the first source of the given domain */
+  boolean isSubtreeFromSourceOf(Domain domain) {
+    if (subtreeSources.getRegistry() == domain.sources.getRegistry()) {
+      return subtreeSources.containsOnly(domain.sourceId);
+    }
+    return subtreeSources.isSubsetOf(SourceSet.of(domain.sources.getRegistry(), domain.sourceId));
+  }
+
+  /** @return all sources the domain was found in */
+  public SourceSet getSources() {
+    return sources;
+  }
+
+  /**
+   * @return sources of the domain and all its sub-domains. It may still contain sources of
+   *     removed sub-domains, but never misses a source of a present one
+   */
+  public SourceSet getSubtreeSources() {
+    return subtreeSources;
+  }
+
+  /** Records that the same domain was found in other sources, the first source is kept */
+  void addSourcesOf(Domain duplicate) {
+    addSources(duplicate.sources);
+    includeSourcesOf(duplicate);
+  }
+
+  /** Records other sources of the domain itself, the first source is kept */
+  void addSources(SourceSet otherSources) {
+    sources = sources.union(otherSources);
+    subtreeSources = subtreeSources.union(otherSources);
+    structureHash = 0;
+  }
+
+  /** Records sources of a domain which is, or is going to be, somewhere in the subtree */
+  void includeSourcesOf(Domain subDomain) {
+    subtreeSources = subtreeSources.union(subDomain.subtreeSources);
+  }
+
+  /** Adds an independent direct sub-domain */
+  void attachSubDomain(Domain subDomain) {
+    getSubDomainList().addDomain(subDomain);
+    includeSourcesOf(subDomain);
+  }
+
+  /** @return copy of sub-domains, see {@link #getSubDomainsView()} to avoid copying */
   public List<Domain> getSubDomains() {
-    // it would be good to retourn here Collections.unmodifiableList(), if possible
-    return subDomains.getDomains();
+    return subDomains == null ? Collections.emptyList() : subDomains.getDomains();
+  }
+
+  /** @return read-only live view of sub-domains, which also sees sub-domains added later */
+  public Collection<Domain> getSubDomainsView() {
+    // the list is created with the first sub-domain, so it is looked up by every read
+    return new AbstractCollection<Domain>() {
+      @Override
+      public Iterator<Domain> iterator() {
+        return subDomains == null ? Collections.emptyIterator() : subDomains.view().iterator();
+      }
+
+      @Override
+      public int size() {
+        return subDomains == null ? 0 : subDomains.view().size();
+      }
+
+      @Override
+      public boolean isEmpty() {
+        return subDomains == null || subDomains.isEmpty();
+      }
+    };
+  }
+
+  /** @return number of domains in the subtree including this one, it is cached until modified */
+  public int getSubtreeSize() {
+    if (subtreeSize < 0) {
+      DomainTraversal.walk(
+          Collections.singletonList(this),
+          new DomainVisitor() {
+            @Override
+            public boolean preVisit(Domain domain, int depth) {
+              return domain.subtreeSize < 0; // known sizes are not recounted
+            }
+
+            @Override
+            public void postVisit(Domain domain, int depth) {
+              if (domain.subtreeSize < 0) {
+                int size = 1;
+                for (Domain subDomain : domain.getSubDomainsView()) {
+                  size += subDomain.subtreeSize;
+                }
+                domain.subtreeSize = size;
+              }
+            }
+          });
+    }
+    return subtreeSize;
+  }
+
+  /**
+   * @return 64-bit hash of the name, all sources and hashes of all sub-domains regardless of their
+   *     order. It is cached, so only modified subtrees are hashed again
+   */
+  public long getStructureHash() {
+    if (structureHash == 0) {
+      DomainTraversal.walk(
+          Collections.singletonList(this),
+          new DomainVisitor() {
+            @Override
+            public boolean preVisit(Domain domain, int depth) {
+              return domain.structureHash == 0; // known hashes are not recomputed
+            }
+
+            @Override
+            public void postVisit(Domain domain, int depth) {
+              if (domain.structureHash == 0) {
+                domain.structureHash = domain.hashStructure();
+              }
+            }
+          });
+    }
+    return structureHash;
+  }
+
+  /** @return hash of this domain, hashes of sub-domains are already known */
+  private long hashStructure() {
+    long hash = mix(hash64(getDomainName()));
+    long sourcesHash = 0;
+    for (Path source : sources.sources()) {
+      // by location, so hashes do not depend on the order sources were registered in
+      sourcesHash += mix(hash64(String.valueOf(source)));
+    }
+    long subDomainsHash = 0;
+    for (Domain subDomain : getSubDomainsView()) {
+      subDomainsHash += mix(subDomain.structureHash); // a sum does not depend on order
+    }
+    hash = mix(hash * 31 + sourcesHash);
+    hash = mix(hash * 31 + subDomainsHash);
+    return hash == 0 ? 1 : hash;
+  }
+
+  private static long hash64(String value) {
+    long hash = 0xcbf29ce484222325L; // FNV-1a
+    for (int i = 0; i < value.length(); i++) {
+      hash = (hash ^ value.charAt(i)) * 0x100000001b3L;
+    }
+    return hash;
+  }
+
+  static long mix(long hash) {
+    hash ^= hash >>> 33;
+    hash *= 0xff51afd7ed558ccdL;
+    hash ^= hash >>> 33;
+    hash *= 0xc4ceb9fe1a85ec53L;
+    return hash ^ (hash >>> 33);
   }
 
   public boolean isSubDomainOf(Domain domain) {
+    if (labels != null && domain.dictionary == dictionary) {
+      return isLabelPrefix(domain.labels);
+    }
     return isSubDomainOf(domain.getDomainName());
   }
 
   /** @return true if supposedParent is a parent domain of this domain */
   public boolean isSubDomainOf(String supposedParent) {
-    return this.domainName.length() > supposedParent.length()
-        // there MUST be a point just before parent domain
-        && '.' == this.domainName.charAt(this.domainName.length() - supposedParent.length() - 1)
-        && this.domainName.endsWith(supposedParent);
+    if (labels != null) {
+      int[] parentLabels = dictionary.lookup(supposedParent);
+      return parentLabels != null && isLabelPrefix(parentLabels);
+    }
+    return DomainNames.isSubDomainOf(this.domainName, supposedParent);
+  }
+
+  private boolean isLabelPrefix(int[] parentLabels) {
+    if (parentLabels.length >= labels.length) {
+      return false;
+    }
+    for (int i = 0; i < parentLabels.length; i++) {
+      if (parentLabels[i] != labels[i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private boolean hasSameName(Domain another) {
+    if (labels != null && another.dictionary == dictionary) {
+      return Arrays.equals(labels, another.labels);
+    }
+    return getDomainName().equals(another.getDomainName());
   }
 
   public void addSubDomain(Domain d) {
-    this.subDomains.mergeDomain(d);
+    mergeDomain(d);
+  }
+
+  /** @return list of sub-domains, it is created if the domain has none yet */
+  DomainList getSubDomainList() {
+    subtreeSize = -1;
+    structureHash = 0;
+    if (subDomains == null) {
+      subDomains = labels != null ? new DomainListLabels(dictionary) : new DomainListCompact();
+    }
+    return subDomains;
+  }
+
+  /** @return list of sub-domains for lookups only, null if there are none */
+  DomainList getSubDomainListIfAny() {
+    return subDomains;
+  }
+
+  /** Detaches all sub-domains from this domain */
+  List<Domain> removeSubDomains() {
+    List<Domain> removed = getSubDomains();
+    subDomains = null;
+    subtreeSize = -1;
+    structureHash = 0;
+    return removed;
   }
 
   public boolean hasSubDomains() {
-    return !this.subDomains.isEmpty();
+    return subDomains != null && !subDomains.isEmpty();
   }
 
   @Override
   public int hashCode() {
-    return Objects.hash(domainName, sourceLocation);
+    if (labels != null) {
+      // same as Objects.hash(getDomainName(), sourceLocation) w/o decoding the name
+      return 31 * (31 + dictionary.nameHash(labels)) + Objects.hashCode(getSourceLocation());
+    }
+    return Objects.hash(domainName, getSourceLocation());
   }
 
   @Override
@@ -100,17 +381,51 @@ public class Domain {
       return false;
     }
     Domain another = (Domain) obj;
-    return Objects.equals(domainName, another.domainName)
-        && Objects.equals(sourceLocation, another.sourceLocation)
-        && Objects.equals(subDomains, another.subDomains);
+    return hasSameName(another)
+        && hasSameSourceAs(another)
+        && getStructureHash() == another.getStructureHash()
+        && hasSameStructure(another);
+  }
+
+  /** @return true if both hierarchies have the same names and sources, hashes are not trusted */
+  private boolean hasSameStructure(Domain another) {
+    Deque<Domain> toCompare = new ArrayDeque<>();
+    toCompare.push(this);
+    toCompare.push(another);
+    while (!toCompare.isEmpty()) {
+      Domain b = toCompare.pop();
+      Domain a = toCompare.pop();
+      if (a == b) {
+        continue;
+      }
+      if (!a.hasSameName(b)
+          || !a.sources.equals(b.sources)
+          || a.getSubDomainsView().size() != b.getSubDomainsView().size()) {
+        return false;
+      }
+      for (Domain subDomain : a.getSubDomainsView()) {
+        Domain same = b.subDomains.findDomain(subDomain.getDomainName());
+        if (same == null) {
+          return false;
+        }
+        toCompare.push(subDomain);
+        toCompare.push(same);
+      }
+    }
+    return true;
   }
 
   @Override
   public String toString() {
-    return domainName;
+    return getDomainName();
   }
 
   public void mergeDomain(Domain newDomain) {
-    this.subDomains.mergeDomain(newDomain);
+    mergeDomain(newDomain, DomainListener.NOOP);
+  }
+
+  public void mergeDomain(Domain newDomain, DomainListener listener) {
+    includeSourcesOf(newDomain);
+    getSubDomainList().merge(newDomain, listener);
   }
 }
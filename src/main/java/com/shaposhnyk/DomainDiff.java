@@ -0,0 +1,250 @@
+package com.shaposhnyk;
+
+import java.util.*;
+
+/**
+ * Differences between two hierarchies, e.g. built from yesterday's and today's sources. Domains
+ * are matched by name, and subtrees with equal {@link Domain#getStructureHash()} are considered
+ * equal without visiting them, so the time depends on the size of the change and on the number of
+ * sub-domains of changed domains, but not on the size of hierarchies. Top-level domains are hashed
+ * into buckets, and only domains of buckets with different hashes are matched by name, see {@link
+ * #bucketHashes(Collection)}. Bucket hashes are not kept between comparisons, as top-level domains
+ * may be modified in place, e.g. by {@link DomainForests#mergeTree(DomainList, Domain)}, so each
+ * comparison sums cached hashes of all top-level domains once.
+ *
+ * <p>A domain found in both hierarchies under different parents is reported as moved, not as
+ * removed and added. Hashes are cached by domains, so both hierarchies must not be modified while
+ * they are compared
+ */
+public final class DomainDiff {
+  /** Number of buckets top-level domains are hashed in */
+  static final int BUCKETS = 1024;
+
+  private final List<Domain> added = new ArrayList<>();
+  private final List<Domain> removed = new ArrayList<>();
+  private final List<Move> moved = new ArrayList<>();
+  private final List<Domain> sourcesChanged = new ArrayList<>();
+
+  private final DomainList before;
+  private final DomainList after;
+
+  private DomainDiff(DomainList before, DomainList after) {
+    this.before = before;
+    this.after = after;
+  }
+
+  /** A domain found under different parents, a null parent stands for the top level */
+  public static final class Move {
+    private final Domain before;
+    private final Domain after;
+    private final Domain parentBefore;
+    private final Domain parentAfter;
+
+    Move(Domain before, Domain after, Domain parentBefore, Domain parentAfter) {
+      this.before = before;
+      this.after = after;
+      this.parentBefore = parentBefore;
+      this.parentAfter = parentAfter;
+    }
+
+    public Domain getBefore() {
+      return before;
+    }
+
+    public Domain getAfter() {
+      return after;
+    }
+
+    public Domain getParentBefore() {
+      return parentBefore;
+    }
+
+    public Domain getParentAfter() {
+      return parentAfter;
+    }
+
+    @Override
+    public String toString() {
+      return after + " (" + parentBefore + " -> " + parentAfter + ")";
+    }
+  }
+
+  /** Compares two forests of top-level domains */
+  public static DomainDiff compare(DomainList before, DomainList after) {
+    DomainDiff diff = new DomainDiff(before, after);
+    long[] oldHashes = bucketHashes(before.view());
+    long[] newHashes = bucketHashes(after.view());
+    boolean[] changedBuckets = new boolean[BUCKETS];
+    for (int bucket = 0; bucket < BUCKETS; bucket++) {
+      changedBuckets[bucket] = oldHashes[bucket] != newHashes[bucket];
+    }
+
+    List<Level> oldTop = new ArrayList<>();
+    oldTop.add(new Level(null, inBuckets(before.view(), changedBuckets), after));
+    List<Level> changed = diff.compareOld(oldTop);
+    changed.add(new Level(null, inBuckets(after.view(), changedBuckets), before));
+    diff.collectAdded(changed);
+    return diff;
+  }
+
+  /** Compares two hierarchies of single domains */
+  public static DomainDiff compare(Domain before, Domain after) {
+    DomainList beforeForest = new DomainListCompact();
+    beforeForest.addDomain(before);
+    DomainList afterForest = new DomainListCompact();
+    afterForest.addDomain(after);
+    return compare(beforeForest, afterForest);
+  }
+
+  /** @return domains of the new hierarchy, which are not in the old one */
+  public List<Domain> getAdded() {
+    return Collections.unmodifiableList(added);
+  }
+
+  /** @return domains of the old hierarchy, which are not in the new one */
+  public List<Domain> getRemoved() {
+    return Collections.unmodifiableList(removed);
+  }
+
+  public List<Move> getMoved() {
+    return Collections.unmodifiableList(moved);
+  }
+
+  /** @return domains of the new hierarchy, which are found in other sources than before */
+  public List<Domain> getSourcesChanged() {
+    return Collections.unmodifiableList(sourcesChanged);
+  }
+
+  public boolean isEmpty() {
+    return added.isEmpty() && removed.isEmpty() && moved.isEmpty() && sourcesChanged.isEmpty();
+  }
+
+  /**
+   * Walks changed subtrees of the old hierarchy, finding removed and moved domains
+   *
+   * @return levels of the new hierarchy, which may contain added domains
+   */
+  private List<Level> compareOld(List<Level> top) {
+    List<Level> changed = new ArrayList<>();
+    Deque<Level> toCompare = new ArrayDeque<>(top);
+    while (!toCompare.isEmpty()) {
+      Level level = toCompare.pop();
+      for (Domain domain : level.subDomains) {
+        String name = domain.getDomainName();
+        Domain same = level.other == null ? null : level.other.findDomain(name);
+        if (same == null) {
+          Located located = locate(after, name);
+          if (located.domain == null) {
+            removed.add(domain);
+            // its sub-domains may still be there under another parent
+            toCompare.push(new Level(domain, domain.getSubDomainsView(), null));
+            continue;
+          }
+          same = located.domain;
+          moved.add(new Move(domain, same, level.parent, located.parent));
+        }
+
+        if (domain.getStructureHash() != same.getStructureHash()) {
+          if (!domain.getSources().equals(same.getSources())) {
+            sourcesChanged.add(same);
+          }
+          toCompare.push(
+              new Level(domain, domain.getSubDomainsView(), same.getSubDomainListIfAny()));
+          changed.add(new Level(same, same.getSubDomainsView(), domain.getSubDomainListIfAny()));
+        }
+      }
+    }
+    return changed;
+  }
+
+  /** Walks changed levels of the new hierarchy, finding domains not known anywhere before */
+  private void collectAdded(List<Level> changed) {
+    Deque<Level> toCollect = new ArrayDeque<>(changed);
+    while (!toCollect.isEmpty()) {
+      Level level = toCollect.pop();
+      for (Domain domain : level.subDomains) {
+        String name = domain.getDomainName();
+        if (level.other != null && level.other.findDomain(name) != null) {
+          continue; // a pair compared by compareOld()
+        }
+        if (locate(before, name).domain != null) {
+          continue; // moved, found by compareOld()
+        }
+        added.add(domain);
+        toCollect.push(new Level(domain, domain.getSubDomainsView(), null));
+      }
+    }
+  }
+
+  /**
+   * Order-independent hashes of buckets, i.e. sums of {@link Domain#getStructureHash()} of their
+   * domains, so forests with the same hash of a bucket have the same domains in it
+   */
+  static long[] bucketHashes(Collection<Domain> domains) {
+    long[] hashes = new long[BUCKETS];
+    for (Domain domain : domains) {
+      hashes[bucketOf(domain.getDomainName())] += Domain.mix(domain.getStructureHash());
+    }
+    return hashes;
+  }
+
+  /** @return bucket of a domain, which is the same for all forests */
+  static int bucketOf(String domainName) {
+    return (int) (Domain.mix(domainName.hashCode()) & (BUCKETS - 1));
+  }
+
+  private static List<Domain> inBuckets(Collection<Domain> domains, boolean[] buckets) {
+    List<Domain> inBuckets = new ArrayList<>();
+    for (Domain domain : domains) {
+      if (buckets[bucketOf(domain.getDomainName())]) {
+        inBuckets.add(domain);
+      }
+    }
+    return inBuckets;
+  }
+
+  /** @return domain of the given name and its parent in a forest, nulls if there is none */
+  private static Located locate(DomainList forest, String domainName) {
+    Domain parent = null;
+    DomainList container = forest;
+    while (container != null) {
+      Domain domain = container.findDomain(domainName);
+      if (domain != null) {
+        return new Located(domain, parent);
+      }
+      parent = container.findParentsOf(domainName).stream().findFirst().orElse(null);
+      container = parent == null ? null : parent.getSubDomainListIfAny();
+    }
+    return new Located(null, null);
+  }
+
+  /** Sub-domains of a domain to be matched by name with the ones of its counterpart */
+  private static final class Level {
+    private final Domain parent; // null for the top level
+    private final Collection<Domain> subDomains;
+    private final DomainList other; // null if the counterpart is unknown or has no sub-domains
+
+    Level(Domain parent, Collection<Domain> subDomains, DomainList other) {
+      this.parent = parent;
+      this.subDomains = subDomains;
+      this.other = other;
+    }
+  }
+
+  private static final class Located {
+    private final Domain domain;
+    private final Domain parent;
+
+    Located(Domain domain, Domain parent) {
+      this.domain = domain;
+      this.parent = parent;
+    }
+  }
+
+  @Override
+  public String toString() {
+    return String.format(
+        "DomainDiff(added=%s, removed=%s, moved=%s, sourcesChanged=%s)",
+        added, removed, moved, sourcesChanged);
+  }
+}
@@ -0,0 +1,89 @@
+package com.shaposhnyk;
+
+import java.util.List;
+
+/**
+ * Operations over forests of domains, i.e. lists of independent top-level domains with their
+ * sub-domains.
+ *
+ * <p>A forest given as a target is supposed to be built from earlier sources than the merged
+ * trees, so when both of them contain the same domain the target's one is kept, exactly as
+ * {@link DomainList#mergeDomain(Domain)} keeps the first occurrence
+ */
+public final class DomainForests {
+  private DomainForests() {}
+
+  /** Merges all trees of a forest into the target forest, the source forest is consumed */
+  public static void mergeForest(DomainList target, List<Domain> trees) {
+    for (Domain tree : trees) {
+      mergeTree(target, tree);
+    }
+  }
+
+  /**
+   * Removes a domain of any level from the forest. Its sub-domains are re-parented to the nearest
+   * remaining ancestor, i.e. the one the removed domain belonged to, or become top-level domains
+   *
+   * @return removed domain w/o its sub-domains or null if the forest does not contain it
+   */
+  public static Domain removeDomain(DomainList forest, String domainName) {
+    DomainList container = forest;
+    while (true) {
+      Domain domain = container.findDomain(domainName);
+      if (domain != null) {
+        container.removeDomain(domain);
+        // sub-domains were independent under the removed domain, so they are in the container
+        domain.removeSubDomains().forEach(container::addDomain);
+        return domain;
+      }
+
+      Domain parentDomain = container.findParentsOf(domainName).stream().findFirst().orElse(null);
+      if (parentDomain == null) {
+        return null;
+      }
+      container = parentDomain.getSubDomainList();
+    }
+  }
+
+  /** @return top-level domain of the forest which is the domain or its parent, or null */
+  public static Domain topDomainOf(DomainList forest, String domainName) {
+    Domain domain = forest.findDomain(domainName);
+    return domain != null
+        ? domain
+        : forest.findParentsOf(domainName).stream().findFirst().orElse(null);
+  }
+
+  /**
+   * Merges a domain together with all its sub-domains into the target forest. Unlike {@link
+   * DomainList#mergeDomain(Domain)} sub-domains of an already known domain are not lost
+   */
+  public static void mergeTree(DomainList target, Domain tree) {
+    Domain sameDomain = target.findDomain(tree.getDomainName());
+    if (sameDomain != null) {
+      sameDomain.addSourcesOf(tree);
+      mergeForest(sameDomain.getSubDomainList(), tree.removeSubDomains());
+      return;
+    }
+
+    Domain parentDomain =
+        target.findParentsOf(tree.getDomainName()).stream()
+            .findFirst() // there should 1 parent or 0
+            .orElse(null);
+    if (parentDomain != null) {
+      parentDomain.includeSourcesOf(tree);
+      mergeTree(parentDomain.getSubDomainList(), tree);
+      return;
+    }
+
+    List<Domain> subDomains = target.findSubDomains(tree.getDomainName());
+    if (!subDomains.isEmpty()) {
+      // known sub-domains become children of the tree, its own children are merged after them
+      List<Domain> treeChildren = tree.removeSubDomains();
+      subDomains.forEach(target::removeDomain);
+      subDomains.forEach(tree::attachSubDomain);
+      mergeForest(tree.getSubDomainList(), treeChildren);
+    }
+
+    target.addDomain(tree);
+  }
+}
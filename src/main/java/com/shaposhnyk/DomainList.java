@@ -1,8 +1,30 @@
 package com.shaposhnyk;
 
+import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
+import java.util.stream.Stream;
 
 public interface DomainList {
+  /**
+   * Bulk alternative to merging domains one by one: domains are deduplicated (the first occurrence
+   * wins), sorted by {@link DomainNames#LABEL_ORDER} and linked to their parents in a single pass,
+   * so no domain is ever removed and re-parented
+   *
+   * @param domains domains w/o sub-domains, in the order they would be merged
+   * @return the same hierarchy, as repeated {@link #mergeDomain(Domain)} would produce, but with
+   *     domains of every level in {@link DomainNames#LABEL_ORDER} instead of the merge order
+   */
+  static DomainList buildFrom(Stream<Domain> domains) {
+    return buildFrom(domains, new DomainListMap());
+  }
+
+  /** Same as {@link #buildFrom(Stream)}, adding top-level domains to the given empty list */
+  static DomainList buildFrom(Stream<Domain> domains, DomainList topDomains) {
+    SortedDomainGrouper.groupAll(domains, topDomains::addDomain);
+    return topDomains;
+  }
+
   void addDomain(Domain domain);
 
   void removeDomain(Domain domain);
@@ -11,19 +33,55 @@ public interface DomainList {
 
   List<Domain> findSubDomains(String domainName);
 
+  /** @return copy of domains of the list */
   List<Domain> getDomains();
 
+  /**
+   * @return read-only live view of domains of the list, lists which can not provide one return a
+   *     read-only copy
+   */
+  default Collection<Domain> view() {
+    return Collections.unmodifiableList(getDomains());
+  }
+
   boolean contains(Domain domain);
 
   boolean isEmpty();
 
+  /** @return domain of the list with exactly the given name or null */
+  default Domain findDomain(String domainName) {
+    return getDomains().stream()
+        .filter(d -> d.getDomainName().equals(domainName))
+        .findFirst()
+        .orElse(null);
+  }
+
   /**
    * Modifies input lists, removing from it all subDomains of a newDomain OR adding newDomain as
    * subDomain to the one of existing domains
+   *
+   * @return copy of domains of the list, see {@link #merge(Domain, DomainListener)} to avoid it
    */
   default List<Domain> mergeDomain(Domain newDomain) {
-    if (contains(newDomain)) { // skip duplicates
-      return getDomains();
+    return mergeDomain(newDomain, DomainListener.NOOP);
+  }
+
+  /** Same as {@link #mergeDomain(Domain)}, reporting duplicates and moves to the listener */
+  default List<Domain> mergeDomain(Domain newDomain, DomainListener listener) {
+    merge(newDomain, listener);
+    return getDomains();
+  }
+
+  /**
+   * Same as {@link #mergeDomain(Domain, DomainListener)} w/o copying domains of the list, which
+   * are still available through {@link #view()}
+   */
+  default void merge(Domain newDomain, DomainListener listener) {
+    Domain sameDomain = findDomain(newDomain.getDomainName());
+    if (sameDomain != null) { // skip duplicates, keeping their sources
+      sameDomain.addSourcesOf(newDomain);
+      listener.duplicateSkipped(newDomain);
+      return;
     }
 
     Domain parentDomain =
@@ -34,17 +92,18 @@ public interface DomainList {
     if (parentDomain != null) {
       // just add newDomain as subDomain of the parent
       // I use brute force merger, but I should use DomainListMap for subDomains
-      parentDomain.mergeDomain(newDomain);
-      return getDomains();
+      listener.parentFound(parentDomain, newDomain);
+      parentDomain.mergeDomain(newDomain, listener);
+      return;
     }
 
     List<Domain> subDomains = findSubDomains(newDomain.getDomainName());
     if (!subDomains.isEmpty()) {
       subDomains.forEach(this::removeDomain);
-      subDomains.forEach(subDomain -> newDomain.mergeDomain(subDomain));
+      subDomains.forEach(subDomain -> newDomain.mergeDomain(subDomain, listener));
+      listener.subDomainsReparented(newDomain, subDomains.size());
     }
 
     addDomain(newDomain);
-    return getDomains();
   }
 }
@@ -1,5 +1,6 @@
 package com.shaposhnyk;
 
+import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
 
@@ -39,6 +40,11 @@ public class DomainListBruteForce implements DomainList {
     return Collections.unmodifiableList(knownDomains);
   }
 
+  @Override
+  public Collection<Domain> view() {
+    return Collections.unmodifiableList(knownDomains);
+  }
+
   @Override
   public boolean contains(Domain domain) {
     return knownDomains.stream().anyMatch(d -> d.getDomainName().equals(domain.getDomainName()));
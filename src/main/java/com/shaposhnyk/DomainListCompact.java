@@ -0,0 +1,157 @@
+package com.shaposhnyk;
+
+import java.util.*;
+
+/**
+ * A list of sub-domains of a single domain, most of them have just a few ones. Up to {@link
+ * #INLINE_LIMIT} domains are kept in a small array and searched linearly, which is both smaller
+ * and faster than an index for such sizes. Past the limit, domains are moved to a {@link
+ * DomainListMap} and all operations are delegated to it.
+ */
+public class DomainListCompact implements DomainList {
+  static final int INLINE_LIMIT = 8;
+
+  private Domain[] domains = new Domain[2];
+  private int size;
+  private DomainListMap index; // null while domains are inline
+
+  @Override
+  public void addDomain(Domain domain) {
+    if (index != null) {
+      index.addDomain(domain);
+      return;
+    }
+
+    if (size == INLINE_LIMIT) {
+      index = new DomainListMap();
+      for (int i = 0; i < size; i++) {
+        index.addDomain(domains[i]);
+      }
+      index.addDomain(domain);
+      domains = null;
+      return;
+    }
+
+    if (size == domains.length) {
+      domains = Arrays.copyOf(domains, Math.min(size * 2, INLINE_LIMIT));
+    }
+    domains[size++] = domain;
+  }
+
+  @Override
+  public void removeDomain(Domain domain) {
+    if (index != null) {
+      index.removeDomain(domain);
+      return;
+    }
+
+    for (int i = 0; i < size; i++) {
+      if (domains[i].equals(domain)) {
+        System.arraycopy(domains, i + 1, domains, i, size - i - 1); // preserve order
+        domains[--size] = null;
+        return;
+      }
+    }
+  }
+
+  /** @return the parent of a given domainName, domains are independent so there is 1 or 0 */
+  @Override
+  public List<Domain> findParentsOf(String domainName) {
+    if (index != null) {
+      return index.findParentsOf(domainName);
+    }
+
+    for (int i = 0; i < size; i++) {
+      if (DomainNames.isSubDomainOf(domainName, domains[i].getDomainName())) {
+        return Collections.singletonList(domains[i]);
+      }
+    }
+    return Collections.emptyList();
+  }
+
+  @Override
+  public List<Domain> findSubDomains(String domainName) {
+    if (index != null) {
+      return index.findSubDomains(domainName);
+    }
+
+    List<Domain> subDomains = new ArrayList<>();
+    for (int i = 0; i < size; i++) {
+      String name = domains[i].getDomainName();
+      if (name.equals(domainName) || DomainNames.isSubDomainOf(name, domainName)) {
+        subDomains.add(domains[i]);
+      }
+    }
+    return subDomains;
+  }
+
+  @Override
+  public List<Domain> getDomains() {
+    if (index != null) {
+      return index.getDomains();
+    }
+    return new ArrayList<>(Arrays.asList(domains).subList(0, size));
+  }
+
+  @Override
+  public Collection<Domain> view() {
+    return new AbstractCollection<Domain>() {
+      @Override
+      public Iterator<Domain> iterator() {
+        if (index != null) {
+          return index.view().iterator();
+        }
+        return new Iterator<Domain>() {
+          private int next;
+
+          @Override
+          public boolean hasNext() {
+            return next < size;
+          }
+
+          @Override
+          public Domain next() {
+            if (next >= size) {
+              throw new NoSuchElementException();
+            }
+            return domains[next++];
+          }
+        };
+      }
+
+      @Override
+      public int size() {
+        return index != null ? index.view().size() : size;
+      }
+    };
+  }
+
+  @Override
+  public boolean contains(Domain domain) {
+    return findDomain(domain.getDomainName()) != null;
+  }
+
+  @Override
+  public Domain findDomain(String domainName) {
+    if (index != null) {
+      return index.findDomain(domainName);
+    }
+
+    for (int i = 0; i < size; i++) {
+      if (domains[i].getDomainName().equals(domainName)) {
+        return domains[i];
+      }
+    }
+    return null;
+  }
+
+  @Override
+  public boolean isEmpty() {
+    return index != null ? index.isEmpty() : size == 0;
+  }
+
+  @Override
+  public String toString() {
+    return getDomains().toString();
+  }
+}
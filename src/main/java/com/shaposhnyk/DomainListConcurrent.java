@@ -0,0 +1,272 @@
+package com.shaposhnyk;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.Supplier;
+
+/**
+ * Thread-safe list of domains, which may be merged into by several threads at once.
+ *
+ * <p>A domain can only be a parent of domains sharing its last two labels, unless it is a
+ * single-label one, so the list is striped per last two labels: each stripe is an independent list
+ * guarded by its own lock, and a merge locks only the stripe of the merged domain. That makes every
+ * merge atomic, while merges of different registrable names, e.g. acme.com and some.com, do not
+ * wait for each other.
+ *
+ * <p>Single-label domains, e.g. com, are rare but are parents of all names under them. The first
+ * one takes an exclusive lock and moves all stripes of its label into a single stripe, which then
+ * holds all names of that label for the lifetime of the list.
+ *
+ * <p>Sub-domains of returned domains are modified under the same stripe lock, so they should be
+ * walked only once all writers are done
+ */
+public class DomainListConcurrent implements DomainList {
+  private final ConcurrentMap<String, DomainList> stripes = new ConcurrentHashMap<>();
+  // single-label names striped alone, only ever added under the write lock
+  private final Set<String> parentLabels = ConcurrentHashMap.newKeySet();
+  // read-locked by every operation, write-locked to move stripes under a single-label name
+  private final StampedLock stripesLock = new StampedLock();
+  private final Supplier<DomainList> stripeFactory;
+
+  public DomainListConcurrent() {
+    this(DomainListMap::new);
+  }
+
+  /** @param stripeFactory creates a (non thread-safe) list of domains for every stripe */
+  public DomainListConcurrent(Supplier<DomainList> stripeFactory) {
+    this.stripeFactory = Objects.requireNonNull(stripeFactory);
+  }
+
+  @Override
+  public void addDomain(Domain domain) {
+    String name = domain.getDomainName();
+    if (isSingleLabel(name)) {
+      long stamp = stripesLock.writeLock();
+      try {
+        parentStripeOf(name).addDomain(domain);
+      } finally {
+        stripesLock.unlockWrite(stamp);
+      }
+      return;
+    }
+
+    long stamp = stripesLock.readLock();
+    try {
+      DomainList stripe = stripeOf(name);
+      synchronized (stripe) {
+        stripe.addDomain(domain);
+      }
+    } finally {
+      stripesLock.unlockRead(stamp);
+    }
+  }
+
+  @Override
+  public void removeDomain(Domain domain) {
+    long stamp = stripesLock.readLock();
+    try {
+      DomainList stripe = existingStripeOf(domain.getDomainName());
+      if (stripe != null) {
+        synchronized (stripe) {
+          stripe.removeDomain(domain);
+        }
+      }
+    } finally {
+      stripesLock.unlockRead(stamp);
+    }
+  }
+
+  @Override
+  public List<Domain> findParentsOf(String domainName) {
+    long stamp = stripesLock.readLock();
+    try {
+      DomainList stripe = existingStripeOf(domainName);
+      if (stripe == null) {
+        return Collections.emptyList();
+      }
+      synchronized (stripe) {
+        return stripe.findParentsOf(domainName);
+      }
+    } finally {
+      stripesLock.unlockRead(stamp);
+    }
+  }
+
+  /** Sub-domains of a single-label name are collected from all stripes of that label */
+  @Override
+  public List<Domain> findSubDomains(String domainName) {
+    long stamp = stripesLock.readLock();
+    try {
+      if (isSingleLabel(domainName) && !parentLabels.contains(domainName)) {
+        List<Domain> subDomains = new ArrayList<>();
+        for (DomainList stripe : stripesUnder(domainName)) {
+          synchronized (stripe) {
+            subDomains.addAll(stripe.findSubDomains(domainName));
+          }
+        }
+        return subDomains;
+      }
+
+      DomainList stripe = existingStripeOf(domainName);
+      if (stripe == null) {
+        return Collections.emptyList();
+      }
+      synchronized (stripe) {
+        return stripe.findSubDomains(domainName);
+      }
+    } finally {
+      stripesLock.unlockRead(stamp);
+    }
+  }
+
+  @Override
+  public Domain findDomain(String domainName) {
+    long stamp = stripesLock.readLock();
+    try {
+      DomainList stripe = existingStripeOf(domainName);
+      if (stripe == null) {
+        return null;
+      }
+      synchronized (stripe) {
+        return stripe.findDomain(domainName);
+      }
+    } finally {
+      stripesLock.unlockRead(stamp);
+    }
+  }
+
+  /** @return snapshot of top-level domains of all stripes */
+  @Override
+  public List<Domain> getDomains() {
+    long stamp = stripesLock.readLock();
+    try {
+      List<Domain> domains = new ArrayList<>();
+      for (DomainList stripe : stripes.values()) {
+        synchronized (stripe) {
+          domains.addAll(stripe.getDomains());
+        }
+      }
+      return domains;
+    } finally {
+      stripesLock.unlockRead(stamp);
+    }
+  }
+
+  @Override
+  public boolean contains(Domain domain) {
+    return findDomain(domain.getDomainName()) != null;
+  }
+
+  @Override
+  public boolean isEmpty() {
+    long stamp = stripesLock.readLock();
+    try {
+      for (DomainList stripe : stripes.values()) {
+        synchronized (stripe) {
+          if (!stripe.isEmpty()) {
+            return false;
+          }
+        }
+      }
+      return true;
+    } finally {
+      stripesLock.unlockRead(stamp);
+    }
+  }
+
+  /** Atomically merges a domain into its stripe */
+  @Override
+  public void merge(Domain newDomain, DomainListener listener) {
+    String name = newDomain.getDomainName();
+    if (isSingleLabel(name)) {
+      long stamp = stripesLock.writeLock();
+      try {
+        parentStripeOf(name).merge(newDomain, listener);
+      } finally {
+        stripesLock.unlockWrite(stamp);
+      }
+      return;
+    }
+
+    long stamp = stripesLock.readLock();
+    try {
+      DomainList stripe = stripeOf(name);
+      synchronized (stripe) {
+        stripe.merge(newDomain, listener);
+      }
+    } finally {
+      stripesLock.unlockRead(stamp);
+    }
+  }
+
+  /**
+   * Stripe of a single-label name, top-level domains of all stripes of the label are moved into it
+   * when it is created. Must be called under the write lock
+   */
+  private DomainList parentStripeOf(String label) {
+    DomainList parentStripe = stripes.get(label);
+    if (parentStripe == null) {
+      parentStripe = stripeFactory.get();
+      for (DomainList stripe : stripesUnder(label)) {
+        // stripes are independent, so are their top-level domains
+        stripe.getDomains().forEach(parentStripe::addDomain);
+      }
+      stripes.keySet().removeIf(key -> isUnder(key, label));
+      stripes.put(label, parentStripe);
+    }
+    parentLabels.add(label);
+    return parentStripe;
+  }
+
+  private List<DomainList> stripesUnder(String label) {
+    List<DomainList> stripesOfLabel = new ArrayList<>();
+    stripes.forEach(
+        (key, stripe) -> {
+          if (isUnder(key, label)) {
+            stripesOfLabel.add(stripe);
+          }
+        });
+    return stripesOfLabel;
+  }
+
+  private DomainList stripeOf(String domainName) {
+    return stripes.computeIfAbsent(stripeKey(domainName), key -> stripeFactory.get());
+  }
+
+  private DomainList existingStripeOf(String domainName) {
+    return stripes.get(stripeKey(domainName));
+  }
+
+  /** @return last two labels of the name, or its last label if it is striped alone */
+  private String stripeKey(String domainName) {
+    int lastDot = domainName.lastIndexOf('.');
+    if (lastDot < 0) {
+      return domainName;
+    }
+    if (!parentLabels.isEmpty()) {
+      String label = domainName.substring(lastDot + 1);
+      if (parentLabels.contains(label)) {
+        return label;
+      }
+    }
+    return domainName.substring(domainName.lastIndexOf('.', lastDot - 1) + 1);
+  }
+
+  private static boolean isSingleLabel(String domainName) {
+    return domainName.indexOf('.') < 0;
+  }
+
+  /** @return true if the stripe key has two labels, the last of them is the given one */
+  private static boolean isUnder(String key, String label) {
+    return key.length() > label.length()
+        && key.endsWith(label)
+        && key.charAt(key.length() - label.length() - 1) == '.';
+  }
+
+  @Override
+  public String toString() {
+    return getDomains().toString();
+  }
+}
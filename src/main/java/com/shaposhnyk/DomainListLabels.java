@@ -0,0 +1,275 @@
+package com.shaposhnyk;
+
+import java.util.*;
+
+/**
+ * A list of domains indexed by int-encoded labels of a {@link LabelDictionary}. The index is a
+ * trie over label ids starting from the top-level label, so suffix checks compare ints instead
+ * of strings and no suffix strings are allocated, neither on add nor on merge of encoded domains
+ */
+public class DomainListLabels implements DomainList {
+  private final LabelDictionary dictionary;
+  // perf-wise side, it's better to use HashSet, use LinkedHashSet to preserve insertion order
+  private final Set<Domain> knownDomains = new LinkedHashSet<>(0);
+  private final Node root = new Node();
+
+  /** Trie node with an open-addressing map of children keyed by label id */
+  private static final class Node {
+    private int[] keys; // label id + 1, 0 for an empty slot
+    private Node[] children;
+    private int size;
+    private Domain domain;
+
+    Node child(int label) {
+      if (keys == null) {
+        return null;
+      }
+      int mask = keys.length - 1;
+      for (int i = mix(label) & mask; keys[i] != 0; i = (i + 1) & mask) {
+        if (keys[i] == label + 1) {
+          return children[i];
+        }
+      }
+      return null;
+    }
+
+    Node getOrCreateChild(int label) {
+      Node child = child(label);
+      if (child == null) {
+        child = new Node();
+        if (keys == null || (size + 1) * 4 > keys.length * 3) {
+          resize(keys == null ? 2 : keys.length * 2);
+        }
+        insert(label + 1, child);
+        size++;
+      }
+      return child;
+    }
+
+    void removeChild(int label) {
+      // rehash the rest, removals are rare compared to lookups
+      int[] oldKeys = keys;
+      Node[] oldChildren = children;
+      keys = new int[oldKeys.length];
+      children = new Node[oldKeys.length];
+      size = 0;
+      for (int i = 0; i < oldKeys.length; i++) {
+        if (oldKeys[i] != 0 && oldKeys[i] != label + 1) {
+          insert(oldKeys[i], oldChildren[i]);
+          size++;
+        }
+      }
+    }
+
+    boolean isEmpty() {
+      return domain == null && size == 0;
+    }
+
+    void forEachChild(Deque<Node> target) {
+      if (keys != null) {
+        for (int i = 0; i < keys.length; i++) {
+          if (keys[i] != 0) {
+            target.push(children[i]);
+          }
+        }
+      }
+    }
+
+    private void resize(int capacity) {
+      int[] oldKeys = keys;
+      Node[] oldChildren = children;
+      keys = new int[capacity];
+      children = new Node[capacity];
+      if (oldKeys != null) {
+        for (int i = 0; i < oldKeys.length; i++) {
+          if (oldKeys[i] != 0) {
+            insert(oldKeys[i], oldChildren[i]);
+          }
+        }
+      }
+    }
+
+    private void insert(int key, Node child) {
+      int mask = keys.length - 1;
+      int i = mix(key - 1) & mask;
+      while (keys[i] != 0) {
+        i = (i + 1) & mask;
+      }
+      keys[i] = key;
+      children[i] = child;
+    }
+
+    private static int mix(int label) {
+      int h = label * 0x9E3779B9;
+      return h ^ (h >>> 16);
+    }
+  }
+
+  public DomainListLabels(LabelDictionary dictionary) {
+    this.dictionary = Objects.requireNonNull(dictionary);
+  }
+
+  /** Adds new independent domain (i.e. not parent of an existing one, nor a child) to the list */
+  @Override
+  public void addDomain(Domain domain) {
+    Node node = root;
+    for (int label : labelsOf(domain)) {
+      node = node.getOrCreateChild(label);
+    }
+    node.domain = domain;
+    knownDomains.add(domain);
+  }
+
+  /** Removes a domain which is already in the list, pruning the branches left empty */
+  @Override
+  public void removeDomain(Domain domain) {
+    if (!knownDomains.remove(domain)) {
+      return;
+    }
+
+    int[] labels = labelsOf(domain);
+    Node[] path = new Node[labels.length + 1];
+    path[0] = root;
+    for (int i = 0; i < labels.length; i++) {
+      path[i + 1] = path[i].child(labels[i]);
+      if (path[i + 1] == null) {
+        return;
+      }
+    }
+
+    path[labels.length].domain = null;
+    for (int i = labels.length; i > 0 && path[i].isEmpty(); i--) {
+      path[i - 1].removeChild(labels[i - 1]);
+    }
+  }
+
+  /** @return most specific parent for a given domainName */
+  @Override
+  public List<Domain> findParentsOf(String domainName) {
+    Domain parent = null;
+    Node node = root;
+    int end = domainName.length();
+    while (end > 0) {
+      int dot = domainName.lastIndexOf('.', end - 1);
+      if (dot < 0) {
+        break; // the last label is the domain itself, not a parent
+      }
+      int label = dictionary.find(domainName.substring(dot + 1, end));
+      node = label < 0 ? null : node.child(label);
+      if (node == null) {
+        break;
+      }
+      if (node.domain != null) {
+        parent = node.domain;
+      }
+      end = dot;
+    }
+    return parent == null ? Collections.emptyList() : Collections.singletonList(parent);
+  }
+
+  /** @return domains with a given name and all its sub-domains */
+  @Override
+  public List<Domain> findSubDomains(String domainName) {
+    int[] labels = dictionary.lookup(domainName);
+    Node node = labels == null ? null : nodeOf(labels);
+    return node == null ? Collections.emptyList() : domainsUnder(node);
+  }
+
+  @Override
+  public List<Domain> getDomains() {
+    return new ArrayList<>(knownDomains);
+  }
+
+  @Override
+  public Collection<Domain> view() {
+    return Collections.unmodifiableSet(knownDomains);
+  }
+
+  @Override
+  public boolean contains(Domain domain) {
+    int[] labels = domain.getLabels(dictionary);
+    if (labels == null) {
+      labels = dictionary.lookup(domain.getDomainName());
+    }
+    Node node = labels == null ? null : nodeOf(labels);
+    return node != null && node.domain != null;
+  }
+
+  @Override
+  public Domain findDomain(String domainName) {
+    int[] labels = dictionary.lookup(domainName);
+    Node node = labels == null ? null : nodeOf(labels);
+    return node == null ? null : node.domain;
+  }
+
+  @Override
+  public boolean isEmpty() {
+    return knownDomains.isEmpty();
+  }
+
+  /** Same as the default merge, but walks the label ids only once */
+  @Override
+  public void merge(Domain newDomain, DomainListener listener) {
+    int[] labels = labelsOf(newDomain);
+    Domain parentDomain = null;
+    Node node = root;
+    for (int i = 0; i < labels.length && node != null; i++) {
+      node = node.child(labels[i]);
+      if (node != null && node.domain != null) {
+        if (i == labels.length - 1) { // skip duplicates, keeping their sources
+          node.domain.addSourcesOf(newDomain);
+          listener.duplicateSkipped(newDomain);
+          return;
+        }
+        parentDomain = node.domain;
+      }
+    }
+
+    if (parentDomain != null) {
+      listener.parentFound(parentDomain, newDomain);
+      parentDomain.mergeDomain(newDomain, listener);
+      return;
+    }
+
+    if (node != null) { // all domains of the branch are sub-domains of newDomain
+      List<Domain> subDomains = domainsUnder(node);
+      subDomains.forEach(this::removeDomain);
+      subDomains.forEach(subDomain -> newDomain.mergeDomain(subDomain, listener));
+      listener.subDomainsReparented(newDomain, subDomains.size());
+    }
+
+    addDomain(newDomain);
+  }
+
+  private int[] labelsOf(Domain domain) {
+    int[] labels = domain.getLabels(dictionary);
+    return labels != null ? labels : dictionary.encode(domain.getDomainName());
+  }
+
+  private Node nodeOf(int[] labels) {
+    Node node = root;
+    for (int i = 0; i < labels.length && node != null; i++) {
+      node = node.child(labels[i]);
+    }
+    return node == root ? null : node;
+  }
+
+  private static List<Domain> domainsUnder(Node node) {
+    List<Domain> domains = new ArrayList<>();
+    Deque<Node> toVisit = new ArrayDeque<>();
+    toVisit.push(node);
+    while (!toVisit.isEmpty()) {
+      Node current = toVisit.pop();
+      if (current.domain != null) {
+        domains.add(current.domain);
+      }
+      current.forEachChild(toVisit);
+    }
+    return domains;
+  }
+
+  @Override
+  public String toString() {
+    return knownDomains.toString();
+  }
+}
@@ -87,10 +87,33 @@ public class DomainListMap implements DomainList {
     return new ArrayList<>(knownDomains);
   }
 
+  @Override
+  public Collection<Domain> view() {
+    return Collections.unmodifiableSet(knownDomains);
+  }
+
   @Override
   public boolean contains(Domain domain) {
-    return domainsBySuffix.getOrDefault(domain.getDomainName(), new HashSet<>()).stream()
-        .anyMatch(d -> d.getDomainName().equals(domain.getDomainName()));
+    return findDomain(domain.getDomainName()) != null;
+  }
+
+  @Override
+  public Domain findDomain(String domainName) {
+    Set<Domain> domains = domainsBySuffix.get(domainName);
+    if (domains == null) {
+      return null;
+    }
+    for (Domain d : domains) {
+      if (d.getDomainName().length() == domainName.length()) {
+        return d; // the only suffix of the same length is the name itself
+      }
+    }
+    return null;
+  }
+
+  /** @return number of suffixes indexed, each domain is indexed by all its suffixes */
+  public int indexSize() {
+    return domainsBySuffix.size();
   }
 
   @Override
@@ -0,0 +1,172 @@
+package com.shaposhnyk;
+
+import java.util.*;
+
+/**
+ * A list of domains stored in a trie keyed on reversed labels, i.e. "internal.acme.com" is kept
+ * under com -> acme -> internal. Unlike {@link DomainListMap} it does not index every suffix of
+ * every domain, so parent/sub-domain searches and contains() cost O(labels) and no suffix strings
+ * are kept around
+ */
+public class DomainListTrie implements DomainList {
+  // perf-wise side, it's better to use HashSet, use LinkedHashSet to preserve insertion order
+  private final Set<Domain> knownDomains = new LinkedHashSet<>(0);
+  private final Node root = new Node();
+
+  private static final class Node {
+    // created lazily, most of the nodes are leaves
+    private Map<String, Node> children;
+    private Domain domain;
+
+    Node child(String label) {
+      return children == null ? null : children.get(label);
+    }
+
+    Node getOrCreateChild(String label) {
+      if (children == null) {
+        children = new HashMap<>(4);
+      }
+      return children.computeIfAbsent(label, key -> new Node());
+    }
+
+    boolean isEmpty() {
+      return domain == null && (children == null || children.isEmpty());
+    }
+  }
+
+  /** Adds new independent domain (i.e. not parent of an existing one, nor a child) to the list */
+  @Override
+  public void addDomain(Domain domain) {
+    String name = domain.getDomainName();
+    Node node = root;
+    int end = name.length();
+    while (end > 0) {
+      int dot = name.lastIndexOf('.', end - 1);
+      node = node.getOrCreateChild(name.substring(dot + 1, end));
+      end = dot;
+    }
+    node.domain = domain;
+    knownDomains.add(domain);
+  }
+
+  /** Removes a domain which is already in the list, pruning the branches left empty */
+  @Override
+  public void removeDomain(Domain domain) {
+    if (!knownDomains.remove(domain)) {
+      return;
+    }
+
+    String name = domain.getDomainName();
+    Deque<Node> path = new ArrayDeque<>();
+    Deque<String> labels = new ArrayDeque<>();
+    Node node = root;
+    int end = name.length();
+    while (end > 0 && node != null) {
+      int dot = name.lastIndexOf('.', end - 1);
+      String label = name.substring(dot + 1, end);
+      path.push(node);
+      labels.push(label);
+      node = node.child(label);
+      end = dot;
+    }
+    if (node == null) {
+      return;
+    }
+
+    node.domain = null;
+    while (node.isEmpty() && !path.isEmpty()) {
+      Node parent = path.pop();
+      parent.children.remove(labels.pop());
+      node = parent;
+    }
+  }
+
+  /** @return most specific parent for a given domainName */
+  @Override
+  public List<Domain> findParentsOf(String domainName) {
+    Domain parent = null;
+    Node node = root;
+    int end = domainName.length();
+    while (end > 0) {
+      int dot = domainName.lastIndexOf('.', end - 1);
+      if (dot < 0) {
+        break; // the last label is the domain itself, not a parent
+      }
+      node = node.child(domainName.substring(dot + 1, end));
+      if (node == null) {
+        break;
+      }
+      if (node.domain != null) {
+        parent = node.domain;
+      }
+      end = dot;
+    }
+    return parent == null ? Collections.emptyList() : Collections.singletonList(parent);
+  }
+
+  /** @return domains with a given name and all its sub-domains */
+  @Override
+  public List<Domain> findSubDomains(String domainName) {
+    Node node = nodeOf(domainName);
+    if (node == null) {
+      return Collections.emptyList();
+    }
+
+    List<Domain> domains = new ArrayList<>();
+    Deque<Node> toVisit = new ArrayDeque<>();
+    toVisit.push(node);
+    while (!toVisit.isEmpty()) {
+      Node current = toVisit.pop();
+      if (current.domain != null) {
+        domains.add(current.domain);
+      }
+      if (current.children != null) {
+        current.children.values().forEach(toVisit::push);
+      }
+    }
+    return domains;
+  }
+
+  @Override
+  public List<Domain> getDomains() {
+    return new ArrayList<>(knownDomains);
+  }
+
+  @Override
+  public Collection<Domain> view() {
+    return Collections.unmodifiableSet(knownDomains);
+  }
+
+  @Override
+  public boolean contains(Domain domain) {
+    Node node = nodeOf(domain.getDomainName());
+    return node != null && node.domain != null;
+  }
+
+  @Override
+  public Domain findDomain(String domainName) {
+    Node node = nodeOf(domainName);
+    return node == null ? null : node.domain;
+  }
+
+  @Override
+  public boolean isEmpty() {
+    return knownDomains.isEmpty();
+  }
+
+  private Node nodeOf(String domainName) {
+    Node node = root;
+    int end = domainName.length();
+    while (end > 0 && node != null) {
+      int dot = domainName.lastIndexOf('.', end - 1);
+      node = node.child(domainName.substring(dot + 1, end));
+      end = dot;
+    }
+    return node == root ? null : node;
+  }
+
+  @Override
+  public String toString() {
+    return knownDomains.toString();
+  }
+}
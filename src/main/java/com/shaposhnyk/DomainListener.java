@@ -0,0 +1,52 @@
+package com.shaposhnyk;
+
+import java.nio.file.Path;
+
+/**
+ * Receives events of ingestion and merging, e.g. to collect metrics, see {@link DomainMetrics}.
+ * All methods do nothing by default, and {@link #NOOP} is the default listener, so calls to it are
+ * inlined away by the JIT. Per-line counters are accumulated locally and reported once per
+ * source.
+ *
+ * <p>Listeners used with parallel ingestion are called from several threads
+ */
+public interface DomainListener {
+  DomainListener NOOP = new DomainListener() {};
+
+  /** Phases of {@link DomainService#solveProblem(java.util.List, ReportSink)} */
+  enum Phase {
+    INGEST,
+    FILTER,
+    REPORT
+  }
+
+  /**
+   * A source is read and merged
+   *
+   * @param linesRead all lines of the source
+   * @param linesRejected blank lines and lines starting with a dot
+   */
+  default void sourceIngested(Path source, long linesRead, long linesRejected, long nanos) {}
+
+  /** A domain already known from the same or an earlier source is skipped */
+  default void duplicateSkipped(Domain duplicate) {}
+
+  /**
+   * Repeats of names within a source are dropped before a domain is created, so they are not
+   * reported by {@link #duplicateSkipped(Domain)}, but once per source
+   *
+   * @param count lines repeating an earlier line of the source
+   */
+  default void repeatsSkipped(Path source, long count) {}
+
+  /** A domain goes down to its parent, it is called for every level it descends */
+  default void parentFound(Domain parent, Domain newDomain) {}
+
+  /** Known domains become sub-domains of a new domain */
+  default void subDomainsReparented(Domain newDomain, int count) {}
+
+  /** Number of suffix keys of the top-level {@link DomainListMap} after ingestion */
+  default void indexSize(int keys) {}
+
+  default void phaseCompleted(Phase phase, long nanos) {}
+}
@@ -0,0 +1,203 @@
+package com.shaposhnyk;
+
+import java.util.*;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Read-optimized lookup of the known domain owning a hostname, i.e. the longest known domain
+ * which is the hostname itself or one of its parents.
+ *
+ * <p>All known domains of a hierarchy are put into an immutable open-addressing table keyed by a
+ * hash computed from the last character to the first one. This way, hashes of all suffixes of a
+ * hostname are computed in a single right-to-left pass, and suffixes are compared in place, so
+ * {@link #findOwner(CharSequence)} does not allocate anything. ASCII letters are compared
+ * case-insensitively.
+ *
+ * <p>{@link #lookup(String)} serves repeated hostnames from a bounded LRU cache, split into
+ * segments to keep lock contention low. The table is immutable, so the lookup is thread-safe
+ */
+public class DomainLookup {
+  private static final int DEFAULT_CACHE_SIZE = 65_536;
+  private static final int CACHE_SEGMENTS = 16;
+
+  private final String[] names;
+  private final Domain[] domains;
+  private final int mask;
+
+  // hostnames without an owner are cached with a null owner, empty if the cache is disabled
+  private final List<Map<String, Domain>> cacheSegments = new ArrayList<>(CACHE_SEGMENTS);
+  private final LongAdder hits = new LongAdder();
+  private final LongAdder misses = new LongAdder();
+  private final LongAdder evictions = new LongAdder();
+
+  public DomainLookup(Collection<Domain> topDomains) {
+    this(topDomains, DEFAULT_CACHE_SIZE);
+  }
+
+  /**
+   * @param topDomains top-level domains of a built hierarchy
+   * @param cacheSize maximum number of cached hostnames, 0 disables the cache
+   */
+  public DomainLookup(Collection<Domain> topDomains, int cacheSize) {
+    List<Domain> known = new ArrayList<>();
+    Deque<Domain> toVisit = new ArrayDeque<>(topDomains);
+    while (!toVisit.isEmpty()) {
+      Domain domain = toVisit.pop();
+      known.add(domain);
+      toVisit.addAll(domain.getSubDomainsView());
+    }
+
+    int capacity = Integer.highestOneBit(Math.max(2, known.size() * 2 - 1)) << 1;
+    this.names = new String[capacity];
+    this.domains = new Domain[capacity];
+    this.mask = capacity - 1;
+    for (Domain domain : known) {
+      String name = domain.getDomainName();
+      int slot = slotOf(hash(name, 0, name.length()));
+      while (names[slot] != null && !names[slot].equals(name)) {
+        slot = (slot + 1) & mask;
+      }
+      names[slot] = name;
+      domains[slot] = domain;
+    }
+
+    int segmentSize = (cacheSize + CACHE_SEGMENTS - 1) / CACHE_SEGMENTS;
+    for (int i = 0; cacheSize > 0 && i < CACHE_SEGMENTS; i++) {
+      cacheSegments.add(
+          new LinkedHashMap<String, Domain>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Domain> eldest) {
+              boolean evict = size() > segmentSize;
+              if (evict) {
+                evictions.increment();
+              }
+              return evict;
+            }
+          });
+    }
+  }
+
+  /**
+   * Allocation-free lookup, the hostname is supposed to be trimmed
+   *
+   * @return the longest known domain, which is the hostname or its parent, or null
+   */
+  public Domain findOwner(CharSequence hostname) {
+    Domain owner = null;
+    int hash = 0;
+    for (int i = hostname.length() - 1; i >= 0; i--) {
+      hash = 31 * hash + lowerAscii(hostname.charAt(i));
+      if (i == 0 || hostname.charAt(i - 1) == '.') {
+        Domain known = find(hostname, i, hash);
+        if (known != null) {
+          owner = known;
+        }
+      }
+    }
+    return owner;
+  }
+
+  /** Allocation-free batch lookup, owners[i] becomes the owner of hostnames[i] or null */
+  public void findOwners(CharSequence[] hostnames, Domain[] owners) {
+    for (int i = 0; i < hostnames.length; i++) {
+      owners[i] = findOwner(hostnames[i]);
+    }
+  }
+
+  /**
+   * Same as {@link #findOwner(CharSequence)}, but repeated hostnames are served from the cache
+   *
+   * @return the longest known domain, which is the hostname or its parent, or null
+   */
+  public Domain lookup(String hostname) {
+    if (cacheSegments.isEmpty()) {
+      return findOwner(hostname);
+    }
+    Map<String, Domain> segment =
+        cacheSegments.get((hostname.hashCode() & Integer.MAX_VALUE) % CACHE_SEGMENTS);
+    Domain owner;
+    boolean cached;
+    synchronized (segment) {
+      owner = segment.get(hostname);
+      cached = owner != null || segment.containsKey(hostname);
+    }
+    if (cached) {
+      hits.increment();
+      return owner;
+    }
+
+    misses.increment();
+    owner = findOwner(hostname);
+    synchronized (segment) {
+      segment.put(hostname, owner);
+    }
+    return owner;
+  }
+
+  /** Cached batch lookup, owners[i] becomes the owner of hostnames[i] or null */
+  public void lookupAll(String[] hostnames, Domain[] owners) {
+    for (int i = 0; i < hostnames.length; i++) {
+      owners[i] = lookup(hostnames[i]);
+    }
+  }
+
+  public long cacheHits() {
+    return hits.sum();
+  }
+
+  public long cacheMisses() {
+    return misses.sum();
+  }
+
+  public long cacheEvictions() {
+    return evictions.sum();
+  }
+
+  /** @return number of known domains */
+  public int size() {
+    int size = 0;
+    for (String name : names) {
+      if (name != null) {
+        size++;
+      }
+    }
+    return size;
+  }
+
+  private Domain find(CharSequence hostname, int from, int hash) {
+    int length = hostname.length() - from;
+    for (int slot = slotOf(hash); names[slot] != null; slot = (slot + 1) & mask) {
+      if (names[slot].length() == length && sameChars(names[slot], hostname, from)) {
+        return domains[slot];
+      }
+    }
+    return null;
+  }
+
+  private static boolean sameChars(String name, CharSequence hostname, int from) {
+    for (int i = 0; i < name.length(); i++) {
+      if (name.charAt(i) != lowerAscii(hostname.charAt(from + i))) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /** @return hash of characters from the last one to the first one */
+  private static int hash(CharSequence chars, int from, int to) {
+    int hash = 0;
+    for (int i = to - 1; i >= from; i--) {
+      hash = 31 * hash + lowerAscii(chars.charAt(i));
+    }
+    return hash;
+  }
+
+  private int slotOf(int hash) {
+    int h = hash * 0x9E3779B9;
+    return (h ^ (h >>> 16)) & mask;
+  }
+
+  private static char lowerAscii(char c) {
+    return c >= 'A' && c <= 'Z' ? (char) (c + ('a' - 'A')) : c;
+  }
+}
@@ -0,0 +1,162 @@
+package com.shaposhnyk;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Path;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Listener counting ingestion and merge events, thread-safe and cheap under contention. It can be
+ * exposed through JMX with {@link #register(String)}
+ */
+public class DomainMetrics implements DomainListener, DomainMetricsMBean {
+  private final LongAdder sourcesIngested = new LongAdder();
+  private final LongAdder linesRead = new LongAdder();
+  private final LongAdder linesRejected = new LongAdder();
+  private final LongAdder duplicatesSkipped = new LongAdder();
+  private final LongAdder parentHits = new LongAdder();
+  private final LongAdder reparentedSubDomains = new LongAdder();
+  private volatile long indexSize;
+  private final Map<Phase, LongAdder> phaseNanos = new EnumMap<>(Phase.class);
+
+  public DomainMetrics() {
+    for (Phase phase : Phase.values()) {
+      phaseNanos.put(phase, new LongAdder());
+    }
+  }
+
+  /**
+   * Registers the metrics in the platform MBean server
+   *
+   * @param name value of the name key of the object name, e.g. a job name
+   * @return object name the metrics are registered with
+   */
+  public ObjectName register(String name) throws JMException {
+    ObjectName objectName =
+        new ObjectName("com.shaposhnyk:type=DomainMetrics,name=" + ObjectName.quote(name));
+    MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+    server.registerMBean(this, objectName);
+    return objectName;
+  }
+
+  @Override
+  public void sourceIngested(Path source, long linesRead, long linesRejected, long nanos) {
+    sourcesIngested.increment();
+    this.linesRead.add(linesRead);
+    this.linesRejected.add(linesRejected);
+  }
+
+  @Override
+  public void duplicateSkipped(Domain duplicate) {
+    duplicatesSkipped.increment();
+  }
+
+  /** Repeats within a source are counted as skipped duplicates too */
+  @Override
+  public void repeatsSkipped(Path source, long count) {
+    duplicatesSkipped.add(count);
+  }
+
+  @Override
+  public void parentFound(Domain parent, Domain newDomain) {
+    parentHits.increment();
+  }
+
+  @Override
+  public void subDomainsReparented(Domain newDomain, int count) {
+    reparentedSubDomains.add(count);
+  }
+
+  @Override
+  public void indexSize(int keys) {
+    indexSize = keys;
+  }
+
+  @Override
+  public void phaseCompleted(Phase phase, long nanos) {
+    phaseNanos.get(phase).add(nanos);
+  }
+
+  @Override
+  public long getSourcesIngested() {
+    return sourcesIngested.sum();
+  }
+
+  @Override
+  public long getLinesRead() {
+    return linesRead.sum();
+  }
+
+  @Override
+  public long getLinesRejected() {
+    return linesRejected.sum();
+  }
+
+  @Override
+  public long getDuplicatesSkipped() {
+    return duplicatesSkipped.sum();
+  }
+
+  @Override
+  public long getParentHits() {
+    return parentHits.sum();
+  }
+
+  @Override
+  public long getReparentedSubDomains() {
+    return reparentedSubDomains.sum();
+  }
+
+  @Override
+  public long getIndexSize() {
+    return indexSize;
+  }
+
+  @Override
+  public long getIngestNanos() {
+    return phaseNanos.get(Phase.INGEST).sum();
+  }
+
+  @Override
+  public long getFilterNanos() {
+    return phaseNanos.get(Phase.FILTER).sum();
+  }
+
+  @Override
+  public long getReportNanos() {
+    return phaseNanos.get(Phase.REPORT).sum();
+  }
+
+  @Override
+  public void reset() {
+    sourcesIngested.reset();
+    linesRead.reset();
+    linesRejected.reset();
+    duplicatesSkipped.reset();
+    parentHits.reset();
+    reparentedSubDomains.reset();
+    indexSize = 0;
+    phaseNanos.values().forEach(LongAdder::reset);
+  }
+
+  @Override
+  public String toString() {
+    return String.format(
+        "DomainMetrics(sources=%d, lines=%d, rejected=%d, duplicates=%d, parentHits=%d,"
+            + " reparented=%d, indexSize=%d, ingest=%dms, filter=%dms, report=%dms)",
+        getSourcesIngested(),
+        getLinesRead(),
+        getLinesRejected(),
+        getDuplicatesSkipped(),
+        getParentHits(),
+        getReparentedSubDomains(),
+        getIndexSize(),
+        getIngestNanos() / 1_000_000,
+        getFilterNanos() / 1_000_000,
+        getReportNanos() / 1_000_000);
+  }
+}
@@ -0,0 +1,26 @@
+package com.shaposhnyk;
+
+/** JMX view of {@link DomainMetrics}, times are in nanoseconds */
+public interface DomainMetricsMBean {
+  long getSourcesIngested();
+
+  long getLinesRead();
+
+  long getLinesRejected();
+
+  long getDuplicatesSkipped();
+
+  long getParentHits();
+
+  long getReparentedSubDomains();
+
+  long getIndexSize();
+
+  long getIngestNanos();
+
+  long getFilterNanos();
+
+  long getReportNanos();
+
+  void reset();
+}
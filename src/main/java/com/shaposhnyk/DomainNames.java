@@ -0,0 +1,90 @@
+package com.shaposhnyk;
+
+import java.util.Comparator;
+
+/** Helpers over plain domain names. Suppose that names are already normalized */
+public final class DomainNames {
+  /**
+   * Orders domain names by their labels starting from the top-level one, i.e. as if they were
+   * written reversed (com.acme.internal). A parent comes right before all its sub-domains, so
+   * every sub-tree of a hierarchy is a contiguous range of names sorted in this order
+   */
+  public static final Comparator<String> LABEL_ORDER = DomainNames::compareByLabels;
+
+  /**
+   * Orders reversed domain names (see {@link #reverse(String)}) the same way {@link #LABEL_ORDER}
+   * orders plain ones: a dot goes before any other character, so a label goes before any longer
+   * label it is a prefix of
+   */
+  public static final Comparator<String> REVERSED_ORDER = DomainNames::compareReversed;
+
+  private DomainNames() {}
+
+  /** @return name with labels in reverse order, i.e. com.acme.internal for internal.acme.com */
+  public static String reverse(String domainName) {
+    StringBuilder sb = new StringBuilder(domainName.length());
+    int end = domainName.length();
+    while (end >= 0) {
+      int dot = domainName.lastIndexOf('.', end - 1);
+      sb.append(domainName, dot + 1, end);
+      if (dot >= 0) {
+        sb.append('.');
+      }
+      end = dot;
+    }
+    return sb.toString();
+  }
+
+  /** @return true if supposedParent is a parent domain of a domain */
+  public static boolean isSubDomainOf(String domainName, String supposedParent) {
+    return domainName.length() > supposedParent.length()
+        // there MUST be a point just before parent domain
+        && '.' == domainName.charAt(domainName.length() - supposedParent.length() - 1)
+        && domainName.endsWith(supposedParent);
+  }
+
+  /**
+   * Trims a raw line, validates and lower-cases it, see {@link DomainNormalizer}
+   *
+   * @return domain name or null for blank lines and malformed domains
+   */
+  public static String normalize(String line) {
+    return DomainNormalizer.normalize(line);
+  }
+
+  private static int compareReversed(String a, String b) {
+    int length = Math.min(a.length(), b.length());
+    for (int i = 0; i < length; i++) {
+      char charA = a.charAt(i);
+      char charB = b.charAt(i);
+      if (charA != charB) {
+        return charA == '.' ? -1 : charB == '.' ? 1 : charA - charB;
+      }
+    }
+    return a.length() - b.length();
+  }
+
+  private static int compareByLabels(String a, String b) {
+    int endA = a.length();
+    int endB = b.length();
+    while (endA >= 0 && endB >= 0) {
+      int dotA = a.lastIndexOf('.', endA - 1);
+      int dotB = b.lastIndexOf('.', endB - 1);
+      int lengthA = endA - dotA - 1;
+      int lengthB = endB - dotB - 1;
+      for (int i = 0; i < Math.min(lengthA, lengthB); i++) {
+        int diff = a.charAt(dotA + 1 + i) - b.charAt(dotB + 1 + i);
+        if (diff != 0) {
+          return diff;
+        }
+      }
+      if (lengthA != lengthB) {
+        return lengthA - lengthB;
+      }
+      endA = dotA;
+      endB = dotB;
+    }
+    // all labels of one name are labels of another, a parent goes first
+    return endA >= 0 ? 1 : endB >= 0 ? -1 : 0;
+  }
+}
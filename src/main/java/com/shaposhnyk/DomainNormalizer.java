@@ -0,0 +1,122 @@
+package com.shaposhnyk;
+
+import java.net.IDN;
+import java.util.Locale;
+
+/**
+ * Normalization of raw lines into domain names. Plain ASCII names, i.e. nearly all of them, are
+ * trimmed, validated and lower-cased in a single scan, and a name which is already normalized is
+ * returned as is, without any allocation. That includes ASCII encoded labels (xn--), which are kept
+ * as they are. Only names with non-ASCII characters go through {@link IDN}, they are mapped to
+ * their ASCII form, so both forms of an internationalized name are the same domain. Decoding back
+ * to Unicode, e.g. for reports, is up to the caller, see {@link #toUnicode(String)}.
+ *
+ * <p>A valid name has no empty labels (i.e. no leading, trailing or double dots), labels of at
+ * most {@value #MAX_LABEL_LENGTH} characters and at most {@value #MAX_NAME_LENGTH} characters in
+ * total, both in the ASCII form. Other characters are not checked, names like _dmarc.acme.com are
+ * common in practice
+ */
+public final class DomainNormalizer {
+  public static final int MAX_LABEL_LENGTH = 63;
+  public static final int MAX_NAME_LENGTH = 253;
+
+  /** Version of the rules, to be increased whenever a line may be normalized differently */
+  public static final int VERSION = 2;
+
+  private DomainNormalizer() {}
+
+  /**
+   * Trims a raw line, validates and lower-cases it
+   *
+   * @return domain name or null for blank lines and malformed domains
+   */
+  public static String normalize(String line) {
+    return normalize(line, true);
+  }
+
+  /**
+   * Lower-cases a name w/o validating it, internationalized names are converted the same way as
+   * by {@link #normalize(String)} if possible
+   *
+   * @return the same instance if the name is in lower case ASCII already
+   */
+  public static String toCanonicalCase(String domainName) {
+    boolean upperCase = false;
+    for (int i = 0; i < domainName.length(); i++) {
+      char c = domainName.charAt(i);
+      if (c >= 0x80) {
+        try {
+          return toLowerCase(IDN.toASCII(domainName, IDN.ALLOW_UNASSIGNED));
+        } catch (IllegalArgumentException e) {
+          return domainName.toLowerCase(Locale.ROOT);
+        }
+      }
+      upperCase |= c >= 'A' && c <= 'Z';
+    }
+    return upperCase ? toLowerCase(domainName) : domainName;
+  }
+
+  /** @return readable form of a normalized name, with ASCII encoded labels decoded to Unicode */
+  public static String toUnicode(String domainName) {
+    return IDN.toUnicode(domainName, IDN.ALLOW_UNASSIGNED);
+  }
+
+  /** @param convert whether internationalized names are converted, false for ASCII forms */
+  private static String normalize(String line, boolean convert) {
+    int start = 0;
+    int end = line.length();
+    while (start < end && line.charAt(start) <= ' ') { // the same as String.trim()
+      start++;
+    }
+    while (end > start && line.charAt(end - 1) <= ' ') {
+      end--;
+    }
+    if (start == end) {
+      return null;
+    }
+
+    boolean upperCase = false;
+    int labelLength = 0;
+    for (int i = start; i < end; i++) {
+      char c = line.charAt(i);
+      if (c >= 0x80) {
+        return convert ? normalizeInternationalized(line.substring(start, end)) : null;
+      } else if (c == '.') {
+        if (labelLength == 0) {
+          return null; // leading or double dot
+        }
+        labelLength = 0;
+      } else if (++labelLength > MAX_LABEL_LENGTH) {
+        return null;
+      } else {
+        upperCase |= c >= 'A' && c <= 'Z';
+      }
+    }
+    if (labelLength == 0 || end - start > MAX_NAME_LENGTH) {
+      return null; // trailing dot or too long
+    }
+
+    String trimmed = start == 0 && end == line.length() ? line : line.substring(start, end);
+    return upperCase ? toLowerCase(trimmed) : trimmed;
+  }
+
+  private static String normalizeInternationalized(String domainName) {
+    String ascii;
+    try {
+      ascii = IDN.toASCII(domainName, IDN.ALLOW_UNASSIGNED);
+    } catch (IllegalArgumentException e) {
+      return null; // a label is too long, or can not be converted at all
+    }
+    // limits apply to the ASCII form, and its ASCII labels are not lower-cased by the conversion
+    return normalize(ascii, false);
+  }
+
+  private static String toLowerCase(String asciiName) {
+    char[] chars = new char[asciiName.length()];
+    for (int i = 0; i < chars.length; i++) {
+      char c = asciiName.charAt(i);
+      chars[i] = c >= 'A' && c <= 'Z' ? (char) (c + ('a' - 'A')) : c;
+    }
+    return new String(chars);
+  }
+}
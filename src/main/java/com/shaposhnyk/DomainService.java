@@ -2,38 +2,111 @@ package com.shaposhnyk;
 
 import java.nio.file.Path;
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.Consumer;
 import java.util.stream.Stream;
 
 import static java.util.stream.Collectors.toList;
 
 /** A service allowing to group domains with their sub-domains */
 public class DomainService {
+  // optional, when set domains are stored as label ids instead of strings
+  private final LabelDictionary dictionary;
+
+  private final DomainListener listener;
+
+  // ids of sources of domains created by this service, they live as long as the service
+  private final SourceRegistry sourceRegistry;
+
+  public DomainService() {
+    this(null);
+  }
+
+  /** @param dictionary label dictionary to encode domain names with, or null to keep strings */
+  public DomainService(LabelDictionary dictionary) {
+    this(dictionary, DomainListener.NOOP);
+  }
+
+  /**
+   * @param dictionary label dictionary to encode domain names with, or null to keep strings
+   * @param listener receives ingestion and merge events, e.g. {@link DomainMetrics}
+   */
+  public DomainService(LabelDictionary dictionary, DomainListener listener) {
+    this(dictionary, listener, new SourceRegistry());
+  }
+
+  /**
+   * @param dictionary label dictionary to encode domain names with, or null to keep strings
+   * @param listener receives ingestion and merge events, e.g. {@link DomainMetrics}
+   * @param sourceRegistry registry of sources of created domains, e.g. to share it between
+   *     services building parts of the same hierarchy
+   */
+  public DomainService(
+      LabelDictionary dictionary, DomainListener listener, SourceRegistry sourceRegistry) {
+    this.dictionary = dictionary;
+    this.listener = Objects.requireNonNull(listener);
+    this.sourceRegistry = Objects.requireNonNull(sourceRegistry);
+  }
 
   /** Reads files and prints only domains with subDomains from different sources */
   public void solveProblem(String... files) {
-    List<NamedSource> sources = NamedSources.sourcesOf(files);
+    ReportSink out = ReportSinks.text(System.out);
+    solveProblem(NamedSources.sourcesOf(files), out);
+    out.flush();
+  }
+
+  /** Writes only domains with subDomains from different sources to a sink */
+  public void solveProblem(List<NamedSource> sources, ReportSink sink) {
+    long start = System.nanoTime();
     List<Domain> topDomains = domainsWithSubDomains(sources);
+    long ingested = System.nanoTime();
+    listener.phaseCompleted(DomainListener.Phase.INGEST, ingested - start);
+
     List<Domain> domainsDiffSources = flatMapAndfilterDomainsWithDiffSourceSubDomains(topDomains);
+    long filtered = System.nanoTime();
+    listener.phaseCompleted(DomainListener.Phase.FILTER, filtered - ingested);
 
     // we build an arbitrary-level hierarchy
     // but then in flatMapAndFilter() all subDomains are brought to the second level
-    printWithIdent("", domainsDiffSources, true);
+    domainsDiffSources.forEach(sink::write);
+    listener.phaseCompleted(DomainListener.Phase.REPORT, System.nanoTime() - filtered);
   }
 
-  private void printWithIdent(String ident, List<Domain> domains, boolean printChildren) {
-    for (Domain d : domains) {
-      Path location = d.getSourceLocation().getFileName();
-      System.out.println(String.format("%s%s (%s)", ident, d.getDomainName(), location));
-      if (printChildren) {
-        printWithIdent(ident + "  ", d.getSubDomains(), false);
-      }
-    }
+  /**
+   * Same as {@link #solveProblem(String...)}, but for files sorted by {@link
+   * DomainNames#LABEL_ORDER}. Each domain is printed as soon as its group is complete
+   */
+  public void solveProblemSorted(String... files) {
+    ReportSink out = ReportSinks.text(System.out);
+    streamDomainsWithDiffSourceSubDomains(NamedSources.sourcesOf(files), out::write);
+    out.flush();
+  }
+
+  /**
+   * Same as {@link #solveProblem(String...)}, but the files are sorted on local disk first, so
+   * they do not need to fit into the heap
+   *
+   * @param tempDirectory directory for sorted runs
+   * @param memoryBudget approximate number of bytes buffered names may occupy before a spill
+   */
+  public void solveProblemOutOfCore(Path tempDirectory, long memoryBudget, String... files) {
+    ReportSink out = ReportSinks.text(System.out);
+    solveProblemOutOfCore(tempDirectory, memoryBudget, NamedSources.sourcesOf(files), out);
+    out.flush();
+  }
+
+  /** Same as {@link #solveProblemOutOfCore(Path, long, String...)}, but writes to a sink */
+  public void solveProblemOutOfCore(
+      Path tempDirectory, long memoryBudget, List<NamedSource> sources, ReportSink sink) {
+    streamDomainsWithDiffSourceSubDomains(
+        sources, new ExternalDomainSorter(tempDirectory, memoryBudget), sink::write);
   }
 
   /** @return filters out domains which have all their sub-domains in the same source */
   public List<Domain> flatMapAndfilterDomainsWithDiffSourceSubDomains(List<Domain> topDomains) {
     return topDomains.stream()
-        .flatMap(DomainService::domainWithSubDomainsIfHasDifferentSources)
+        .flatMap(this::domainWithSubDomainsIfHasDifferentSources)
         .collect(toList());
   }
 
@@ -45,48 +118,336 @@ public class DomainService {
    * @return group all domains with theirs sub-domains
    */
   public List<Domain> domainsWithSubDomains(List<NamedSource> sources) {
-    DomainList topDomains = new DomainListMap();
+    DomainList topDomains = newDomainList();
 
+    NameDeduplicator seen = new NameDeduplicator();
     for (NamedSource source : sources) {
-      source
-          .lines()
-          .map(String::trim)
-          .filter(s -> !s.isEmpty()) // skip blank lines
-          .filter(s -> !s.startsWith(".")) // make sure there is no malformed domains
-          .map(domainName -> Domain.of(domainName, source.name()))
-          .forEach(currentDomain -> mergeDomain(topDomains, currentDomain));
+      ingest(topDomains, source, seen);
+    }
+    if (topDomains instanceof DomainListMap) {
+      listener.indexSize(((DomainListMap) topDomains).indexSize());
     }
 
     return topDomains.getDomains();
   }
 
   /**
-   * @return an empty stream if domain and all it's sub-domains are from the same source, stream of
-   *     domain otherwise
+   * Same as {@link #domainsWithSubDomains(List)}, but reads all domains first and then builds the
+   * hierarchy in a single sorted pass with {@link DomainList#buildFrom(Stream, DomainList)}, so
+   * domains of every level come in {@link DomainNames#LABEL_ORDER}, not in the order of sources
+   *
+   * @return group all domains with theirs sub-domains
    */
-  private static Stream<Domain> domainWithSubDomainsIfHasDifferentSources(Domain d) {
-    Collection<Domain> sd = allSubDomainsWithSourceDifferent(d.getSourceLocation(), d);
-    if (sd.isEmpty()) {
-      return Stream.empty();
+  public List<Domain> domainsWithSubDomainsBulk(List<NamedSource> sources) {
+    Stream<Domain> domains =
+        sources.stream()
+            .flatMap(
+                source ->
+                    source
+                        .lines()
+                        .map(DomainNames::normalize)
+                        .filter(Objects::nonNull)
+                        .map(domainName -> newDomain(domainName, source.name())));
+    return DomainList.buildFrom(domains, newDomainList()).getDomains();
+  }
+
+  /**
+   * Same as {@link #domainsWithSubDomains(List)}, but sources are read and normalized by other
+   * threads while the calling thread merges, with default sizes of the pipeline
+   */
+  public List<Domain> domainsWithSubDomainsPipelined(List<NamedSource> sources) {
+    int cpus = Runtime.getRuntime().availableProcessors();
+    return domainsWithSubDomainsPipelined(
+        sources, Math.min(sources.size(), 4), Math.max(1, cpus - 1), 4096, 16);
+  }
+
+  /**
+   * Same as {@link #domainsWithSubDomains(List)}, but sources are read and normalized by other
+   * threads while the calling thread merges, see {@link IngestionPipeline}
+   *
+   * @param readers number of threads reading sources
+   * @param normalizers number of threads trimming, lower-casing and validating lines
+   * @param batchSize number of lines handed over between stages at once
+   * @param queueCapacity maximum number of batches read ahead per source
+   */
+  public List<Domain> domainsWithSubDomainsPipelined(
+      List<NamedSource> sources, int readers, int normalizers, int batchSize, int queueCapacity) {
+    DomainList topDomains = newDomainList();
+    NameDeduplicator seen = new NameDeduplicator();
+    Path[] current = new Path[1]; // names come source by source
+    long[] repeats = new long[1]; // of the current source
+    new IngestionPipeline(Math.max(1, readers), normalizers, batchSize, queueCapacity)
+        .run(
+            sources,
+            (source, domainName) -> {
+              if (source != current[0]) {
+                reportRepeats(current[0], repeats);
+                current[0] = source;
+                seen.clear();
+              }
+              if (seen.add(domainName)) {
+                merge(topDomains, newDomain(domainName, source));
+              } else {
+                repeats[0]++;
+              }
+            },
+            listener);
+    reportRepeats(current[0], repeats);
+    if (topDomains instanceof DomainListMap) {
+      listener.indexSize(((DomainListMap) topDomains).indexSize());
     }
-    return Stream.of(Domain.of(d.getDomainName(), d.getSourceLocation(), sd));
+    return topDomains.getDomains();
+  }
+
+  /**
+   * Same as {@link #domainsWithSubDomains(List)}, but builds a partial hierarchy per source in the
+   * common fork-join pool
+   */
+  public List<Domain> domainsWithSubDomainsParallel(List<NamedSource> sources) {
+    return domainsWithSubDomainsParallel(sources, ForkJoinPool.commonPool());
   }
 
-  /** @return list of sub-domains located in sources different from the given one */
-  private static Collection<Domain> allSubDomainsWithSourceDifferent(Path source, Domain domain) {
-    if (domain.getSubDomains().isEmpty()) {
+  /**
+   * Builds a partial hierarchy per source in the given pool and then merges them pairwise, the
+   * result is the same hierarchy as the sequential {@link #domainsWithSubDomains(List)} produces,
+   * with domains of every level in the same order
+   *
+   * @return group all domains with theirs sub-domains
+   */
+  public List<Domain> domainsWithSubDomainsParallel(List<NamedSource> sources, ForkJoinPool pool) {
+    if (sources.isEmpty()) {
       return Collections.emptyList();
     }
+    return pool.invoke(new IngestTask(sources)).getDomains();
+  }
+
+  /** Builds hierarchy of a half of sources, then merges it with the one of another half */
+  private class IngestTask extends RecursiveTask<DomainList> {
+    private static final long serialVersionUID = 1L;
 
-    List<Domain> list = new ArrayList<>();
-    for (Domain subDomain : domain.getSubDomains()) {
-      if (!source.equals(subDomain.getSourceLocation())) {
-        list.add(subDomain);
+    private final List<NamedSource> sources;
+
+    IngestTask(List<NamedSource> sources) {
+      this.sources = sources;
+    }
+
+    @Override
+    protected DomainList compute() {
+      if (sources.size() == 1) {
+        DomainList topDomains = newDomainList();
+        ingest(topDomains, sources.get(0), new NameDeduplicator());
+        return topDomains;
+      }
+
+      int middle = sources.size() / 2;
+      IngestTask first = new IngestTask(sources.subList(0, middle));
+      IngestTask second = new IngestTask(sources.subList(middle, sources.size()));
+      first.fork();
+      DomainList secondDomains = second.compute();
+      DomainList firstDomains = first.join();
+
+      // the first half wins on duplicates, as in a sequential merge
+      DomainForests.mergeForest(firstDomains, secondDomains.getDomains());
+      return firstDomains;
+    }
+  }
+
+  /**
+   * Streaming grouping for sources, each of them sorted by {@link DomainNames#LABEL_ORDER}. The
+   * sources are merged on the fly, and only domains of the current top-level group are kept in
+   * memory. When a group is complete, it is filtered the same way as {@link
+   * #flatMapAndfilterDomainsWithDiffSourceSubDomains(List)} does and passed to the consumer.
+   *
+   * @throws IllegalArgumentException if one of sources is not sorted
+   */
+  public void streamDomainsWithDiffSourceSubDomains(
+      List<NamedSource> sortedSources, Consumer<Domain> consumer) {
+    SortedDomainGrouper grouper =
+        new SortedDomainGrouper(
+            top -> domainWithSubDomainsIfHasDifferentSources(top).forEach(consumer));
+
+    List<Stream<String>> openedLines = new ArrayList<>();
+    try {
+      PriorityQueue<SortedSourceCursor> heads = new PriorityQueue<>();
+      for (int i = 0; i < sortedSources.size(); i++) {
+        NamedSource source = sortedSources.get(i);
+        Stream<String> lines = source.lines();
+        openedLines.add(lines);
+        SortedSourceCursor cursor = new SortedSourceCursor(i, source.name(), lines.iterator());
+        if (cursor.advance()) {
+          heads.add(cursor);
+        }
+      }
+
+      // on equal names, the cursor of an earlier source goes first
+      while (!heads.isEmpty()) {
+        SortedSourceCursor cursor = heads.poll();
+        grouper.add(newDomain(cursor.domainName, cursor.source));
+        if (cursor.advance()) {
+          heads.add(cursor);
+        }
+      }
+      grouper.finish();
+    } finally {
+      openedLines.forEach(Stream::close);
+    }
+  }
+
+  /**
+   * Out-of-core grouping for sources in any order. All sources are sorted by the external sorter,
+   * the merged stream is grouped as in {@link #streamDomainsWithDiffSourceSubDomains(List,
+   * Consumer)}, so only the current top-level group is kept in memory
+   */
+  public void streamDomainsWithDiffSourceSubDomains(
+      List<NamedSource> sources, ExternalDomainSorter sorter, Consumer<Domain> consumer) {
+    SortedDomainGrouper grouper =
+        new SortedDomainGrouper(
+            top -> domainWithSubDomainsIfHasDifferentSources(top).forEach(consumer));
+    sorter.sort(sources, (domainName, source) -> grouper.add(newDomain(domainName, source)));
+    grouper.finish();
+  }
+
+  /** Current domain name of a sorted source */
+  private static final class SortedSourceCursor implements Comparable<SortedSourceCursor> {
+    private final int index;
+    private final Path source;
+    private final Iterator<String> lines;
+    private String domainName;
+
+    SortedSourceCursor(int index, Path source, Iterator<String> lines) {
+      this.index = index;
+      this.source = source;
+      this.lines = lines;
+    }
+
+    /** @return false if there is no more domains in the source */
+    boolean advance() {
+      while (lines.hasNext()) {
+        domainName = DomainNames.normalize(lines.next());
+        if (domainName != null) {
+          return true;
+        }
       }
-      list.addAll(allSubDomainsWithSourceDifferent(source, subDomain));
+      return false;
+    }
+
+    @Override
+    public int compareTo(SortedSourceCursor another) {
+      int order = DomainNames.LABEL_ORDER.compare(domainName, another.domainName);
+      return order != 0 ? order : Integer.compare(index, another.index);
     }
+  }
+
+  private void ingest(DomainList topDomains, NamedSource source, NameDeduplicator seen) {
+    long start = System.nanoTime();
+    long[] linesReadAndRejected = new long[2]; // counted locally, reported once per source
+    long[] repeats = new long[1];
+    // repeats within a source add nothing, so they are dropped before a Domain is created
+    seen.clear();
+    if (source instanceof MappedNamedSource) {
+      // counted the same way as lines of other sources: malformed lines are never repeats
+      ((MappedNamedSource) source)
+          .forEachLine(
+              (line, length, ascii) -> {
+                linesReadAndRejected[0]++;
+                if (length == 0) {
+                  linesReadAndRejected[1]++; // blank or malformed
+                } else if (ascii) {
+                  if (seen.add(line, length)) {
+                    String domainName = MappedNamedSource.decode(line, length, true);
+                    merge(topDomains, newDomain(domainName, source.name()));
+                  } else {
+                    repeats[0]++;
+                  }
+                } else {
+                  String domainName = MappedNamedSource.decode(line, length, false);
+                  if (domainName == null) {
+                    linesReadAndRejected[1]++;
+                  } else if (seen.add(domainName)) {
+                    merge(topDomains, newDomain(domainName, source.name()));
+                  } else {
+                    repeats[0]++;
+                  }
+                }
+              });
+    } else { // lines are strings already, so repeats are found only once they are normalized
+      source
+          .lines()
+          .forEach(
+              line -> {
+                linesReadAndRejected[0]++;
+                // skip blank lines and make sure there is no malformed domains
+                String domainName = DomainNames.normalize(line);
+                if (domainName == null) {
+                  linesReadAndRejected[1]++;
+                } else if (seen.add(domainName)) {
+                  merge(topDomains, newDomain(domainName, source.name()));
+                } else {
+                  repeats[0]++;
+                }
+              });
+    }
+    reportRepeats(source.name(), repeats);
+    listener.sourceIngested(
+        source.name(),
+        linesReadAndRejected[0],
+        linesReadAndRejected[1],
+        System.nanoTime() - start);
+  }
+
+  /** Reports repeats of a source, if any, and resets the count for the next one */
+  private void reportRepeats(Path source, long[] repeats) {
+    if (repeats[0] > 0) {
+      listener.repeatsSkipped(source, repeats[0]);
+      repeats[0] = 0;
+    }
+  }
+
+  private DomainList newDomainList() {
+    return dictionary == null ? new DomainListMap() : new DomainListLabels(dictionary);
+  }
+
+  private Domain newDomain(String domainName, Path source) {
+    return dictionary == null
+        ? Domain.of(domainName, source, sourceRegistry)
+        : Domain.of(domainName, source, dictionary, sourceRegistry);
+  }
+
+  /**
+   * @return an empty stream if domain and all it's sub-domains are from the same source, stream of
+   *     domain otherwise
+   */
+  private Stream<Domain> domainWithSubDomainsIfHasDifferentSources(Domain d) {
+    if (d.isSubtreeFromSourceOf(d)) {
+      return Stream.empty();
+    }
+    List<Domain> sd = new ArrayList<>();
+    allSubDomainsWithSourceDifferent(d, sd);
+    if (sd.isEmpty()) {
+      return Stream.empty();
+    }
+    return Stream.of(Domain.of(d.getDomainName(), d.getSourceLocation(), sourceRegistry, sd));
+  }
 
-    return list;
+  /**
+   * Collects sub-domains located in sources different from the given one, subtrees with no other
+   * sources are skipped without visiting them
+   */
+  private static void allSubDomainsWithSourceDifferent(Domain domain, List<Domain> collected) {
+    DomainTraversal.walk(
+        domain.getSubDomainsView(),
+        new DomainVisitor() {
+          @Override
+          public boolean preVisit(Domain subDomain, int depth) {
+            if (subDomain.isSubtreeFromSourceOf(domain)) {
+              return false;
+            }
+            if (!subDomain.hasSameSourceAs(domain)) {
+              collected.add(subDomain);
+            }
+            return true;
+          }
+        });
   }
 
   /**
@@ -94,6 +455,11 @@ public class DomainService {
    * subDomain to the one of existing domains
    */
   public List<Domain> mergeDomain(DomainList knownDomains, Domain newDomain) {
-    return knownDomains.mergeDomain(newDomain);
+    return knownDomains.mergeDomain(newDomain, listener);
+  }
+
+  /** Same as {@link #mergeDomain(DomainList, Domain)} w/o copying the domains */
+  private void merge(DomainList knownDomains, Domain newDomain) {
+    knownDomains.merge(newDomain, listener);
   }
 }
@@ -0,0 +1,366 @@
+package com.shaposhnyk;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+
+/**
+ * Read-only list of domains backed by a memory-mapped snapshot file, so a hierarchy built once
+ * can be queried by later runs without re-reading and re-merging the sources.
+ *
+ * <p>The file holds a header, a table of sources, an array of nodes, a table of source ids and a
+ * table of names. Nodes are written in pre-order with sub-domains sorted by {@link
+ * DomainNames#LABEL_ORDER}, which makes the whole array sorted in this order, so a domain is found
+ * with a binary search, and all its sub-domains are the nodes right after it. Each node is 6 ints:
+ * offset and length of its name, offset and length of its source ids, index of its parent (-1 for
+ * a top-level domain) and the index following its last sub-domain. Source ids of a node start
+ * with its first source, nodes with the same sources share their ids.
+ *
+ * <p>Queries only decode nodes they touch, returned domains are created on demand together with
+ * their sub-domains. The file is limited to 2GB
+ */
+public class DomainSnapshot implements DomainList {
+  private static final int MAGIC = 0x444F4D53; // DOMS
+  private static final int VERSION = 2;
+  private static final int HEADER_SIZE = 20;
+  private static final int NODE_SIZE = 6 * Integer.BYTES;
+
+  private final ByteBuffer buffer;
+  private final Path[] sources;
+  private final SourceRegistry registry = new SourceRegistry(); // of created domains
+  private final int nodeCount;
+  private final int nodesOffset;
+  private final int sourceIdsOffset;
+  private final int namesOffset;
+
+  private DomainSnapshot(ByteBuffer buffer) throws IOException {
+    this.buffer = buffer;
+    if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+      throw new IOException("Not a domain snapshot or unsupported version");
+    }
+    this.nodeCount = buffer.getInt(8);
+    this.sources = new Path[buffer.getInt(12)];
+    int sourceIdCount = buffer.getInt(16);
+    int position = HEADER_SIZE;
+    for (int i = 0; i < sources.length; i++) {
+      int length = buffer.getInt(position);
+      sources[i] = length < 0 ? null : Paths.get(decode(position + Integer.BYTES, length));
+      position += Integer.BYTES + Math.max(length, 0);
+    }
+    this.nodesOffset = position;
+    this.sourceIdsOffset = position + nodeCount * NODE_SIZE;
+    this.namesOffset = sourceIdsOffset + sourceIdCount * Integer.BYTES;
+  }
+
+  /**
+   * Writes a hierarchy of domains, i.e. top-level domains and all their sub-domains, to a file
+   *
+   * @throws IOException also if the snapshot would exceed 2GB, the file is not created then
+   */
+  public static void write(Collection<Domain> topDomains, Path file) throws IOException {
+    List<Domain> nodes = new ArrayList<>();
+    List<Integer> parents = new ArrayList<>();
+    Deque<Domain> toVisit = new ArrayDeque<>();
+    Deque<Integer> toVisitParents = new ArrayDeque<>();
+    pushSorted(topDomains, -1, toVisit, toVisitParents);
+    while (!toVisit.isEmpty()) {
+      Domain domain = toVisit.pop();
+      nodes.add(domain);
+      parents.add(toVisitParents.pop());
+      pushSorted(domain.getSubDomains(), nodes.size() - 1, toVisit, toVisitParents);
+    }
+
+    int[] subtreeEnds = new int[nodes.size()];
+    for (int i = nodes.size() - 1; i >= 0; i--) {
+      subtreeEnds[i] = Math.max(subtreeEnds[i], i + 1);
+      if (parents.get(i) >= 0) {
+        subtreeEnds[parents.get(i)] = Math.max(subtreeEnds[parents.get(i)], subtreeEnds[i]);
+      }
+    }
+
+    Map<Path, Integer> sourceIds = new LinkedHashMap<>();
+    Map<List<Integer>, Integer> sourceIdOffsets = new HashMap<>();
+    List<Integer> nodeSourceIds = new ArrayList<>();
+    int[] nodeSourceOffsets = new int[nodes.size()];
+    int[] nodeSourceLengths = new int[nodes.size()];
+    for (int i = 0; i < nodes.size(); i++) {
+      List<Integer> ids = sourceIdsOf(nodes.get(i), sourceIds);
+      Integer offset = sourceIdOffsets.get(ids);
+      if (offset == null) {
+        offset = nodeSourceIds.size();
+        sourceIdOffsets.put(ids, offset);
+        nodeSourceIds.addAll(ids);
+      }
+      nodeSourceOffsets[i] = offset;
+      nodeSourceLengths[i] = ids.size();
+    }
+
+    // offsets are ints and the file is mapped at once, so it is checked before writing anything
+    long fileSize =
+        HEADER_SIZE
+            + (long) NODE_SIZE * nodes.size()
+            + (long) Integer.BYTES * nodeSourceIds.size();
+    for (Path source : sourceIds.keySet()) {
+      fileSize += Integer.BYTES;
+      if (source != null) {
+        fileSize += source.toString().getBytes(StandardCharsets.UTF_8).length;
+      }
+    }
+    List<byte[]> names = new ArrayList<>(nodes.size());
+    for (Domain node : nodes) {
+      byte[] name = node.getDomainName().getBytes(StandardCharsets.UTF_8);
+      names.add(name);
+      fileSize += name.length;
+    }
+    if (fileSize > Integer.MAX_VALUE) {
+      throw new IOException(
+          String.format(
+              "Snapshot of %d domains would take %d bytes, more than the limit of 2GB",
+              nodes.size(), fileSize));
+    }
+
+    try (DataOutputStream out =
+        new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file), 64 * 1024))) {
+      out.writeInt(MAGIC);
+      out.writeInt(VERSION);
+      out.writeInt(nodes.size());
+      out.writeInt(sourceIds.size());
+      out.writeInt(nodeSourceIds.size());
+      for (Path source : sourceIds.keySet()) {
+        if (source == null) {
+          out.writeInt(-1);
+          continue;
+        }
+        byte[] bytes = source.toString().getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+      }
+
+      int nameOffset = 0;
+      for (int i = 0; i < nodes.size(); i++) {
+        byte[] name = names.get(i);
+        out.writeInt(nameOffset);
+        out.writeInt(name.length);
+        out.writeInt(nodeSourceOffsets[i]);
+        out.writeInt(nodeSourceLengths[i]);
+        out.writeInt(parents.get(i));
+        out.writeInt(subtreeEnds[i]);
+        nameOffset += name.length;
+      }
+      for (int id : nodeSourceIds) {
+        out.writeInt(id);
+      }
+      for (byte[] name : names) {
+        out.write(name);
+      }
+    }
+  }
+
+  /** @return read-only view over a memory-mapped snapshot file */
+  public static DomainSnapshot open(Path file) throws IOException {
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+      MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+      return new DomainSnapshot(buffer);
+    }
+  }
+
+  /** @return ids of all sources of a domain, starting with its first one */
+  private static List<Integer> sourceIdsOf(Domain domain, Map<Path, Integer> sourceIds) {
+    List<Integer> ids = new ArrayList<>();
+    Path first = domain.getSourceLocation();
+    ids.add(sourceIds.computeIfAbsent(first, path -> sourceIds.size()));
+    for (Path source : domain.getSources().sources()) {
+      if (!source.equals(first)) {
+        ids.add(sourceIds.computeIfAbsent(source, path -> sourceIds.size()));
+      }
+    }
+    return ids;
+  }
+
+  private static void pushSorted(
+      Collection<Domain> domains, int parent, Deque<Domain> toVisit, Deque<Integer> parents) {
+    List<Domain> sorted = new ArrayList<>(domains);
+    sorted.sort((a, b) -> DomainNames.LABEL_ORDER.compare(b.getDomainName(), a.getDomainName()));
+    for (Domain domain : sorted) { // reversed, so the first one is on top of the stack
+      toVisit.push(domain);
+      parents.push(parent);
+    }
+  }
+
+  /** @return number of domains of all levels */
+  public int size() {
+    return nodeCount;
+  }
+
+  public String nameAt(int index) {
+    return decode(namesOffset + intAt(index, 0), intAt(index, 1));
+  }
+
+  /** @return the first source of a domain */
+  public Path sourceAt(int index) {
+    return sources[sourceIdAt(intAt(index, 2))];
+  }
+
+  /** @return all sources of a domain, starting with its first one */
+  public List<Path> sourcesAt(int index) {
+    int offset = intAt(index, 2);
+    List<Path> domainSources = new ArrayList<>(intAt(index, 3));
+    for (int i = 0; i < intAt(index, 3); i++) {
+      domainSources.add(sources[sourceIdAt(offset + i)]);
+    }
+    return domainSources;
+  }
+
+  /** @return index of the parent domain or -1 for a top-level one */
+  public int parentOf(int index) {
+    return intAt(index, 4);
+  }
+
+  /** @return index following the last sub-domain of a domain */
+  public int subtreeEndOf(int index) {
+    return intAt(index, 5);
+  }
+
+  /** @return index of a domain of any level or -1 if it is unknown */
+  public int indexOf(String domainName) {
+    int index = lowerBound(domainName);
+    return index < nodeCount && nameAt(index).equals(domainName) ? index : -1;
+  }
+
+  /** @return domain with all its sub-domains */
+  public Domain domainAt(int index) {
+    int end = subtreeEndOf(index);
+    Domain[] domains = new Domain[end - index];
+    for (int i = index; i < end; i++) {
+      String name = nameAt(i);
+      domains[i - index] = Domain.of(name, sourceAt(i), registry);
+      for (int j = 1; j < intAt(i, 3); j++) { // the same domain found in other sources
+        domains[i - index].addSourcesOf(
+            Domain.of(name, sources[sourceIdAt(intAt(i, 2) + j)], registry));
+      }
+      if (i > index) { // sub-domains are sorted, so they are independent of the previous ones
+        domains[parentOf(i) - index].getSubDomainList().addDomain(domains[i - index]);
+      }
+    }
+    for (int i = end - 1; i > index; i--) { // sub-domains go after their parents
+      domains[parentOf(i) - index].includeSourcesOf(domains[i - index]);
+    }
+    return domains[0];
+  }
+
+  @Override
+  public void addDomain(Domain domain) {
+    throw new UnsupportedOperationException("Snapshot is read-only");
+  }
+
+  @Override
+  public void removeDomain(Domain domain) {
+    throw new UnsupportedOperationException("Snapshot is read-only");
+  }
+
+  /** @return top-level domain, which is a parent of a given domainName */
+  @Override
+  public List<Domain> findParentsOf(String domainName) {
+    int dot = domainName.indexOf('.');
+    while (dot >= 0) {
+      int index = indexOf(domainName.substring(dot + 1));
+      if (index >= 0) {
+        while (parentOf(index) >= 0) {
+          index = parentOf(index);
+        }
+        return Collections.singletonList(domainAt(index));
+      }
+      dot = domainName.indexOf('.', dot + 1);
+    }
+    return Collections.emptyList();
+  }
+
+  /** @return top-level domains with a given name or being its sub-domains */
+  @Override
+  public List<Domain> findSubDomains(String domainName) {
+    List<Domain> domains = new ArrayList<>();
+    int index = lowerBound(domainName);
+    while (index < nodeCount) {
+      String name = nameAt(index);
+      if (!name.equals(domainName) && !DomainNames.isSubDomainOf(name, domainName)) {
+        break;
+      }
+      if (parentOf(index) < 0) {
+        domains.add(domainAt(index));
+        index = subtreeEndOf(index);
+      } else {
+        index++;
+      }
+    }
+    return domains;
+  }
+
+  @Override
+  public Domain findDomain(String domainName) {
+    int index = indexOf(domainName);
+    return index >= 0 && parentOf(index) < 0 ? domainAt(index) : null;
+  }
+
+  /** @return all top-level domains, it creates the whole hierarchy, prefer query methods */
+  @Override
+  public List<Domain> getDomains() {
+    List<Domain> domains = new ArrayList<>();
+    for (int index = 0; index < nodeCount; index = subtreeEndOf(index)) {
+      domains.add(domainAt(index));
+    }
+    return domains;
+  }
+
+  @Override
+  public boolean contains(Domain domain) {
+    int index = indexOf(domain.getDomainName());
+    return index >= 0 && parentOf(index) < 0;
+  }
+
+  @Override
+  public boolean isEmpty() {
+    return nodeCount == 0;
+  }
+
+  private int lowerBound(String domainName) {
+    int low = 0;
+    int high = nodeCount;
+    while (low < high) {
+      int middle = (low + high) >>> 1;
+      if (DomainNames.LABEL_ORDER.compare(nameAt(middle), domainName) < 0) {
+        low = middle + 1;
+      } else {
+        high = middle;
+      }
+    }
+    return low;
+  }
+
+  private int intAt(int index, int field) {
+    return buffer.getInt(nodesOffset + index * NODE_SIZE + field * Integer.BYTES);
+  }
+
+  private int sourceIdAt(int offset) {
+    return buffer.getInt(sourceIdsOffset + offset * Integer.BYTES);
+  }
+
+  private String decode(int position, int length) {
+    byte[] bytes = new byte[length];
+    for (int i = 0; i < length; i++) {
+      bytes[i] = buffer.get(position + i);
+    }
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  @Override
+  public String toString() {
+    return "DomainSnapshot(" + nodeCount + " domains)";
+  }
+}
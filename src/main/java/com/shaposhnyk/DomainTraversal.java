@@ -0,0 +1,104 @@
+package com.shaposhnyk;
+
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Depth-first traversal of hierarchies with an explicit stack, so the depth of a hierarchy is
+ * limited by the heap only. Sub-domains are walked through {@link Domain#getSubDomainsView()},
+ * so nothing is copied, and hierarchies must not be modified during a traversal
+ */
+public final class DomainTraversal {
+  /** Depth limit of a traversal of whole hierarchies */
+  public static final int UNLIMITED = Integer.MAX_VALUE;
+
+  private DomainTraversal() {}
+
+  /** Walks the domains and all their sub-domains in pre- and post-order */
+  public static void walk(Collection<Domain> domains, DomainVisitor visitor) {
+    walk(domains, UNLIMITED, visitor);
+  }
+
+  /**
+   * Walks the domains and their sub-domains in pre- and post-order
+   *
+   * @param maxDepth sub-domains deeper than that are not visited, 0 visits the domains only
+   */
+  public static void walk(Collection<Domain> domains, int maxDepth, DomainVisitor visitor) {
+    Deque<Iterator<Domain>> iterators = new ArrayDeque<>();
+    Deque<Domain> path = new ArrayDeque<>();
+    iterators.push(domains.iterator());
+    while (!iterators.isEmpty()) {
+      Iterator<Domain> iterator = iterators.peek();
+      if (!iterator.hasNext()) {
+        iterators.pop();
+        if (!path.isEmpty()) {
+          visitor.postVisit(path.pop(), path.size());
+        }
+        continue;
+      }
+
+      Domain domain = iterator.next();
+      int depth = path.size();
+      if (visitor.preVisit(domain, depth) && depth < maxDepth && domain.hasSubDomains()) {
+        path.push(domain);
+        iterators.push(domain.getSubDomainsView().iterator());
+      } else {
+        visitor.postVisit(domain, depth);
+      }
+    }
+  }
+
+  /** @return the domains and all their sub-domains in pre-order */
+  public static Stream<Domain> stream(Collection<Domain> domains) {
+    return StreamSupport.stream(spliterator(domains, UNLIMITED), false);
+  }
+
+  /**
+   * The size of the traversal is not known up-front, as counting it would walk the hierarchies
+   *
+   * @param maxDepth sub-domains deeper than that are not visited, 0 visits the domains only
+   * @return spliterator over the domains and their sub-domains in pre-order
+   */
+  public static Spliterator<Domain> spliterator(Collection<Domain> domains, int maxDepth) {
+    return new PreOrderSpliterator(domains, maxDepth);
+  }
+
+  private static final class PreOrderSpliterator extends Spliterators.AbstractSpliterator<Domain> {
+    private final int maxDepth;
+    private final Deque<Iterator<Domain>> iterators = new ArrayDeque<>();
+
+    PreOrderSpliterator(Collection<Domain> domains, int maxDepth) {
+      super(Long.MAX_VALUE, Spliterator.ORDERED | Spliterator.NONNULL);
+      this.maxDepth = maxDepth;
+      iterators.push(domains.iterator());
+    }
+
+    @Override
+    public boolean tryAdvance(Consumer<? super Domain> action) {
+      while (!iterators.isEmpty()) {
+        Iterator<Domain> iterator = iterators.peek();
+        if (!iterator.hasNext()) {
+          iterators.pop();
+          continue;
+        }
+
+        Domain domain = iterator.next();
+        // the depth of the domain is the number of iterators below its own one
+        if (iterators.size() - 1 < maxDepth && domain.hasSubDomains()) {
+          iterators.push(domain.getSubDomainsView().iterator());
+        }
+        action.accept(domain);
+        return true;
+      }
+      return false;
+    }
+  }
+}
@@ -0,0 +1,15 @@
+package com.shaposhnyk;
+
+/**
+ * Callbacks of a {@link DomainTraversal}, depth of top-level domains of a traversal is 0. Both do
+ * nothing by default
+ */
+public interface DomainVisitor {
+  /** @return false to skip sub-domains of the domain */
+  default boolean preVisit(Domain domain, int depth) {
+    return true;
+  }
+
+  /** Called after sub-domains of the domain, also when they were skipped */
+  default void postVisit(Domain domain, int depth) {}
+}
@@ -0,0 +1,257 @@
+package com.shaposhnyk;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.function.BiConsumer;
+import java.util.stream.Stream;
+
+/**
+ * Sorts domains of sources, which may not fit into the heap, in {@link DomainNames#LABEL_ORDER}.
+ * Normalized, reversed names are buffered together with their source ids until the memory budget
+ * is reached, then the buffer is sorted and spilled into a run file. Runs are k-way merged (in
+ * several passes, if there are more runs than the merge fan-in) into a single sorted stream.
+ *
+ * <p>Duplicates within a source are dropped on the way, a name found in several sources is fed once
+ * per source, starting with the earliest one
+ */
+public class ExternalDomainSorter {
+  private static final Logger logger = LoggerFactory.getLogger(ExternalDomainSorter.class);
+
+  private static final int BUFFER_SIZE = 64 * 1024;
+  // rough size of a buffered entry besides name characters: the entry, the string and its array
+  private static final int ENTRY_OVERHEAD = 80;
+  private static final int DEFAULT_MAX_FAN_IN = 64;
+
+  private final Path tempDirectory;
+  private final long memoryBudget;
+  private final int maxFanIn;
+
+  /** Consumer of sorted records */
+  private interface RecordConsumer {
+    void accept(String reversedName, int sourceId) throws IOException;
+  }
+
+  /**
+   * @param tempDirectory directory for run files
+   * @param memoryBudget approximate number of bytes domain names are allowed to occupy in heap
+   */
+  public ExternalDomainSorter(Path tempDirectory, long memoryBudget) {
+    this(tempDirectory, memoryBudget, DEFAULT_MAX_FAN_IN);
+  }
+
+  /** @param maxFanIn maximum number of runs merged at once, each of them holds a read buffer */
+  public ExternalDomainSorter(Path tempDirectory, long memoryBudget, int maxFanIn) {
+    if (maxFanIn < 2) {
+      throw new IllegalArgumentException("Merge fan-in must be at least 2: " + maxFanIn);
+    }
+    if (memoryBudget <= 0) {
+      throw new IllegalArgumentException("Memory budget must be positive: " + memoryBudget);
+    }
+    this.tempDirectory = Objects.requireNonNull(tempDirectory);
+    this.memoryBudget = memoryBudget;
+    this.maxFanIn = maxFanIn;
+  }
+
+  /**
+   * Feeds domain names of all sources to the consumer in {@link DomainNames#LABEL_ORDER} together
+   * with their source. A name is fed once per source it is found in, in the order of sources, so
+   * the first one comes with its earliest source and the next ones only add sources
+   *
+   * @throws UncheckedIOException if run files cannot be written or read
+   */
+  public void sort(List<NamedSource> sources, BiConsumer<String, Path> consumer) {
+    RecordConsumer output =
+        (reversedName, sourceId) ->
+            consumer.accept(DomainNames.reverse(reversedName), sources.get(sourceId).name());
+
+    List<Path> runs = new ArrayList<>();
+    try {
+      List<Entry> buffer = new ArrayList<>();
+      long bufferBytes = 0;
+      for (int sourceId = 0; sourceId < sources.size(); sourceId++) {
+        try (Stream<String> lines = sources.get(sourceId).lines()) {
+          Iterator<String> iterator = lines.iterator();
+          while (iterator.hasNext()) {
+            String domainName = DomainNames.normalize(iterator.next());
+            if (domainName == null) {
+              continue;
+            }
+            buffer.add(new Entry(DomainNames.reverse(domainName), sourceId));
+            bufferBytes += ENTRY_OVERHEAD + 2L * domainName.length();
+            if (bufferBytes >= memoryBudget) {
+              runs.add(spill(buffer));
+              buffer.clear();
+              bufferBytes = 0;
+            }
+          }
+        }
+      }
+
+      if (runs.isEmpty()) { // everything fits in memory
+        Collections.sort(buffer);
+        writeDistinct(buffer, output);
+        return;
+      }
+      if (!buffer.isEmpty()) {
+        runs.add(spill(buffer));
+        buffer.clear();
+      }
+
+      // runs before the index are merged and deleted, merged runs are added to the end
+      int first = 0;
+      while (runs.size() - first > maxFanIn) {
+        List<Path> merged = new ArrayList<>(runs.subList(first, first + maxFanIn));
+        first += maxFanIn;
+        runs.add(mergeIntoRun(merged));
+      }
+      merge(runs.subList(first, runs.size()), output);
+    } catch (IOException e) {
+      throw new UncheckedIOException("Unable to sort domains in " + tempDirectory, e);
+    } finally {
+      runs.forEach(ExternalDomainSorter::delete);
+    }
+  }
+
+  private Path spill(List<Entry> buffer) throws IOException {
+    Collections.sort(buffer);
+    Path run = Files.createTempFile(tempDirectory, "domains-", ".run");
+    try (DataOutputStream out = openRun(run)) {
+      writeDistinct(buffer, (reversedName, sourceId) -> writeRecord(out, reversedName, sourceId));
+      out.writeBoolean(false);
+    } catch (IOException | RuntimeException e) {
+      delete(run);
+      throw e;
+    }
+    logger.debug("Spilled {} domains into {}", buffer.size(), run);
+    return run;
+  }
+
+  private Path mergeIntoRun(List<Path> runs) throws IOException {
+    Path run = Files.createTempFile(tempDirectory, "domains-", ".run");
+    try (DataOutputStream out = openRun(run)) {
+      merge(runs, (reversedName, sourceId) -> writeRecord(out, reversedName, sourceId));
+      out.writeBoolean(false);
+    } catch (IOException | RuntimeException e) {
+      delete(run);
+      throw e;
+    } finally {
+      runs.forEach(ExternalDomainSorter::delete);
+    }
+    return run;
+  }
+
+  /** k-way merge of sorted runs, skipping duplicates of the same source */
+  private static void merge(List<Path> runs, RecordConsumer output) throws IOException {
+    List<RunReader> readers = new ArrayList<>();
+    try {
+      PriorityQueue<RunReader> heads = new PriorityQueue<>();
+      for (Path run : runs) {
+        RunReader reader = new RunReader(run);
+        readers.add(reader);
+        if (reader.advance()) {
+          heads.add(reader);
+        }
+      }
+
+      Entry last = null;
+      while (!heads.isEmpty()) {
+        RunReader reader = heads.poll();
+        if (!reader.current.isSameAs(last)) {
+          last = reader.current;
+          output.accept(last.reversedName, last.sourceId);
+        }
+        if (reader.advance()) {
+          heads.add(reader);
+        }
+      }
+    } finally {
+      for (RunReader reader : readers) {
+        reader.in.close();
+      }
+    }
+  }
+
+  private static void writeDistinct(List<Entry> sorted, RecordConsumer output) throws IOException {
+    Entry last = null;
+    for (Entry entry : sorted) {
+      if (!entry.isSameAs(last)) {
+        last = entry;
+        output.accept(entry.reversedName, entry.sourceId);
+      }
+    }
+  }
+
+  private static DataOutputStream openRun(Path run) throws IOException {
+    return new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(run), BUFFER_SIZE));
+  }
+
+  private static void writeRecord(DataOutputStream out, String reversedName, int sourceId)
+      throws IOException {
+    out.writeBoolean(true);
+    out.writeInt(sourceId);
+    out.writeUTF(reversedName);
+  }
+
+  private static void delete(Path run) {
+    try {
+      Files.deleteIfExists(run);
+    } catch (IOException e) {
+      logger.warn("Unable to delete run file {}", run);
+    }
+  }
+
+  /** Reversed name with its source, ordered by name, then by source */
+  private static final class Entry implements Comparable<Entry> {
+    private final String reversedName;
+    private final int sourceId;
+
+    Entry(String reversedName, int sourceId) {
+      this.reversedName = reversedName;
+      this.sourceId = sourceId;
+    }
+
+    /** @return true if both entries are the same name of the same source */
+    boolean isSameAs(Entry another) {
+      return another != null
+          && sourceId == another.sourceId
+          && reversedName.equals(another.reversedName);
+    }
+
+    @Override
+    public int compareTo(Entry another) {
+      int order = DomainNames.REVERSED_ORDER.compare(reversedName, another.reversedName);
+      return order != 0 ? order : Integer.compare(sourceId, another.sourceId);
+    }
+  }
+
+  /** Sequential reader of a run file */
+  private static final class RunReader implements Comparable<RunReader> {
+    private final DataInputStream in;
+    private Entry current;
+
+    RunReader(Path run) throws IOException {
+      this.in =
+          new DataInputStream(new BufferedInputStream(Files.newInputStream(run), BUFFER_SIZE));
+    }
+
+    boolean advance() throws IOException {
+      if (!in.readBoolean()) {
+        current = null;
+        return false;
+      }
+      int sourceId = in.readInt();
+      current = new Entry(in.readUTF(), sourceId);
+      return true;
+    }
+
+    @Override
+    public int compareTo(RunReader another) {
+      return current.compareTo(another.current);
+    }
+  }
+}
@@ -0,0 +1,389 @@
+package com.shaposhnyk;
+
+import java.util.*;
+import java.util.function.Consumer;
+
+/**
+ * Immutable set of domain names compiled from a built hierarchy, for services which only look
+ * domains up. Names are stored as a minimized acyclic automaton (DAFSA) over their labels taken
+ * from the top-level one, i.e. com, acme, www for www.acme.com. A path from the root state is a
+ * chain of parent domains, and equal subtrees (e.g. every leaf, or every www with the same
+ * sub-domains) are stored once.
+ *
+ * <p>Everything is kept in flat primitive arrays: distinct labels in a sorted char arena, and
+ * outgoing edges of each state sorted by label id, so a lookup does a binary search per label and
+ * allocates nothing. Sources of domains are not kept.
+ *
+ * <p>Names given to lookups are supposed to be normalized, see {@link DomainNormalizer}
+ */
+public final class FrozenDomainSet {
+  private static final int NO_STATE = -1;
+
+  // labels sorted by String order, label i is labelChars[labelOffsets[i]..labelOffsets[i + 1])
+  private final char[] labelChars;
+  private final int[] labelOffsets;
+
+  // edges of state s are firstEdge[s]..firstEdge[s + 1], sorted by label id
+  private final int[] firstEdge;
+  private final int[] edgeLabels;
+  private final int[] edgeTargets;
+  private final long[] finalStates;
+  private final int root;
+  private final int size;
+
+  private FrozenDomainSet(
+      char[] labelChars,
+      int[] labelOffsets,
+      int[] firstEdge,
+      int[] edgeLabels,
+      int[] edgeTargets,
+      long[] finalStates,
+      int size) {
+    this.labelChars = labelChars;
+    this.labelOffsets = labelOffsets;
+    this.firstEdge = firstEdge;
+    this.edgeLabels = edgeLabels;
+    this.edgeTargets = edgeTargets;
+    this.finalStates = finalStates;
+    this.root = firstEdge.length - 2; // the root is frozen last
+    this.size = size;
+  }
+
+  /** @return set of all domains of a hierarchy, which may be dropped afterwards */
+  public static FrozenDomainSet freeze(Collection<Domain> topDomains) {
+    List<String> names = new ArrayList<>();
+    DomainTraversal.stream(topDomains).forEach(domain -> names.add(domain.getDomainName()));
+    return of(names);
+  }
+
+  /** @return set of normalized domain names, duplicates are ignored */
+  public static FrozenDomainSet of(Collection<String> domainNames) {
+    SortedSet<String> distinctLabels = new TreeSet<>();
+    for (String name : domainNames) {
+      for (String label : name.split("\\.")) {
+        distinctLabels.add(label);
+      }
+    }
+    String[] labels = distinctLabels.toArray(new String[0]);
+    int[] labelOffsets = new int[labels.length + 1];
+    StringBuilder labelChars = new StringBuilder();
+    for (int i = 0; i < labels.length; i++) {
+      labelChars.append(labels[i]);
+      labelOffsets[i + 1] = labelChars.length();
+    }
+
+    // words are label ids from the top-level label, minimization needs them sorted
+    List<int[]> words = new ArrayList<>(domainNames.size());
+    for (String name : domainNames) {
+      String[] nameLabels = name.split("\\.");
+      int[] word = new int[nameLabels.length];
+      for (int i = 0; i < word.length; i++) {
+        word[i] = Arrays.binarySearch(labels, nameLabels[nameLabels.length - 1 - i]);
+      }
+      words.add(word);
+    }
+    words.sort(FrozenDomainSet::compareWords);
+
+    Builder builder = new Builder();
+    int size = 0;
+    int[] previous = null;
+    for (int[] word : words) {
+      if (previous == null || compareWords(previous, word) != 0) {
+        builder.add(word);
+        size++;
+      }
+      previous = word;
+    }
+    builder.finish();
+
+    return new FrozenDomainSet(
+        labelChars.toString().toCharArray(),
+        labelOffsets,
+        Arrays.copyOf(builder.firstEdge, builder.states + 1),
+        Arrays.copyOf(builder.edgeLabels, builder.edges),
+        Arrays.copyOf(builder.edgeTargets, builder.edges),
+        Arrays.copyOf(builder.finalStates, (builder.states + 63) / 64),
+        size);
+  }
+
+  /** @return number of domains */
+  public int size() {
+    return size;
+  }
+
+  /** @return number of states of the automaton, which is usually much smaller than the size */
+  public int stateCount() {
+    return firstEdge.length - 1;
+  }
+
+  /** @return approximate number of bytes taken by the arrays */
+  public long sizeInBytes() {
+    return 2L * labelChars.length
+        + 4L * (labelOffsets.length + firstEdge.length + edgeLabels.length + edgeTargets.length)
+        + 8L * finalStates.length;
+  }
+
+  public boolean contains(String domainName) {
+    int state = stateOf(domainName);
+    return state != NO_STATE && isFinal(state);
+  }
+
+  /** @return the most specific known parent of a domain or null, the domain may be unknown */
+  public String findParent(String domainName) {
+    return findOwner(domainName, false);
+  }
+
+  /** @return the known domain itself or its most specific known parent, or null */
+  public String findOwner(String hostname) {
+    return findOwner(hostname, true);
+  }
+
+  /**
+   * Feeds the domain, if it is known, and all its known sub-domains to the consumer in {@link
+   * DomainNames#LABEL_ORDER}, i.e. a parent goes before its sub-domains
+   */
+  public void forEachInSubtree(String domainName, Consumer<String> consumer) {
+    int state = stateOf(domainName);
+    if (state == NO_STATE) {
+      return;
+    }
+    if (isFinal(state)) {
+      consumer.accept(domainName);
+    }
+
+    // labels of the current path below the domain and the next edge to follow at each depth
+    int[] path = new int[8];
+    int[] nextEdge = new int[8];
+    int[] states = new int[8];
+    int depth = 0;
+    states[0] = state;
+    nextEdge[0] = firstEdge[state];
+    while (depth >= 0) {
+      int current = states[depth];
+      if (nextEdge[depth] == firstEdge[current + 1]) {
+        depth--;
+        continue;
+      }
+      int edge = nextEdge[depth]++;
+      int target = edgeTargets[edge];
+      if (++depth == states.length) {
+        path = Arrays.copyOf(path, depth * 2);
+        nextEdge = Arrays.copyOf(nextEdge, depth * 2);
+        states = Arrays.copyOf(states, depth * 2);
+      }
+      path[depth] = edgeLabels[edge];
+      states[depth] = target;
+      nextEdge[depth] = firstEdge[target];
+      if (isFinal(target)) {
+        consumer.accept(nameOf(path, depth, domainName));
+      }
+    }
+  }
+
+  /** @return state reached by all labels of the name or NO_STATE */
+  private int stateOf(String domainName) {
+    int state = root;
+    int end = domainName.length();
+    while (end > 0 && state != NO_STATE) {
+      int start = domainName.lastIndexOf('.', end - 1) + 1;
+      state = next(state, domainName, start, end);
+      end = start - 1;
+    }
+    return state;
+  }
+
+  private String findOwner(String hostname, boolean includeItself) {
+    int state = root;
+    int owner = -1; // start of the owner's name
+    int end = hostname.length();
+    while (end > 0) {
+      int start = hostname.lastIndexOf('.', end - 1) + 1;
+      state = next(state, hostname, start, end);
+      if (state == NO_STATE) {
+        break;
+      }
+      if (isFinal(state) && (start > 0 || includeItself)) {
+        owner = start;
+      }
+      end = start - 1;
+    }
+    return owner < 0 ? null : hostname.substring(owner);
+  }
+
+  /** @return target of the edge of a state labeled with name[start..end) or NO_STATE */
+  private int next(int state, String name, int start, int end) {
+    int low = firstEdge[state];
+    int high = firstEdge[state + 1] - 1;
+    while (low <= high) {
+      int middle = (low + high) >>> 1;
+      int order = compareLabel(edgeLabels[middle], name, start, end);
+      if (order < 0) {
+        low = middle + 1;
+      } else if (order > 0) {
+        high = middle - 1;
+      } else {
+        return edgeTargets[middle];
+      }
+    }
+    return NO_STATE;
+  }
+
+  private int compareLabel(int label, String name, int start, int end) {
+    int offset = labelOffsets[label];
+    int length = labelOffsets[label + 1] - offset;
+    int common = Math.min(length, end - start);
+    for (int i = 0; i < common; i++) {
+      int order = labelChars[offset + i] - name.charAt(start + i);
+      if (order != 0) {
+        return order;
+      }
+    }
+    return length - (end - start);
+  }
+
+  private String nameOf(int[] path, int depth, String domainName) {
+    StringBuilder name = new StringBuilder(domainName.length() + depth * 8);
+    for (int i = depth; i > 0; i--) {
+      int offset = labelOffsets[path[i]];
+      name.append(labelChars, offset, labelOffsets[path[i] + 1] - offset).append('.');
+    }
+    return name.append(domainName).toString();
+  }
+
+  private boolean isFinal(int state) {
+    return (finalStates[state >>> 6] & (1L << state)) != 0;
+  }
+
+  private static int compareWords(int[] a, int[] b) {
+    int common = Math.min(a.length, b.length);
+    for (int i = 0; i < common; i++) {
+      if (a[i] != b[i]) {
+        return Integer.compare(a[i], b[i]);
+      }
+    }
+    return Integer.compare(a.length, b.length);
+  }
+
+  /**
+   * Incremental construction of a minimal automaton from sorted words (Daciuk et al.). Only the
+   * states on the path of the last word are mutable, once a word diverges from that path, its
+   * deeper states are frozen: replaced by an equal frozen state if there is one, or frozen as new
+   */
+  private static final class Builder {
+    private final List<OpenState> path = new ArrayList<>();
+    private final Map<Signature, Integer> frozen = new HashMap<>();
+
+    private int states;
+    private int[] firstEdge = new int[16];
+    private long[] finalStates = new long[1];
+    private int edges;
+    private int[] edgeLabels = new int[16];
+    private int[] edgeTargets = new int[16];
+
+    Builder() {
+      path.add(new OpenState());
+    }
+
+    void add(int[] word) {
+      int common = 0;
+      while (common < path.size() - 1 && common < word.length) {
+        OpenState state = path.get(common);
+        if (state.labels.isEmpty() || state.labels.get(state.labels.size() - 1) != word[common]) {
+          break;
+        }
+        common++;
+      }
+      freezeDeeperThan(common);
+
+      for (int i = common; i < word.length; i++) {
+        path.get(i).labels.add(word[i]);
+        path.add(new OpenState());
+      }
+      path.get(word.length).isFinal = true;
+    }
+
+    void finish() {
+      freezeDeeperThan(0);
+      freeze(path.get(0)); // the root goes last
+    }
+
+    private void freezeDeeperThan(int depth) {
+      while (path.size() - 1 > depth) {
+        OpenState child = path.remove(path.size() - 1);
+        path.get(path.size() - 1).targets.add(freeze(child));
+      }
+    }
+
+    private int freeze(OpenState state) {
+      Signature signature = new Signature(state);
+      Integer known = frozen.get(signature);
+      if (known != null) {
+        return known;
+      }
+
+      int id = states++;
+      if (states + 1 > firstEdge.length) {
+        firstEdge = Arrays.copyOf(firstEdge, firstEdge.length * 2);
+      }
+      if ((id >>> 6) >= finalStates.length) {
+        finalStates = Arrays.copyOf(finalStates, finalStates.length * 2);
+      }
+      if (state.isFinal) {
+        finalStates[id >>> 6] |= 1L << id;
+      }
+      firstEdge[id] = edges;
+      for (int i = 0; i < signature.labels.length; i++) {
+        if (edges == edgeLabels.length) {
+          edgeLabels = Arrays.copyOf(edgeLabels, edges * 2);
+          edgeTargets = Arrays.copyOf(edgeTargets, edges * 2);
+        }
+        edgeLabels[edges] = signature.labels[i];
+        edgeTargets[edges] = signature.targets[i];
+        edges++;
+      }
+      firstEdge[id + 1] = edges;
+      frozen.put(signature, id);
+      return id;
+    }
+  }
+
+  /** A state whose edges may still change, targets of all but the last edge are frozen */
+  private static final class OpenState {
+    private final List<Integer> labels = new ArrayList<>(2);
+    private final List<Integer> targets = new ArrayList<>(2);
+    private boolean isFinal;
+  }
+
+  /** Finality and edges of a state, equal for equivalent states since targets are frozen */
+  private static final class Signature {
+    private final boolean isFinal;
+    private final int[] labels;
+    private final int[] targets;
+    private final int hash;
+
+    Signature(OpenState state) {
+      this.isFinal = state.isFinal;
+      this.labels = state.labels.stream().mapToInt(Integer::intValue).toArray();
+      this.targets = state.targets.stream().mapToInt(Integer::intValue).toArray();
+      this.hash =
+          31 * (31 * Boolean.hashCode(isFinal) + Arrays.hashCode(labels))
+              + Arrays.hashCode(targets);
+    }
+
+    @Override
+    public int hashCode() {
+      return hash;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      if (!(obj instanceof Signature)) {
+        return false;
+      }
+      Signature another = (Signature) obj;
+      return isFinal == another.isFinal
+          && Arrays.equals(labels, another.labels)
+          && Arrays.equals(targets, another.targets);
+    }
+  }
+}
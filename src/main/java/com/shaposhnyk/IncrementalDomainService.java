@@ -0,0 +1,286 @@
+package com.shaposhnyk;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.function.BiConsumer;
+
+import static java.nio.file.StandardWatchEventKinds.*;
+
+/**
+ * Keeps a live hierarchy of domains of several source files and its different-source report up to
+ * date while the files change.
+ *
+ * <p>Files are given in the order of precedence: a domain found in several files belongs to the
+ * first of them and has all of them as its sources, as in {@link
+ * DomainService#domainsWithSubDomains(List)}. On a change, the new contents of a file is diffed
+ * against the previous one, and only domains added to or removed from the file, i.e. the ones
+ * whose set of files changed, are removed from the hierarchy and merged again with their current
+ * files, if any. Sub-domains of a removed domain are re-parented to the nearest remaining ancestor
+ * or become top-level domains. Then the report is recomputed only for top-level domains containing
+ * the changed domains.
+ *
+ * <p>Changes are detected by a {@link WatchService} once {@link #start()} is called, or applied
+ * explicitly with {@link #refresh(Path)}. Both are serialized, so the service is thread-safe
+ */
+public class IncrementalDomainService implements Closeable {
+  private static final Logger logger = LoggerFactory.getLogger(IncrementalDomainService.class);
+
+  private final SourceRegistry sourceRegistry = new SourceRegistry();
+  private final DomainService domainService =
+      new DomainService(null, DomainListener.NOOP, sourceRegistry);
+  private final List<Path> files;
+  private final Map<Path, Set<String>> contents = new HashMap<>();
+  private final DomainList topDomains = new DomainListMap();
+  private final Map<String, Domain> report = new TreeMap<>(DomainNames.LABEL_ORDER);
+  private final BiConsumer<String, Domain> reportListener;
+
+  private WatchService watchService;
+
+  public IncrementalDomainService(List<Path> files) {
+    this(files, (topDomainName, group) -> {});
+  }
+
+  /**
+   * @param files source files in the order of precedence
+   * @param reportListener receives name of every top-level domain whose report entry changed and
+   *     its new entry, i.e. the domain with its different-source sub-domains, or null if it has
+   *     no entry anymore
+   */
+  public IncrementalDomainService(List<Path> files, BiConsumer<String, Domain> reportListener) {
+    this.files = new ArrayList<>(files);
+    this.reportListener = Objects.requireNonNull(reportListener);
+    for (Path file : this.files) {
+      Set<String> names = read(file);
+      contents.put(file, names);
+      for (String name : names) {
+        topDomains.merge(Domain.of(name, file, sourceRegistry), DomainListener.NOOP);
+      }
+    }
+    Set<String> all = new HashSet<>();
+    topDomains.getDomains().forEach(d -> all.add(d.getDomainName()));
+    updateReport(all);
+  }
+
+  /** @return top-level domains with their different-source sub-domains, ordered by labels */
+  public synchronized List<Domain> report() {
+    return new ArrayList<>(report.values());
+  }
+
+  /** @return current hierarchy, it is a copy which does not change with the files */
+  public synchronized List<Domain> domains() {
+    List<Domain> copies = new ArrayList<>();
+    topDomains.getDomains().forEach(d -> copies.add(copyOf(d)));
+    return copies;
+  }
+
+  /**
+   * Re-reads a file and applies the difference with its previous contents. A missing file is
+   * considered empty, a file which can not be read is left as it was
+   */
+  public synchronized void refresh(Path file) {
+    if (!contents.containsKey(file)) {
+      throw new IllegalArgumentException("Unknown source " + file);
+    }
+    Set<String> newNames;
+    try {
+      newNames = read(file);
+    } catch (UncheckedIOException e) {
+      logger.warn("Source {} can not be read, previous contents is kept", file, e);
+      return;
+    }
+
+    Set<String> oldNames = contents.get(file);
+    Set<String> changed = new HashSet<>();
+    oldNames.stream().filter(name -> !newNames.contains(name)).forEach(changed::add);
+    newNames.stream().filter(name -> !oldNames.contains(name)).forEach(changed::add);
+
+    Set<String> known = new HashSet<>();
+    changed.stream().filter(name -> !filesOf(name).isEmpty()).forEach(known::add);
+    contents.put(file, newNames);
+
+    Set<String> affectedTops = new HashSet<>();
+    for (String name : changed) {
+      // the set of files of a changed name is always different, even if its owner is the same
+      List<Path> newFiles = filesOf(name);
+      addTopOf(name, affectedTops);
+      if (known.contains(name)) {
+        Domain removed = DomainForests.removeDomain(topDomains, name);
+        if (removed != null && affectedTops.contains(name)) {
+          // it was a top-level domain, its sub-domains might have become top-level ones
+          topDomains.findSubDomains(name).forEach(d -> affectedTops.add(d.getDomainName()));
+        }
+      }
+      if (!newFiles.isEmpty()) {
+        // top-level sub-domains of the new domain stop being top-level ones
+        topDomains.findSubDomains(name).forEach(d -> affectedTops.add(d.getDomainName()));
+        topDomains.merge(domainOf(name, newFiles), DomainListener.NOOP);
+        addTopOf(name, affectedTops);
+      }
+    }
+    logger.debug("{} changed domains of {} affected {} top-level domains",
+        changed.size(), file, affectedTops.size());
+    updateReport(affectedTops);
+  }
+
+  /** Starts watching directories of the files, changes are applied in a background thread */
+  public synchronized void start() throws IOException {
+    if (watchService != null) {
+      throw new IllegalStateException("Already started");
+    }
+    watchService = FileSystems.getDefault().newWatchService();
+    Set<Path> directories = new HashSet<>();
+    for (Path file : files) {
+      Path directory = file.toAbsolutePath().getParent();
+      if (directories.add(directory)) {
+        directory.register(watchService, ENTRY_CREATE, ENTRY_MODIFY, ENTRY_DELETE);
+      }
+    }
+
+    WatchService watcher = watchService;
+    Thread watchThread = new Thread(() -> watch(watcher), "domain-source-watcher");
+    watchThread.setDaemon(true);
+    watchThread.start();
+  }
+
+  /** Stops watching the files */
+  @Override
+  public void close() throws IOException {
+    WatchService watcher;
+    synchronized (this) {
+      watcher = watchService;
+      watchService = null;
+    }
+    if (watcher != null) {
+      watcher.close(); // wakes up the watching thread
+    }
+  }
+
+  private void watch(WatchService watcher) {
+    Map<Path, Path> watchedFiles = new HashMap<>();
+    files.forEach(file -> watchedFiles.put(file.toAbsolutePath(), file));
+    try {
+      while (true) {
+        WatchKey key = watcher.take();
+        Path directory = (Path) key.watchable();
+        Set<Path> changedFiles = new LinkedHashSet<>(); // modifications often come in pairs
+        for (WatchEvent<?> event : key.pollEvents()) {
+          if (event.kind() == OVERFLOW) {
+            changedFiles.addAll(files);
+          } else {
+            Path file = watchedFiles.get(directory.resolve((Path) event.context()));
+            if (file != null) {
+              changedFiles.add(file);
+            }
+          }
+        }
+        for (Path file : changedFiles) {
+          try {
+            refresh(file);
+          } catch (RuntimeException e) { // keep watching, a later change may be applied
+            logger.error("Unable to apply changes of source {}", file, e);
+          }
+        }
+        key.reset();
+      }
+    } catch (ClosedWatchServiceException | InterruptedException e) {
+      logger.debug("Stopped watching sources");
+    }
+  }
+
+  /** @return files containing a name in the order of precedence, the first one owns it */
+  private List<Path> filesOf(String name) {
+    List<Path> containing = new ArrayList<>(1);
+    for (Path file : files) {
+      if (contents.get(file).contains(name)) {
+        containing.add(file);
+      }
+    }
+    return containing;
+  }
+
+  private Domain domainOf(String name, List<Path> containing) {
+    Domain domain = Domain.of(name, containing.get(0), sourceRegistry);
+    for (Path file : containing.subList(1, containing.size())) {
+      domain.addSources(SourceSet.of(sourceRegistry, sourceRegistry.idOf(file)));
+    }
+    return domain;
+  }
+
+  private void addTopOf(String name, Set<String> affectedTops) {
+    Domain top = DomainForests.topDomainOf(topDomains, name);
+    if (top != null) {
+      affectedTops.add(top.getDomainName());
+    }
+  }
+
+  private void updateReport(Set<String> topDomainNames) {
+    for (String name : topDomainNames) {
+      Domain top = topDomains.findDomain(name);
+      List<Domain> entries =
+          top == null
+              ? Collections.emptyList()
+              : domainService.flatMapAndfilterDomainsWithDiffSourceSubDomains(
+                  Collections.singletonList(copyOf(top)));
+      Domain entry = entries.isEmpty() ? null : entries.get(0);
+      Domain previous = entry == null ? report.remove(name) : report.put(name, entry);
+      if (entry != null || previous != null) {
+        reportListener.accept(name, entry);
+      }
+    }
+  }
+
+  /** @return copy of a domain with all its sub-domains, the report is built from copies */
+  private Domain copyOf(Domain domain) {
+    Deque<Domain> copies = new ArrayDeque<>();
+    Domain[] root = new Domain[1];
+    DomainTraversal.walk(
+        Collections.singletonList(domain),
+        new DomainVisitor() {
+          @Override
+          public boolean preVisit(Domain original, int depth) {
+            Domain copy =
+                Domain.of(original.getDomainName(), original.getSourceLocation(), sourceRegistry);
+            copy.addSources(original.getSources());
+            copies.push(copy);
+            return true;
+          }
+
+          @Override
+          public void postVisit(Domain original, int depth) {
+            // a copy is attached once complete, so its parent gets all sources of its subtree
+            Domain copy = copies.pop();
+            if (copies.isEmpty()) {
+              root[0] = copy;
+            } else {
+              copies.peek().attachSubDomain(copy);
+            }
+          }
+        });
+    return root[0];
+  }
+
+  private static Set<String> read(Path file) {
+    Set<String> names = new LinkedHashSet<>();
+    if (!Files.exists(file)) {
+      return names;
+    }
+    try {
+      for (String line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+        String name = DomainNames.normalize(line);
+        if (name != null) {
+          names.add(name);
+        }
+      }
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    return names;
+  }
+}
@@ -0,0 +1,166 @@
+package com.shaposhnyk;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.function.BiConsumer;
+import java.util.stream.Stream;
+
+/**
+ * Ingestion split into stages running concurrently: readers produce batches of raw lines, a pool
+ * of normalizers turns them into batches of valid domain names, and the calling thread merges
+ * them. So reading, normalization and merging overlap, and the merger does not wait on disk as
+ * long as readers are ahead of it.
+ *
+ * <p>Every source has a bounded queue of pending batches, a reader blocks once its queue is full,
+ * which bounds the memory to sources * queueCapacity * batchSize lines. Batches are merged in the
+ * order of sources and of lines, so the result is the same as of sequential ingestion. Readers
+ * start in the order of sources, so the source being merged always has a running reader
+ */
+final class IngestionPipeline {
+  private static final Batch END = new Batch(new ArrayList<>(0), 0);
+
+  private final int readers;
+  private final int normalizers;
+  private final int batchSize;
+  private final int queueCapacity;
+
+  /**
+   * @param readers number of reader threads
+   * @param normalizers number of normalizer threads
+   * @param batchSize number of lines per batch
+   * @param queueCapacity maximum number of pending batches per source
+   */
+  IngestionPipeline(int readers, int normalizers, int batchSize, int queueCapacity) {
+    if (readers < 1 || normalizers < 1 || batchSize < 1 || queueCapacity < 1) {
+      throw new IllegalArgumentException("Threads, batch size and capacity must be positive");
+    }
+    this.readers = readers;
+    this.normalizers = normalizers;
+    this.batchSize = batchSize;
+    this.queueCapacity = queueCapacity;
+  }
+
+  /**
+   * Reads all sources and hands over their names to the merger on the calling thread
+   *
+   * @param merger receives source and normalized name of every valid line
+   */
+  void run(List<NamedSource> sources, BiConsumer<Path, String> merger, DomainListener listener) {
+    ExecutorService readerPool = Executors.newFixedThreadPool(readers, daemon("domain-reader"));
+    ExecutorService normalizerPool =
+        Executors.newFixedThreadPool(normalizers, daemon("domain-normalizer"));
+    try {
+      List<BlockingQueue<Future<Batch>>> queues = new ArrayList<>(sources.size());
+      for (NamedSource source : sources) {
+        BlockingQueue<Future<Batch>> queue = new ArrayBlockingQueue<>(queueCapacity);
+        queues.add(queue);
+        readerPool.execute(() -> read(source, queue, normalizerPool));
+      }
+
+      for (int i = 0; i < sources.size(); i++) {
+        merge(sources.get(i).name(), queues.get(i), merger, listener);
+      }
+    } finally {
+      readerPool.shutdownNow(); // wakes up readers blocked on a full queue after a failure
+      normalizerPool.shutdownNow();
+    }
+  }
+
+  private void read(
+      NamedSource source, BlockingQueue<Future<Batch>> queue, ExecutorService normalizerPool) {
+    try {
+      try (Stream<String> lines = source.lines()) {
+        Iterator<String> iterator = lines.iterator();
+        List<String> batch = new ArrayList<>(batchSize);
+        while (iterator.hasNext()) {
+          batch.add(iterator.next());
+          if (batch.size() == batchSize) {
+            List<String> full = batch;
+            queue.put(normalizerPool.submit(() -> normalize(full)));
+            batch = new ArrayList<>(batchSize);
+          }
+        }
+        if (!batch.isEmpty()) {
+          List<String> last = batch;
+          queue.put(normalizerPool.submit(() -> normalize(last)));
+        }
+      }
+      queue.put(CompletableFuture.completedFuture(END));
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt(); // the pipeline is stopped
+    } catch (RuntimeException | Error e) {
+      CompletableFuture<Batch> failed = new CompletableFuture<>();
+      failed.completeExceptionally(e);
+      try {
+        queue.put(failed); // the merger fails once it gets to it
+      } catch (InterruptedException interrupted) {
+        Thread.currentThread().interrupt();
+      }
+    }
+  }
+
+  private static Batch normalize(List<String> lines) {
+    List<String> names = new ArrayList<>(lines.size());
+    for (String line : lines) {
+      String name = DomainNames.normalize(line);
+      if (name != null) {
+        names.add(name);
+      }
+    }
+    return new Batch(names, lines.size());
+  }
+
+  private static void merge(
+      Path source,
+      BlockingQueue<Future<Batch>> queue,
+      BiConsumer<Path, String> merger,
+      DomainListener listener) {
+    long start = System.nanoTime();
+    long linesRead = 0;
+    long linesRejected = 0;
+    try {
+      for (Batch batch = queue.take().get(); batch != END; batch = queue.take().get()) {
+        for (String name : batch.names) {
+          merger.accept(source, name);
+        }
+        linesRead += batch.lines;
+        linesRejected += batch.lines - batch.names.size();
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new CancellationException("Ingestion interrupted");
+    } catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof Error) {
+        throw (Error) cause;
+      }
+      throw cause instanceof RuntimeException
+          ? (RuntimeException) cause
+          : new IllegalStateException("Unable to ingest " + source, cause);
+    }
+    listener.sourceIngested(source, linesRead, linesRejected, System.nanoTime() - start);
+  }
+
+  private static ThreadFactory daemon(String name) {
+    ThreadFactory defaultFactory = Executors.defaultThreadFactory();
+    return runnable -> {
+      Thread thread = defaultFactory.newThread(runnable);
+      thread.setName(name + "-" + thread.getName());
+      thread.setDaemon(true);
+      return thread;
+    };
+  }
+
+  private static final class Batch {
+    private final List<String> names;
+    private final int lines;
+
+    Batch(List<String> names, int lines) {
+      this.names = names;
+      this.lines = lines;
+    }
+  }
+}
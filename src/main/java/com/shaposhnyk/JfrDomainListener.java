@@ -0,0 +1,83 @@
+package com.shaposhnyk;
+
+import jdk.jfr.*;
+
+import java.nio.file.Path;
+
+/**
+ * Listener committing custom Flight Recorder events per ingested source and per phase, so they
+ * show up in a recording next to GC and allocation events. Per-domain events are not recorded,
+ * combine with {@link DomainMetrics} for counters.
+ *
+ * <p>Requires a JVM with the jdk.jfr API (8u262+ or 11+), the class is loaded only when used
+ */
+public class JfrDomainListener implements DomainListener {
+  @Override
+  public void sourceIngested(Path source, long linesRead, long linesRejected, long nanos) {
+    SourceIngested event = new SourceIngested();
+    if (event.isEnabled()) {
+      event.source = String.valueOf(source);
+      event.linesRead = linesRead;
+      event.linesRejected = linesRejected;
+      event.ingestTime = nanos;
+      event.commit();
+    }
+  }
+
+  @Override
+  public void indexSize(int keys) {
+    IndexSize event = new IndexSize();
+    if (event.isEnabled()) {
+      event.keys = keys;
+      event.commit();
+    }
+  }
+
+  @Override
+  public void phaseCompleted(Phase phase, long nanos) {
+    PhaseCompleted event = new PhaseCompleted();
+    if (event.isEnabled()) {
+      event.phase = phase.name();
+      event.phaseTime = nanos;
+      event.commit();
+    }
+  }
+
+  @Name("com.shaposhnyk.SourceIngested")
+  @Label("Source Ingested")
+  @Category("Domains")
+  static class SourceIngested extends Event {
+    @Label("Source")
+    String source;
+
+    @Label("Lines Read")
+    long linesRead;
+
+    @Label("Lines Rejected")
+    long linesRejected;
+
+    @Label("Ingest Time")
+    @Timespan(Timespan.NANOSECONDS)
+    long ingestTime;
+  }
+
+  @Name("com.shaposhnyk.IndexSize")
+  @Label("Index Size")
+  @Category("Domains")
+  static class IndexSize extends Event {
+    @Label("Suffix Keys")
+    int keys;
+  }
+
+  @Name("com.shaposhnyk.PhaseCompleted")
+  @Label("Phase Completed")
+  @Category("Domains")
+  static class PhaseCompleted extends Event {
+    @Label("Phase")
+    String phase;
+
+    @Label("Phase Time")
+    @Timespan(Timespan.NANOSECONDS)
+    long phaseTime;
+  }
+}
@@ -0,0 +1,96 @@
+package com.shaposhnyk;
+
+import java.io.Flushable;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Report in JSON Lines format, a JSON object per top-level domain:
+ *
+ * <pre>
+ * {"domain":"acme.com","source":"a.txt","subDomains":[{"domain":"www.acme.com","source":"b.txt"}]}
+ * </pre>
+ *
+ * Sources are written as given, null ones as JSON null
+ */
+final class JsonLinesReportSink extends BufferedReportSink {
+  private static final byte[] DOMAIN = utf8("{\"domain\":");
+  private static final byte[] SOURCE = utf8(",\"source\":");
+  private static final byte[] SUB_DOMAINS = utf8(",\"subDomains\":[");
+  private static final byte[] NULL = utf8("null");
+
+  // sources are few, their encoded JSON values are cached
+  private final Map<Path, byte[]> sources = new HashMap<>();
+
+  JsonLinesReportSink(WritableByteChannel channel, Flushable stream) {
+    super(channel, stream);
+  }
+
+  @Override
+  public void write(Domain topDomain) {
+    writeDomain(topDomain);
+    writeBytes(SUB_DOMAINS);
+    boolean first = true;
+    for (Domain subDomain : topDomain.getSubDomainsView()) {
+      if (!first) {
+        writeByte(',');
+      }
+      first = false;
+      writeDomain(subDomain);
+      writeByte('}');
+    }
+    writeByte(']');
+    writeByte('}');
+    writeByte('\n');
+  }
+
+  /** Writes a domain object w/o the closing brace */
+  private void writeDomain(Domain domain) {
+    writeBytes(DOMAIN);
+    writeString(domain.getDomainName());
+    writeBytes(SOURCE);
+    writeBytes(sources.computeIfAbsent(domain.getSourceLocation(), JsonLinesReportSink::source));
+  }
+
+  /** Writes a JSON string literal, the string is copied only if it has to be escaped */
+  private void writeString(String string) {
+    if (needsEscaping(string)) {
+      writeUtf8(quote(string));
+    } else {
+      writeByte('"');
+      writeUtf8(string);
+      writeByte('"');
+    }
+  }
+
+  private static byte[] source(Path source) {
+    return source == null ? NULL : utf8(quote(source.toString()));
+  }
+
+  private static String quote(String string) {
+    StringBuilder sb = new StringBuilder(string.length() + 8).append('"');
+    for (int i = 0; i < string.length(); i++) {
+      char c = string.charAt(i);
+      if (c == '"' || c == '\\') {
+        sb.append('\\').append(c);
+      } else if (c < 0x20) {
+        sb.append(String.format("\\u%04x", (int) c));
+      } else {
+        sb.append(c);
+      }
+    }
+    return sb.append('"').toString();
+  }
+
+  private static boolean needsEscaping(String string) {
+    for (int i = 0; i < string.length(); i++) {
+      char c = string.charAt(i);
+      if (c == '"' || c == '\\' || c < 0x20) {
+        return true;
+      }
+    }
+    return false;
+  }
+}
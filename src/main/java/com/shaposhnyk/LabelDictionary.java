@@ -0,0 +1,126 @@
+package com.shaposhnyk;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Dictionary of distinct domain labels ("www", "acme", "com", ...), each label being mapped to a
+ * small int. Domain names are then encoded as int[] of label ids starting from the top-level
+ * label, so "internal.acme.com" becomes [id(com), id(acme), id(internal)] and a parent domain is
+ * simply a prefix of its sub-domain.
+ *
+ * <p>Lookups are lock-free, registering a new label takes a lock
+ */
+public class LabelDictionary {
+  private final Map<String, Integer> ids = new ConcurrentHashMap<>();
+  // labels[] is always written before the id is published through ids map
+  private volatile String[] labels = new String[64];
+  private int size; // guarded by this
+
+  /** @return id of a label, registering it if it is not known yet */
+  public int idOf(String label) {
+    Integer id = ids.get(label);
+    return id != null ? id : register(label);
+  }
+
+  private synchronized int register(String label) {
+    Integer id = ids.get(label);
+    if (id != null) {
+      return id;
+    }
+
+    String[] current = labels;
+    if (size == current.length) {
+      String[] grown = new String[current.length * 2];
+      System.arraycopy(current, 0, grown, 0, size);
+      current = grown;
+    }
+    current[size] = label;
+    labels = current;
+    ids.put(label, size);
+    return size++;
+  }
+
+  /** @return id of a known label or -1, never registers new labels */
+  public int find(String label) {
+    Integer id = ids.get(label);
+    return id == null ? -1 : id;
+  }
+
+  public String labelOf(int id) {
+    return labels[id];
+  }
+
+  /** @return number of distinct labels */
+  public int size() {
+    return ids.size();
+  }
+
+  /** @return label ids of a domain name starting from the top-level one, registers new labels */
+  public int[] encode(String domainName) {
+    int[] encoded = new int[labelCount(domainName)];
+    int end = domainName.length();
+    for (int i = 0; i < encoded.length; i++) {
+      int dot = domainName.lastIndexOf('.', end - 1);
+      encoded[i] = idOf(domainName.substring(dot + 1, end));
+      end = dot;
+    }
+    return encoded;
+  }
+
+  /** @return label ids of a domain name or null if one of its labels is unknown */
+  public int[] lookup(String domainName) {
+    int[] encoded = new int[labelCount(domainName)];
+    int end = domainName.length();
+    for (int i = 0; i < encoded.length; i++) {
+      int dot = domainName.lastIndexOf('.', end - 1);
+      int id = find(domainName.substring(dot + 1, end));
+      if (id < 0) {
+        return null;
+      }
+      encoded[i] = id;
+      end = dot;
+    }
+    return encoded;
+  }
+
+  /** @return domain name of encoded labels */
+  public String decode(int[] encoded) {
+    StringBuilder sb = new StringBuilder(encoded.length * 8);
+    for (int i = encoded.length - 1; i >= 0; i--) {
+      sb.append(labelOf(encoded[i]));
+      if (i > 0) {
+        sb.append('.');
+      }
+    }
+    return sb.toString();
+  }
+
+  /** @return same value as decode(encoded).hashCode(), but without building the string */
+  int nameHash(int[] encoded) {
+    int h = 0;
+    for (int i = encoded.length - 1; i >= 0; i--) {
+      String label = labelOf(encoded[i]);
+      for (int c = 0; c < label.length(); c++) {
+        h = 31 * h + label.charAt(c);
+      }
+      if (i > 0) {
+        h = 31 * h + '.';
+      }
+    }
+    return h;
+  }
+
+  private static int labelCount(String domainName) {
+    if (domainName.isEmpty()) {
+      return 0;
+    }
+    int count = 1;
+    for (int i = 0; i < domainName.length(); i++) {
+      if (domainName.charAt(i) == '.') {
+        count++;
+      }
+    }
+    return count;
+  }
+}
@@ -0,0 +1,257 @@
+package com.shaposhnyk;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * A file NamedSource, which memory-maps the file and scans mapped regions in place at the byte
+ * level. Lines are trimmed, ASCII letters are lower-cased and ASCII names are validated in the same
+ * pass, while they are copied into a reused buffer, so the only object created per accepted line
+ * is the resulting String (or none at all with {@link #forEachLine(LineConsumer)}).
+ *
+ * <p>Malformed names are skipped by {@link #lines()}. Lines containing non-ASCII bytes are decoded
+ * as UTF-8 and validated with {@link DomainNormalizer}, which maps them to their ASCII form, ASCII
+ * encoded (xn--) names are taken as they are
+ */
+public class MappedNamedSource implements NamedSource {
+  private static final Logger logger = LoggerFactory.getLogger(MappedNamedSource.class);
+
+  // files bigger than that are mapped region by region
+  private static final long REGION_SIZE = 1L << 28;
+
+  private final Path path;
+
+  /** Receives bytes of a normalized line, which are valid only during the call */
+  public interface LineConsumer {
+    /**
+     * @param length length of the line, 0 for blank and malformed ASCII lines, which are given
+     *     only to be counted, as {@link #lines()} of other sources gives them as well
+     * @param ascii false if the line has non-ASCII bytes, it is not validated then
+     */
+    void accept(byte[] line, int length, boolean ascii);
+  }
+
+  public MappedNamedSource(Path path) {
+    this.path = Objects.requireNonNull(path);
+  }
+
+  @Override
+  public Path name() {
+    return path;
+  }
+
+  @Override
+  public Stream<String> lines() {
+    LineScanner scanner;
+    try {
+      scanner = new LineScanner(path);
+    } catch (IOException e) {
+      logger.warn("Unable to read source file {}", path, e);
+      return Stream.empty(); // the same as for NamedSources.of(Path)
+    }
+
+    Iterator<String> iterator =
+        new Iterator<String>() {
+          private String next;
+
+          @Override
+          public boolean hasNext() {
+            if (next == null) {
+              while (next == null && scanner.nextLine() >= 0) {
+                next = scanner.lineAsString(); // null for blank lines and malformed names
+              }
+            }
+            return next != null;
+          }
+
+          @Override
+          public String next() {
+            if (!hasNext()) {
+              throw new NoSuchElementException();
+            }
+            String line = next;
+            next = null;
+            return line;
+          }
+        };
+    // the scanner closes itself at the end, but a stream may be closed before that
+    return StreamSupport.stream(
+            Spliterators.spliteratorUnknownSize(
+                iterator, Spliterator.ORDERED | Spliterator.NONNULL),
+            false)
+        .onClose(scanner::close);
+  }
+
+  /** Feeds every line to the consumer without creating any object per line */
+  public void forEachLine(LineConsumer consumer) {
+    LineScanner scanner;
+    try {
+      scanner = new LineScanner(path);
+    } catch (IOException e) {
+      logger.warn("Unable to read source file {}", path, e);
+      return;
+    }
+
+    try {
+      int length;
+      while ((length = scanner.nextLine()) >= 0) {
+        consumer.accept(scanner.line, length, scanner.ascii);
+      }
+    } finally {
+      scanner.close();
+    }
+  }
+
+  /**
+   * @return name of a line given to a {@link LineConsumer}, or null if it is blank or malformed
+   *     (see {@link DomainNormalizer})
+   */
+  public static String decode(byte[] line, int length, boolean ascii) {
+    if (length == 0) {
+      return null;
+    }
+    // an ASCII line is already trimmed, lower-cased and validated, so it is only copied
+    return ascii
+        ? new String(line, 0, length, StandardCharsets.ISO_8859_1)
+        : DomainNormalizer.normalize(new String(line, 0, length, StandardCharsets.UTF_8));
+  }
+
+  /** Scans mapped regions of a file, normalizing lines into a reused buffer */
+  private static final class LineScanner {
+    private final Path path;
+    private final FileChannel channel;
+    private final long size;
+    private long regionStart;
+    private MappedByteBuffer region;
+
+    private byte[] line = new byte[256];
+    private int lineLength;
+    private boolean ascii;
+
+    LineScanner(Path path) throws IOException {
+      this.path = path;
+      this.channel = FileChannel.open(path, StandardOpenOption.READ);
+      this.size = channel.size();
+    }
+
+    /**
+     * @return length of the next line, 0 if it is blank or a malformed ASCII name, or -1 if there
+     *     is no more lines
+     */
+    int nextLine() {
+      lineLength = 0;
+      ascii = true;
+      boolean started = false; // any byte of the line, the last line may have no line feed
+      boolean malformed = false;
+      int labelLength = 0;
+      int trimmedLength = 0;
+      int trimmedLabelLength = 0;
+      while (region != null && region.hasRemaining() || nextRegion()) {
+        byte b = region.get();
+        started = true;
+        if (b == '\n') {
+          break;
+        } else if (malformed || (lineLength == 0 && isWhitespace(b))) {
+          continue; // leading white-spaces or the rest of a malformed line
+        }
+
+        if (b == '.') {
+          // limits of non-ASCII labels apply to their ASCII form, they are checked on decoding
+          if (labelLength == 0 || ascii && labelLength > DomainNormalizer.MAX_LABEL_LENGTH) {
+            malformed = true; // leading or double dot, or a label too long
+            continue;
+          }
+          labelLength = 0;
+        } else {
+          labelLength++;
+        }
+        append(b);
+        if (!isWhitespace(b)) {
+          trimmedLength = lineLength;
+          trimmedLabelLength = labelLength;
+        }
+      }
+      if (!started) {
+        close();
+        return -1;
+      }
+
+      lineLength = trimmedLength;
+      if (malformed
+          || ascii
+              && (trimmedLabelLength == 0 // trailing dot
+                  || trimmedLabelLength > DomainNormalizer.MAX_LABEL_LENGTH
+                  || trimmedLength > DomainNormalizer.MAX_NAME_LENGTH)) {
+        lineLength = 0;
+      }
+      return lineLength;
+    }
+
+    String lineAsString() {
+      return decode(line, lineLength, ascii);
+    }
+
+    private void append(byte b) {
+      if (lineLength == line.length) {
+        byte[] grown = new byte[line.length * 2];
+        System.arraycopy(line, 0, grown, 0, lineLength);
+        line = grown;
+      }
+      if (b < 0) {
+        ascii = false;
+      } else if (b >= 'A' && b <= 'Z') {
+        b += 'a' - 'A';
+      }
+      line[lineLength++] = b;
+    }
+
+    /** @return false at the end of the file, or if it is closed or can not be read */
+    private boolean nextRegion() {
+      if (!channel.isOpen()) {
+        return false; // closed at the end or by the stream
+      }
+      long start = region == null ? 0 : regionStart + region.capacity();
+      if (start >= size) {
+        return false;
+      }
+      try {
+        regionStart = start;
+        region =
+            channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(REGION_SIZE, size - start));
+        return true;
+      } catch (IOException e) {
+        logger.warn("Unable to read source file {}", path, e);
+        return false;
+      }
+    }
+
+    /** Closes the file, it may be called more than once */
+    void close() {
+      region = null; // a mapped region is released once it is garbage collected
+      try {
+        channel.close();
+      } catch (IOException e) {
+        logger.debug("Unable to close source file {}", path, e);
+      }
+    }
+
+    private static boolean isWhitespace(byte b) {
+      // the same as String.trim(), but for bytes
+      return b >= 0 && b <= ' ';
+    }
+  }
+}
@@ -0,0 +1,165 @@
+package com.shaposhnyk;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Set of normalized domain names stored as bytes, used to drop repeated names of a source before
+ * any {@link Domain} is created for them. Names are copied into a single growing arena and found
+ * by a 64-bit hash in an open-addressing table, bytes are compared only when hashes are equal, so
+ * a duplicate costs no allocation at all.
+ *
+ * <p>Only bytes of a {@link MappedNamedSource} are deduplicated before they are decoded. Other
+ * sources produce lines as strings, so their names are deduplicated once they are normalized, which
+ * still saves creating and merging a {@link Domain}, but not decoding and normalizing a line.
+ *
+ * <p>The arena is an array, so names of a source are limited to 2GB in total. Not thread-safe,
+ * {@link #clear()} makes it reusable for the next source
+ */
+final class NameDeduplicator {
+  private static final float LOAD_FACTOR = 0.5f;
+  // the largest array most JVMs can allocate
+  private static final int MAX_ARENA_SIZE = Integer.MAX_VALUE - 8;
+
+  private long[] hashes; // 0 is an empty slot
+  private int[] offsets;
+  private int[] lengths;
+  private int size;
+
+  private byte[] arena;
+  private int arenaSize;
+
+  private byte[] scratch = new byte[256];
+
+  NameDeduplicator() {
+    this(1024);
+  }
+
+  /** @param expectedNames number of distinct names to hold without growing */
+  NameDeduplicator(int expectedNames) {
+    int slots = Math.max(16, (int) (expectedNames / LOAD_FACTOR));
+    int capacity = Integer.highestOneBit(slots - 1) << 1;
+    hashes = new long[capacity];
+    offsets = new int[capacity];
+    lengths = new int[capacity];
+    arena = new byte[capacity * 16];
+  }
+
+  /** @return true if the name has not been added before */
+  boolean add(String domainName) {
+    int length = domainName.length();
+    if (length > scratch.length) {
+      scratch = new byte[Math.max(length, scratch.length * 2)];
+    }
+    for (int i = 0; i < length; i++) {
+      char c = domainName.charAt(i);
+      if (c >= 0x80) {
+        byte[] utf8 = domainName.getBytes(StandardCharsets.UTF_8);
+        return add(utf8, utf8.length);
+      }
+      scratch[i] = (byte) c;
+    }
+    return add(scratch, length);
+  }
+
+  /**
+   * @param name bytes of a name, only the first length bytes are used and they are copied
+   * @return true if the name has not been added before
+   * @throws IllegalStateException if distinct names would take more than 2GB
+   */
+  boolean add(byte[] name, int length) {
+    long hash = hash(name, length);
+    int mask = hashes.length - 1;
+    int slot = (int) hash & mask;
+    while (hashes[slot] != 0) {
+      if (hashes[slot] == hash && equalsAt(slot, name, length)) {
+        return false;
+      }
+      slot = (slot + 1) & mask;
+    }
+
+    hashes[slot] = hash;
+    offsets[slot] = append(name, length);
+    lengths[slot] = length;
+    if (++size > hashes.length * LOAD_FACTOR) {
+      grow();
+    }
+    return true;
+  }
+
+  int size() {
+    return size;
+  }
+
+  /** Forgets all names, but keeps the memory for next ones */
+  void clear() {
+    Arrays.fill(hashes, 0);
+    size = 0;
+    arenaSize = 0;
+  }
+
+  private boolean equalsAt(int slot, byte[] name, int length) {
+    if (lengths[slot] != length) {
+      return false;
+    }
+    int offset = offsets[slot];
+    for (int i = 0; i < length; i++) {
+      if (arena[offset + i] != name[i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private int append(byte[] name, int length) {
+    long required = (long) arenaSize + length;
+    if (required > arena.length) {
+      if (required > MAX_ARENA_SIZE) {
+        throw new IllegalStateException(
+            String.format(
+                "Distinct names of a source take more than %d bytes, the limit of 2GB",
+                MAX_ARENA_SIZE));
+      }
+      long grown = Math.max(required, Math.min(2L * arena.length, MAX_ARENA_SIZE));
+      arena = Arrays.copyOf(arena, (int) grown);
+    }
+    System.arraycopy(name, 0, arena, arenaSize, length);
+    int offset = arenaSize;
+    arenaSize += length;
+    return offset;
+  }
+
+  private void grow() {
+    long[] oldHashes = hashes;
+    int[] oldOffsets = offsets;
+    int[] oldLengths = lengths;
+    hashes = new long[oldHashes.length * 2];
+    offsets = new int[hashes.length];
+    lengths = new int[hashes.length];
+
+    int mask = hashes.length - 1;
+    for (int i = 0; i < oldHashes.length; i++) {
+      if (oldHashes[i] != 0) {
+        int slot = (int) oldHashes[i] & mask;
+        while (hashes[slot] != 0) {
+          slot = (slot + 1) & mask;
+        }
+        hashes[slot] = oldHashes[i];
+        offsets[slot] = oldOffsets[i];
+        lengths[slot] = oldLengths[i];
+      }
+    }
+  }
+
+  /** @return FNV-1a hash with a final mix, so low bits are usable as a slot; never 0 */
+  static long hash(byte[] name, int length) {
+    long h = 0xcbf29ce484222325L;
+    for (int i = 0; i < length; i++) {
+      h = (h ^ (name[i] & 0xff)) * 0x100000001b3L;
+    }
+    h ^= h >>> 33;
+    h *= 0xff51afd7ed558ccdL;
+    h ^= h >>> 33;
+    return h == 0 ? 1 : h;
+  }
+}
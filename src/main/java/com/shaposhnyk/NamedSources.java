@@ -7,6 +7,7 @@ import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
@@ -16,6 +17,7 @@ import java.util.Collection;
 import java.util.List;
 import java.util.Objects;
 import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
 
 import static java.util.stream.Collectors.toList;
 
@@ -30,7 +32,7 @@ public final class NamedSources {
     return fileNames.stream().map(NamedSources::of).collect(toList());
   }
 
-  /** @return file to a NamedSource */
+  /** @return file to a NamedSource, gzip-compressed files are recognized by their magic bytes */
   public static NamedSource of(Path path) {
     Objects.requireNonNull(path);
     return new NamedSource() {
@@ -42,7 +44,13 @@ public final class NamedSources {
       @Override
       public Stream<String> lines() {
         try {
-          return Files.lines(path, StandardCharsets.UTF_8);
+          if (!isGzip(path)) {
+            return Files.lines(path, StandardCharsets.UTF_8);
+          }
+          InputStream in = new GZIPInputStream(Files.newInputStream(path), 64 * 1024);
+          BufferedReader reader =
+              new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+          return reader.lines().onClose(() -> close(reader));
         } catch (IOException e) {
           logger.warn("Unable to read source file");
           return Stream.empty(); // depending on cases, rethrowing an exception may be more
@@ -52,6 +60,28 @@ public final class NamedSources {
     };
   }
 
+  private static boolean isGzip(Path path) throws IOException {
+    try (InputStream in = Files.newInputStream(path)) {
+      return in.read() == 0x1f && in.read() == 0x8b;
+    }
+  }
+
+  private static void close(BufferedReader reader) {
+    try {
+      reader.close();
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  /**
+   * @return memory-mapped file to a NamedSource, which lines are already trimmed, lower-cased and
+   *     do not contain blank nor leading-dot lines
+   */
+  public static MappedNamedSource mapped(Path path) {
+    return new MappedNamedSource(path);
+  }
+
   public static List<NamedSource> sourcesOf(String... resourceNames) {
     return Arrays.stream(resourceNames).map(NamedSources::of).collect(toList());
   }
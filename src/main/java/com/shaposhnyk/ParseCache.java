@@ -0,0 +1,312 @@
+package com.shaposhnyk;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Local cache of parsed source files, so files which did not change since the previous run are
+ * neither read nor normalized again. Every file has an entry in the cache directory holding its
+ * normalized names, deduplicated and sorted by {@link DomainNames#LABEL_ORDER}, i.e. ready for
+ * {@link DomainService#domainsWithSubDomainsBulk(List)} or a {@link SortedDomainGrouper}. Names are
+ * sorted by an {@link ExternalDomainSorter} spilling into the cache directory, so a file does not
+ * have to fit into the heap.
+ *
+ * <p>Cached sources are meant for these sorted paths only. They can be merged by {@link
+ * DomainService#domainsWithSubDomains(List)} into the same hierarchy, but the order of the file is
+ * lost, so its domains and its report come out in label order rather than in the order of lines.
+ *
+ * <p>An entry is keyed by the absolute path of the file, and is up to date if the size and the
+ * modification time of the file are the same, and if {@link DomainNormalizer#VERSION} did not
+ * change. If only the modification time differs, the SHA-256 of the content is compared, so a
+ * touched file is not parsed again. The content is compared as well if the file was modified
+ * within {@value #MODIFIED_TIME_GRANULARITY} ms of parsing: a later change in the same tick of a
+ * coarse file system clock would keep both the size and the modification time.
+ *
+ * <p>Names are stored reversed (com.acme.www for www.acme.com) and front-coded: each name is the
+ * number of leading bytes shared with the previous one, followed by the remaining bytes, so
+ * sub-domains of the same parent take only a few bytes each. Entries are replaced atomically, but
+ * the cache is not meant to be shared by concurrent runs
+ */
+public final class ParseCache {
+  private static final int MAGIC = 0x444F4D43; // DOMC
+  private static final int VERSION = 2;
+  private static final int MODIFIED_OFFSET = 20; // after magic, versions and size
+  private static final int DIGEST_LENGTH = 32;
+  private static final int COUNT_OFFSET = MODIFIED_OFFSET + 2 * Long.BYTES + DIGEST_LENGTH;
+  private static final int BUFFER_SIZE = 64 * 1024;
+  private static final long DEFAULT_MEMORY_BUDGET = 64L << 20;
+
+  // the coarsest step of modification times in use, the one of FAT; ext3 and HFS+ have 1 s
+  private static final long MODIFIED_TIME_GRANULARITY = 2_000;
+
+  private final Path directory;
+  private final long memoryBudget;
+
+  public ParseCache(Path directory) {
+    this(directory, DEFAULT_MEMORY_BUDGET);
+  }
+
+  /** @param memoryBudget see {@link ExternalDomainSorter#ExternalDomainSorter(Path, long)} */
+  public ParseCache(Path directory, long memoryBudget) {
+    this.directory = Objects.requireNonNull(directory);
+    this.memoryBudget = memoryBudget;
+  }
+
+  /** @return sources of files, see {@link #source(Path)} */
+  public List<NamedSource> sourcesOf(List<Path> files) throws IOException {
+    List<NamedSource> sources = new ArrayList<>(files.size());
+    for (Path file : files) {
+      sources.add(source(file));
+    }
+    return sources;
+  }
+
+  /**
+   * Parses the file, unless its entry is up to date
+   *
+   * @return source named after the file, which lines are normalized, distinct and sorted by
+   *     {@link DomainNames#LABEL_ORDER}, and which are read from the cache
+   */
+  public NamedSource source(Path file) throws IOException {
+    Path entry = entryOf(file);
+    if (!isCached(file)) {
+      write(file, entry);
+    }
+    return new NamedSource() {
+      @Override
+      public Path name() {
+        return file;
+      }
+
+      @Override
+      public Stream<String> lines() {
+        try {
+          return read(entry);
+        } catch (IOException e) {
+          throw new UncheckedIOException(e);
+        }
+      }
+    };
+  }
+
+  /** @return true if the file has an up to date entry, which may have its time updated */
+  public boolean isCached(Path file) throws IOException {
+    Path entry = entryOf(file);
+    if (!Files.isRegularFile(entry)) {
+      return false;
+    }
+    long size = Files.size(file);
+    long modified = Files.getLastModifiedTime(file).toMillis();
+    byte[] digest = new byte[DIGEST_LENGTH];
+    try (DataInputStream in = new DataInputStream(Files.newInputStream(entry))) {
+      if (in.readInt() != MAGIC
+          || in.readInt() != VERSION
+          || in.readInt() != DomainNormalizer.VERSION
+          || in.readLong() != size) {
+        return false;
+      }
+      long cachedModified = in.readLong();
+      long parsed = in.readLong();
+      in.readFully(digest);
+      in.readInt(); // number of names
+      if (!in.readUTF().equals(file.toAbsolutePath().toString())) {
+        return false; // another file with the same hash of the path
+      }
+      if (cachedModified == modified && modified < parsed - MODIFIED_TIME_GRANULARITY) {
+        return true;
+      }
+    } catch (EOFException e) {
+      return false; // truncated
+    }
+
+    long verified = System.currentTimeMillis(); // before reading, as for parsing
+    if (!Arrays.equals(digest, digestOf(file))) {
+      return false;
+    }
+    try (RandomAccessFile out = new RandomAccessFile(entry.toFile(), "rw")) {
+      out.seek(MODIFIED_OFFSET);
+      out.writeLong(modified);
+      out.writeLong(verified); // the content is as parsed at that time
+    }
+    return true;
+  }
+
+  private Path entryOf(Path file) {
+    byte[] path = file.toAbsolutePath().toString().getBytes(StandardCharsets.UTF_8);
+    long hash = NameDeduplicator.hash(path, path.length);
+    return directory.resolve(String.format("%016x.names", hash));
+  }
+
+  private void write(Path file, Path entry) throws IOException {
+    long parsed = System.currentTimeMillis(); // before reading, so a later change is not missed
+    long size = Files.size(file);
+    long modified = Files.getLastModifiedTime(file).toMillis();
+    byte[] digest = digestOf(file);
+
+    Files.createDirectories(directory);
+    Path partial = directory.resolve(entry.getFileName() + ".tmp");
+    int count;
+    try (DataOutputStream out =
+        new DataOutputStream(
+            new BufferedOutputStream(Files.newOutputStream(partial), BUFFER_SIZE))) {
+      out.writeInt(MAGIC);
+      out.writeInt(VERSION);
+      out.writeInt(DomainNormalizer.VERSION);
+      out.writeLong(size);
+      out.writeLong(modified);
+      out.writeLong(parsed);
+      out.write(digest);
+      out.writeInt(0); // number of names, known once they are written
+      out.writeUTF(file.toAbsolutePath().toString());
+      count = writeNames(file, out);
+    } catch (IOException | RuntimeException e) {
+      Files.deleteIfExists(partial);
+      throw e;
+    }
+    try (RandomAccessFile out = new RandomAccessFile(partial.toFile(), "rw")) {
+      out.seek(COUNT_OFFSET);
+      out.writeInt(count);
+    }
+    Files.move(partial, entry, StandardCopyOption.REPLACE_EXISTING);
+  }
+
+  /** @return number of distinct names of the file written in reversed and front-coded form */
+  private int writeNames(Path file, DataOutputStream out) throws IOException {
+    ExternalDomainSorter sorter = new ExternalDomainSorter(directory, memoryBudget);
+    int[] count = new int[1];
+    byte[][] previous = {new byte[0]};
+    try {
+      sorter.sort(
+          Collections.singletonList(NamedSources.of(file)),
+          (domainName, source) -> {
+            byte[] bytes = DomainNames.reverse(domainName).getBytes(StandardCharsets.UTF_8);
+            int shared = 0;
+            int common = Math.min(previous[0].length, bytes.length);
+            while (shared < common && previous[0][shared] == bytes[shared]) {
+              shared++;
+            }
+            try {
+              writeVarInt(out, shared);
+              writeVarInt(out, bytes.length - shared);
+              out.write(bytes, shared, bytes.length - shared);
+            } catch (IOException e) {
+              throw new UncheckedIOException(e);
+            }
+            previous[0] = bytes;
+            count[0]++;
+          });
+    } catch (UncheckedIOException e) {
+      throw e.getCause();
+    }
+    return count[0];
+  }
+
+  private static Stream<String> read(Path entry) throws IOException {
+    DataInputStream in =
+        new DataInputStream(new BufferedInputStream(Files.newInputStream(entry), BUFFER_SIZE));
+    try {
+      if (in.readInt() != MAGIC
+          || in.readInt() != VERSION
+          || in.readInt() != DomainNormalizer.VERSION) {
+        throw new IOException("Not a parse cache entry or unsupported version: " + entry);
+      }
+      for (int i = 0; i < 3; i++) {
+        in.readLong(); // size, modification and parse times
+      }
+      in.readFully(new byte[DIGEST_LENGTH]);
+      int count = in.readInt();
+      in.readUTF();
+
+      Iterator<String> names =
+          new Iterator<String>() {
+            private byte[] name = new byte[256];
+            private int remaining = count;
+
+            @Override
+            public boolean hasNext() {
+              return remaining > 0;
+            }
+
+            @Override
+            public String next() {
+              if (remaining == 0) {
+                throw new NoSuchElementException();
+              }
+              remaining--;
+              try {
+                int shared = readVarInt(in);
+                int length = shared + readVarInt(in);
+                if (length > name.length) {
+                  name = Arrays.copyOf(name, Math.max(length, name.length * 2));
+                }
+                in.readFully(name, shared, length - shared);
+                return DomainNames.reverse(new String(name, 0, length, StandardCharsets.UTF_8));
+              } catch (IOException e) {
+                throw new UncheckedIOException(e);
+              }
+            }
+          };
+      return StreamSupport.stream(
+              Spliterators.spliterator(
+                  names,
+                  count,
+                  Spliterator.ORDERED | Spliterator.DISTINCT | Spliterator.NONNULL),
+              false)
+          .onClose(() -> close(in));
+    } catch (IOException | RuntimeException e) {
+      in.close();
+      throw e;
+    }
+  }
+
+  private static byte[] digestOf(Path file) throws IOException {
+    MessageDigest digest;
+    try {
+      digest = MessageDigest.getInstance("SHA-256");
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e); // every Java platform must support it
+    }
+    byte[] buffer = new byte[BUFFER_SIZE];
+    try (InputStream in = Files.newInputStream(file)) {
+      for (int read = in.read(buffer); read >= 0; read = in.read(buffer)) {
+        digest.update(buffer, 0, read);
+      }
+    }
+    return digest.digest();
+  }
+
+  private static void writeVarInt(DataOutputStream out, int value) throws IOException {
+    while ((value & ~0x7f) != 0) {
+      out.write((value & 0x7f) | 0x80);
+      value >>>= 7;
+    }
+    out.write(value);
+  }
+
+  private static int readVarInt(DataInputStream in) throws IOException {
+    int value = 0;
+    for (int shift = 0; ; shift += 7) {
+      int b = in.readUnsignedByte();
+      value |= (b & 0x7f) << shift;
+      if ((b & 0x80) == 0) {
+        return value;
+      }
+    }
+  }
+
+  private static void close(InputStream in) {
+    try {
+      in.close();
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+}
@@ -0,0 +1,20 @@
+package com.shaposhnyk;
+
+import java.io.Closeable;
+
+/**
+ * Destination of a report: top-level domains, each one with its sub-domains located in different
+ * sources. Implementations are buffered and not thread-safe, IO failures are thrown as {@link
+ * java.io.UncheckedIOException}, see {@link ReportSinks} for available formats
+ */
+public interface ReportSink extends Closeable {
+  /** Writes a top-level domain and its direct sub-domains */
+  void write(Domain topDomain);
+
+  /** Writes buffered data to the underlying stream */
+  void flush();
+
+  /** Flushes and closes the underlying stream */
+  @Override
+  void close();
+}
@@ -0,0 +1,49 @@
+package com.shaposhnyk;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.util.function.Consumer;
+
+/** ReportSink factory class, sinks close the stream or channel they write to */
+public final class ReportSinks {
+  private ReportSinks() {}
+
+  /**
+   * @return sink writing a line per domain in the format of {@link
+   *     DomainService#solveProblem(String...)}
+   */
+  public static ReportSink text(OutputStream out) {
+    return new TextReportSink(Channels.newChannel(out), out);
+  }
+
+  public static ReportSink text(WritableByteChannel channel) {
+    return new TextReportSink(channel, null);
+  }
+
+  /** @return sink writing a JSON object per top-level domain and its sub-domains */
+  public static ReportSink jsonLines(OutputStream out) {
+    return new JsonLinesReportSink(Channels.newChannel(out), out);
+  }
+
+  public static ReportSink jsonLines(WritableByteChannel channel) {
+    return new JsonLinesReportSink(channel, null);
+  }
+
+  /** @return sink writing a compact binary format, see {@link #readBinary} */
+  public static ReportSink binary(OutputStream out) {
+    return new BinaryReportSink(Channels.newChannel(out), out);
+  }
+
+  public static ReportSink binary(WritableByteChannel channel) {
+    return new BinaryReportSink(channel, null);
+  }
+
+  /** Reads a report written by a {@link #binary(OutputStream)} sink */
+  public static void readBinary(InputStream in, Consumer<Domain> topDomainConsumer)
+      throws IOException {
+    BinaryReportSink.read(in, topDomainConsumer);
+  }
+}
@@ -0,0 +1,246 @@
+package com.shaposhnyk;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.stream.Stream;
+
+/**
+ * Runs the report in independent shards, so it can be spread across processes or hosts with small
+ * heaps. A domain can only be a parent of names sharing its last label, so names are partitioned
+ * by a hash of their last label (or last labels) and every shard produces its part of the report
+ * on its own.
+ *
+ * <p>It goes in 3 steps sharing a job directory:
+ *
+ * <ol>
+ *   <li>{@link #split} normalizes the sources and writes a file per shard and source, and a
+ *       manifest with the original names of the sources
+ *   <li>{@link #processShard} builds the report of a shard, top-level domains are sorted by
+ *       {@link DomainNames#LABEL_ORDER}
+ *   <li>{@link #concat} joins the reports in the order of shards
+ * </ol>
+ *
+ * Shards are chosen with {@link String#hashCode()}, so the output does not depend on the JVM
+ */
+public class ShardedDomainJob {
+  private static final String MANIFEST = "manifest.properties";
+  private static final String REPORT = "report.txt";
+
+  private final DomainService domainService;
+
+  public ShardedDomainJob() {
+    this(new DomainService());
+  }
+
+  public ShardedDomainJob(DomainService domainService) {
+    this.domainService = Objects.requireNonNull(domainService);
+  }
+
+  /**
+   * Usage:
+   *
+   * <pre>
+   * split &lt;jobDir&gt; &lt;shards&gt; &lt;labels&gt; &lt;source&gt;...
+   * process &lt;jobDir&gt; &lt;shard&gt;
+   * concat &lt;jobDir&gt; &lt;output&gt;
+   * </pre>
+   */
+  public static void main(String... args) throws IOException {
+    ShardedDomainJob job = new ShardedDomainJob();
+    String command = args.length > 1 ? args[0] : "";
+    if (command.equals("split") && args.length > 4) {
+      List<NamedSource> sources = new ArrayList<>();
+      for (int i = 4; i < args.length; i++) {
+        sources.add(NamedSources.of(Paths.get(args[i])));
+      }
+      job.split(
+          sources, Paths.get(args[1]), Integer.parseInt(args[2]), Integer.parseInt(args[3]));
+    } else if (command.equals("process") && args.length == 3) {
+      job.processShard(Paths.get(args[1]), Integer.parseInt(args[2]));
+    } else if (command.equals("concat") && args.length == 3) {
+      job.concat(Paths.get(args[1]), Paths.get(args[2]));
+    } else {
+      System.err.println(
+          "Usage: split <jobDir> <shards> <labels> <source>...\n"
+              + "       process <jobDir> <shard>\n"
+              + "       concat <jobDir> <output>");
+      System.exit(2);
+    }
+  }
+
+  /**
+   * Writes normalized names of every source into files of their shards
+   *
+   * @param shards number of shards
+   * @param labels number of last labels names are partitioned by, names with fewer labels are
+   *     rejected since they may be parents of names in other shards. Sources are checked before
+   *     any shard file is written, so a rejected job leaves nothing behind
+   */
+  public void split(List<NamedSource> sources, Path jobDirectory, int shards, int labels)
+      throws IOException {
+    if (shards < 1 || labels < 1) {
+      throw new IllegalArgumentException("Number of shards and labels must be positive");
+    }
+    for (NamedSource source : sources) {
+      checkLabels(source, labels);
+    }
+
+    Properties manifest = new Properties();
+    manifest.setProperty("shards", Integer.toString(shards));
+    manifest.setProperty("labels", Integer.toString(labels));
+    manifest.setProperty("sources", Integer.toString(sources.size()));
+    for (int shard = 0; shard < shards; shard++) {
+      Files.createDirectories(shardDirectory(jobDirectory, shard));
+    }
+
+    for (int i = 0; i < sources.size(); i++) {
+      manifest.setProperty("source." + i, sources.get(i).name().toString());
+      List<Writer> writers = new ArrayList<>(shards);
+      try (Stream<String> lines = sources.get(i).lines()) {
+        for (int shard = 0; shard < shards; shard++) {
+          writers.add(Files.newBufferedWriter(sourceFile(jobDirectory, shard, i)));
+        }
+        Iterator<String> iterator = lines.iterator();
+        while (iterator.hasNext()) {
+          String domainName = DomainNames.normalize(iterator.next());
+          if (domainName != null) {
+            Writer writer = writers.get(shardOf(domainName, shards, labels));
+            writer.write(domainName);
+            writer.write('\n');
+          }
+        }
+      } finally {
+        for (Writer writer : writers) {
+          writer.close();
+        }
+      }
+    }
+
+    try (Writer writer = Files.newBufferedWriter(jobDirectory.resolve(MANIFEST))) {
+      manifest.store(writer, "Sharded domains job");
+    }
+  }
+
+  /** Builds the report of a shard, sources keep their original names */
+  public void processShard(Path jobDirectory, int shard) throws IOException {
+    Properties manifest = readManifest(jobDirectory);
+    int sourceCount = Integer.parseInt(manifest.getProperty("sources"));
+    List<NamedSource> sources = new ArrayList<>(sourceCount);
+    for (int i = 0; i < sourceCount; i++) {
+      Path name = Paths.get(manifest.getProperty("source." + i));
+      sources.add(shardSource(name, sourceFile(jobDirectory, shard, i)));
+    }
+
+    List<Domain> report =
+        domainService.flatMapAndfilterDomainsWithDiffSourceSubDomains(
+            domainService.domainsWithSubDomains(sources));
+    report.sort((a, b) -> DomainNames.LABEL_ORDER.compare(a.getDomainName(), b.getDomainName()));
+
+    Path reportFile = shardDirectory(jobDirectory, shard).resolve(REPORT);
+    Path partial = shardDirectory(jobDirectory, shard).resolve(REPORT + ".tmp");
+    try (ReportSink sink = ReportSinks.text(Files.newOutputStream(partial))) {
+      report.forEach(sink::write);
+    }
+    // a report appears only once it is complete
+    Files.move(partial, reportFile, StandardCopyOption.REPLACE_EXISTING);
+  }
+
+  /** Joins reports of all shards in the order of shards */
+  public void concat(Path jobDirectory, Path output) throws IOException {
+    int shards = Integer.parseInt(readManifest(jobDirectory).getProperty("shards"));
+    try (OutputStream out =
+        Files.newOutputStream(
+            output, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
+      for (int shard = 0; shard < shards; shard++) {
+        Path report = shardDirectory(jobDirectory, shard).resolve(REPORT);
+        if (!Files.exists(report)) {
+          throw new FileNotFoundException("Shard " + shard + " is not processed: " + report);
+        }
+        Files.copy(report, out);
+      }
+    }
+  }
+
+  /** @return shard of a domain name by the hash of its last labels */
+  static int shardOf(String domainName, int shards, int labels) {
+    int keyStart = keyStart(domainName, labels);
+    if (keyStart < 0) {
+      throw new IllegalArgumentException(
+          domainName + " has less than " + labels + " labels, it can not be sharded by them");
+    }
+    String key = keyStart == 0 ? domainName : domainName.substring(keyStart);
+    return (key.hashCode() & Integer.MAX_VALUE) % shards;
+  }
+
+  /** @return start of the last labels of a domain name, or -1 if it has fewer labels */
+  private static int keyStart(String domainName, int labels) {
+    int start = domainName.length();
+    for (int i = 0; i < labels; i++) {
+      if (start < 0) {
+        return -1;
+      }
+      start = domainName.lastIndexOf('.', start - 1);
+    }
+    return start + 1;
+  }
+
+  /** Fails if a source has a name with fewer labels than names are partitioned by */
+  private static void checkLabels(NamedSource source, int labels) {
+    try (Stream<String> lines = source.lines()) {
+      Iterator<String> iterator = lines.iterator();
+      while (iterator.hasNext()) {
+        String domainName = DomainNames.normalize(iterator.next());
+        if (domainName != null && keyStart(domainName, labels) < 0) {
+          throw new IllegalArgumentException(
+              domainName
+                  + " of "
+                  + source.name()
+                  + " has less than "
+                  + labels
+                  + " labels, it can not be sharded by them");
+        }
+      }
+    }
+  }
+
+  /** @return lines of a shard file under the name of the original source */
+  private static NamedSource shardSource(Path name, Path file) {
+    return new NamedSource() {
+      @Override
+      public Path name() {
+        return name;
+      }
+
+      @Override
+      public Stream<String> lines() {
+        try {
+          return Files.lines(file, StandardCharsets.UTF_8);
+        } catch (IOException e) {
+          throw new UncheckedIOException(e);
+        }
+      }
+    };
+  }
+
+  private static Properties readManifest(Path jobDirectory) throws IOException {
+    Properties manifest = new Properties();
+    try (Reader reader = Files.newBufferedReader(jobDirectory.resolve(MANIFEST))) {
+      manifest.load(reader);
+    }
+    return manifest;
+  }
+
+  private static Path shardDirectory(Path jobDirectory, int shard) {
+    return jobDirectory.resolve(String.format("shard-%04d", shard));
+  }
+
+  private static Path sourceFile(Path jobDirectory, int shard, int source) {
+    return shardDirectory(jobDirectory, shard).resolve(String.format("source-%04d.txt", source));
+  }
+}
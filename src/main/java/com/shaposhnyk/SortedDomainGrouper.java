@@ -0,0 +1,106 @@
+package com.shaposhnyk;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.Objects;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+/**
+ * Groups domains coming in {@link DomainNames#LABEL_ORDER}. Only a stack of open ancestors is
+ * kept: once the next domain is not a sub-domain of an ancestor, the ancestor is complete, and a
+ * complete top-level domain is handed over to the consumer with all its sub-domains.
+ *
+ * <p>Duplicates are adjacent in such input, the first one wins, as in {@link
+ * DomainList#mergeDomain(Domain)}
+ */
+public class SortedDomainGrouper {
+  private final Consumer<Domain> topDomainConsumer;
+  private final Deque<Domain> openAncestors = new ArrayDeque<>();
+  private String lastDomainName;
+
+  public SortedDomainGrouper(Consumer<Domain> topDomainConsumer) {
+    this.topDomainConsumer = Objects.requireNonNull(topDomainConsumer);
+  }
+
+  /**
+   * Sorts domains, keeping the first of duplicates first, and groups them
+   *
+   * @param topDomainConsumer receives every top-level domain with all its sub-domains
+   */
+  public static void groupAll(Stream<Domain> domains, Consumer<Domain> topDomainConsumer) {
+    // names are extracted once, label-encoded domains would decode them on every comparison
+    NamedDomain[] sorted = domains.map(NamedDomain::new).toArray(NamedDomain[]::new);
+    Arrays.parallelSort(sorted); // stable
+
+    SortedDomainGrouper grouper = new SortedDomainGrouper(topDomainConsumer);
+    for (NamedDomain namedDomain : sorted) {
+      grouper.add(namedDomain.domain, namedDomain.domainName);
+    }
+    grouper.finish();
+  }
+
+  /**
+   * Adds the next domain of the sorted input
+   *
+   * @throws IllegalArgumentException if the domain goes before the previous one
+   */
+  public void add(Domain domain) {
+    add(domain, domain.getDomainName());
+  }
+
+  private void add(Domain domain, String domainName) {
+    if (lastDomainName != null) {
+      int order = DomainNames.LABEL_ORDER.compare(lastDomainName, domainName);
+      if (order == 0) { // skip duplicates, the previous domain is still open
+        openAncestors.peek().addSourcesOf(domain);
+        return;
+      } else if (order > 0) {
+        throw new IllegalArgumentException(
+            "Input is not sorted by labels: " + domainName + " after " + lastDomainName);
+      }
+    }
+    lastDomainName = domainName;
+
+    while (!openAncestors.isEmpty() && !domain.isSubDomainOf(openAncestors.peek())) {
+      close();
+    }
+    if (!openAncestors.isEmpty()) {
+      // previous siblings are closed, so the domain is independent of them
+      openAncestors.peek().getSubDomainList().addDomain(domain);
+    }
+    openAncestors.push(domain);
+  }
+
+  /** Completes the last top-level domain, must be called at the end of the input */
+  public void finish() {
+    while (!openAncestors.isEmpty()) {
+      close();
+    }
+  }
+
+  private static final class NamedDomain implements Comparable<NamedDomain> {
+    private final String domainName;
+    private final Domain domain;
+
+    NamedDomain(Domain domain) {
+      this.domainName = domain.getDomainName();
+      this.domain = domain;
+    }
+
+    @Override
+    public int compareTo(NamedDomain another) {
+      return DomainNames.LABEL_ORDER.compare(domainName, another.domainName);
+    }
+  }
+
+  private void close() {
+    Domain closed = openAncestors.pop();
+    if (openAncestors.isEmpty()) {
+      topDomainConsumer.accept(closed);
+    } else { // the subtree is complete now
+      openAncestors.peek().includeSourcesOf(closed);
+    }
+  }
+}
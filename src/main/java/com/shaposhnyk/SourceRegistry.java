@@ -0,0 +1,78 @@
+package com.shaposhnyk;
+
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Registry of source locations, each one being mapped to a small int, so domains keep an int
+ * instead of a Path, and sets of sources are bitsets, see {@link SourceSet}.
+ *
+ * <p>Ids are never released, so a registry is scoped to a service or a run: every {@link
+ * DomainService} has its own one, and only domains created w/o a registry share {@link #SHARED}.
+ * Sets of different registries can still be combined and compared, by their locations, but that
+ * is slower. Lookups are lock-free, registering a new source takes a lock
+ */
+public final class SourceRegistry {
+  /** Id of a missing (null) source */
+  public static final int NO_SOURCE = -1;
+
+  /** Registry of domains created w/o one, e.g. by {@link Domain#of(String, Path)} */
+  public static final SourceRegistry SHARED = new SourceRegistry();
+
+  private final Map<Path, Integer> ids = new ConcurrentHashMap<>();
+  // sources[] is always written before the id is published through ids map
+  private volatile Path[] sources = new Path[16];
+  private int size; // guarded by this
+
+  // sets of a single source among the first 64 ones, shared by all domains of the source
+  private final SourceSet[] singletons = new SourceSet[Long.SIZE];
+
+  public SourceRegistry() {
+    for (int id = 0; id < singletons.length; id++) {
+      singletons[id] = SourceSet.singleton(this, id);
+    }
+  }
+
+  /** @return id of a source, registering it if it is not known yet */
+  public int idOf(Path source) {
+    if (source == null) {
+      return NO_SOURCE;
+    }
+    Integer id = ids.get(source);
+    return id != null ? id : register(source);
+  }
+
+  private synchronized int register(Path source) {
+    Integer id = ids.get(source);
+    if (id != null) {
+      return id;
+    }
+
+    Path[] current = sources;
+    if (size == current.length) {
+      Path[] grown = new Path[current.length * 2];
+      System.arraycopy(current, 0, grown, 0, size);
+      current = grown;
+    }
+    current[size] = source;
+    sources = current;
+    ids.put(source, size);
+    return size++;
+  }
+
+  /** @return source of an id, null for {@link #NO_SOURCE} */
+  public Path sourceOf(int id) {
+    return id == NO_SOURCE ? null : sources[id];
+  }
+
+  /** @return number of registered sources */
+  public int size() {
+    return ids.size();
+  }
+
+  /** @return shared set of a single source among the first 64 ones, null for other ids */
+  SourceSet singletonOf(int id) {
+    return id >= 0 && id < singletons.length ? singletons[id] : null;
+  }
+}
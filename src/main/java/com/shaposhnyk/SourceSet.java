@@ -0,0 +1,218 @@
+package com.shaposhnyk;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+
+/**
+ * Immutable set of source ids of a {@link SourceRegistry}. The first 64 sources are bits of a
+ * single long, the others go to an overflow array allocated only when needed. Sets of a single
+ * source among the first 64 ones are shared, so a domain from one source does not allocate one.
+ *
+ * <p>Sets of the same registry are combined and compared by their bits. A set of another registry
+ * is translated by locations of its sources first, a union keeps the registry of this set
+ */
+public final class SourceSet {
+  public static final SourceSet EMPTY = new SourceSet(null, 0L, null);
+
+  private final SourceRegistry registry; // null only for EMPTY
+  private final long bits;
+  private final long[] overflow; // bits of sources from 64 on, null if there are none
+
+  private SourceSet(SourceRegistry registry, long bits, long[] overflow) {
+    this.registry = registry;
+    this.bits = bits;
+    this.overflow = overflow;
+  }
+
+  static SourceSet singleton(SourceRegistry registry, int sourceId) {
+    return new SourceSet(registry, 1L << sourceId, null);
+  }
+
+  /** @return set of a single source, empty set for {@link SourceRegistry#NO_SOURCE} */
+  public static SourceSet of(SourceRegistry registry, int sourceId) {
+    if (sourceId == SourceRegistry.NO_SOURCE) {
+      return EMPTY;
+    }
+    SourceSet singleton = registry.singletonOf(sourceId);
+    return singleton != null ? singleton : new SourceSet(registry, 0L, null).with(sourceId);
+  }
+
+  /** @return registry of the ids, null for the empty set */
+  public SourceRegistry getRegistry() {
+    return registry;
+  }
+
+  /**
+   * @param sourceId id in the registry of this set, which must not be the empty one
+   * @return set with the source added, this set if it already contains the source
+   */
+  public SourceSet with(int sourceId) {
+    if (sourceId == SourceRegistry.NO_SOURCE || contains(sourceId)) {
+      return this;
+    } else if (sourceId < Long.SIZE) {
+      return new SourceSet(registry, bits | 1L << sourceId, overflow);
+    }
+    int word = sourceId / Long.SIZE - 1;
+    long[] grown =
+        overflow == null
+            ? new long[word + 1]
+            : Arrays.copyOf(overflow, Math.max(overflow.length, word + 1));
+    grown[word] |= 1L << sourceId;
+    return new SourceSet(registry, bits, grown);
+  }
+
+  /** @return union of both sets, this set if it already contains the other one */
+  public SourceSet union(SourceSet another) {
+    if (registry == null) {
+      return another;
+    }
+    another = another.in(registry);
+    if (another.isSubsetOf(this)) {
+      return this;
+    } else if (isSubsetOf(another)) {
+      return another;
+    }
+
+    long[] merged = null;
+    if (overflow != null || another.overflow != null) {
+      merged = new long[Math.max(words(overflow), words(another.overflow))];
+      for (int i = 0; i < merged.length; i++) {
+        merged[i] = word(overflow, i) | word(another.overflow, i);
+      }
+    }
+    return new SourceSet(registry, bits | another.bits, merged);
+  }
+
+  /** @param sourceId id in the registry of this set */
+  public boolean contains(int sourceId) {
+    if (sourceId == SourceRegistry.NO_SOURCE) {
+      return false;
+    } else if (sourceId < Long.SIZE) {
+      return (bits & 1L << sourceId) != 0;
+    }
+    return (word(overflow, sourceId / Long.SIZE - 1) & 1L << sourceId) != 0;
+  }
+
+  public boolean isSubsetOf(SourceSet another) {
+    if (!isSameRegistry(another)) {
+      return new HashSet<>(another.sources()).containsAll(sources());
+    }
+    if ((bits & ~another.bits) != 0) {
+      return false;
+    }
+    for (int i = 0; i < words(overflow); i++) {
+      if ((overflow[i] & ~word(another.overflow, i)) != 0) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * @param sourceId id in the registry of this set
+   * @return true if there are no sources other than the given one
+   */
+  public boolean containsOnly(int sourceId) {
+    if (registry == null) {
+      return true;
+    } else if (overflow == null && sourceId < Long.SIZE) { // the usual case, checked in O(1)
+      return sourceId == SourceRegistry.NO_SOURCE
+          ? bits == 0
+          : (bits & ~(1L << sourceId)) == 0;
+    }
+    return isSubsetOf(of(registry, sourceId));
+  }
+
+  public boolean isEmpty() {
+    return isSubsetOf(EMPTY);
+  }
+
+  public int size() {
+    int size = Long.bitCount(bits);
+    for (int i = 0; i < words(overflow); i++) {
+      size += Long.bitCount(overflow[i]);
+    }
+    return size;
+  }
+
+  /** @return ids of the sources in ascending order */
+  public int[] ids() {
+    int[] ids = new int[size()];
+    int count = 0;
+    for (int word = 0; word <= words(overflow); word++) {
+      long remaining = word == 0 ? bits : overflow[word - 1];
+      while (remaining != 0) {
+        ids[count++] = word * Long.SIZE + Long.numberOfTrailingZeros(remaining);
+        remaining &= remaining - 1;
+      }
+    }
+    return ids;
+  }
+
+  /** @return sources in the order of their ids */
+  public List<Path> sources() {
+    List<Path> sources = new ArrayList<>();
+    for (int id : ids()) {
+      sources.add(registry.sourceOf(id));
+    }
+    return sources;
+  }
+
+  /** @return the same set in another registry, registering its sources there if needed */
+  private SourceSet in(SourceRegistry target) {
+    if (isSameRegistry(target)) {
+      return this;
+    }
+    SourceSet translated = EMPTY;
+    for (Path source : sources()) {
+      int id = target.idOf(source);
+      translated = translated == EMPTY ? of(target, id) : translated.with(id);
+    }
+    return translated;
+  }
+
+  /** @return true if ids of both sets can be compared, which is always so for the empty set */
+  private boolean isSameRegistry(SourceSet another) {
+    return registry == another.registry || registry == null || another.registry == null;
+  }
+
+  private boolean isSameRegistry(SourceRegistry target) {
+    return registry == target || registry == null;
+  }
+
+  private static int words(long[] overflow) {
+    return overflow == null ? 0 : overflow.length;
+  }
+
+  private static long word(long[] overflow, int index) {
+    return overflow == null || index >= overflow.length ? 0L : overflow[index];
+  }
+
+  @Override
+  public int hashCode() {
+    int hash = 0;
+    for (Path source : sources()) {
+      hash += source.hashCode(); // by location, so sets of different registries may be equal
+    }
+    return hash;
+  }
+
+  @Override
+  public boolean equals(Object obj) {
+    if (obj == this) {
+      return true;
+    } else if (!(obj instanceof SourceSet)) {
+      return false;
+    }
+    SourceSet another = (SourceSet) obj;
+    return isSubsetOf(another) && another.isSubsetOf(this);
+  }
+
+  @Override
+  public String toString() {
+    return sources().toString();
+  }
+}
@@ -0,0 +1,48 @@
+package com.shaposhnyk;
+
+import java.io.Flushable;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Human-readable report, a line per domain: a top-level domain followed by its sub-domains
+ * indented with two spaces, each one with the file name of its source, e.g. {@code
+ * "  www.acme.com (domains1.txt)"}
+ */
+final class TextReportSink extends BufferedReportSink {
+  private static final byte[] LINE_SEPARATOR = utf8(System.lineSeparator());
+
+  // sources are few, their encoded file names are cached
+  private final Map<Path, byte[]> fileNames = new HashMap<>();
+
+  TextReportSink(WritableByteChannel channel, Flushable stream) {
+    super(channel, stream);
+  }
+
+  @Override
+  public void write(Domain topDomain) {
+    writeLine(topDomain, false);
+    for (Domain subDomain : topDomain.getSubDomainsView()) {
+      writeLine(subDomain, true);
+    }
+  }
+
+  private void writeLine(Domain domain, boolean indent) {
+    if (indent) {
+      writeByte(' ');
+      writeByte(' ');
+    }
+    writeUtf8(domain.getDomainName());
+    writeByte(' ');
+    writeByte('(');
+    writeBytes(fileNames.computeIfAbsent(domain.getSourceLocation(), TextReportSink::fileName));
+    writeByte(')');
+    writeBytes(LINE_SEPARATOR);
+  }
+
+  private static byte[] fileName(Path source) {
+    return utf8(String.valueOf(source == null ? null : source.getFileName()));
+  }
+}
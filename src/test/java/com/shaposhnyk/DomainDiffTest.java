@@ -0,0 +1,190 @@
+package com.shaposhnyk;
+
+import org.junit.Test;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+
+import static java.util.stream.Collectors.toList;
+import static java.util.stream.Collectors.toSet;
+import static org.assertj.core.api.Java6Assertions.assertThat;
+
+public class DomainDiffTest {
+  private static final Path A = Paths.get("A");
+  private static final Path B = Paths.get("B");
+
+  @Test
+  public void testSameHierarchies() {
+    DomainListMap before =
+        build(A, "acme.com", "www.acme.com", "one.internal.acme.com", "some.org");
+    DomainListMap after = build(A, "some.org", "one.internal.acme.com", "www.acme.com", "acme.com");
+
+    Domain acmeBefore = before.findDomain("acme.com");
+    Domain acmeAfter = after.findDomain("acme.com");
+    assertThat(acmeAfter.getStructureHash()).isEqualTo(acmeBefore.getStructureHash());
+    assertThat(acmeAfter).isEqualTo(acmeBefore).isNotSameAs(acmeBefore);
+    assertThat(DomainDiff.compare(before, after).isEmpty()).isTrue();
+
+    long[] beforeHashes = DomainDiff.bucketHashes(before.view());
+    assertThat(DomainDiff.bucketHashes(after.view())).isEqualTo(beforeHashes);
+    after.mergeDomain(Domain.of("two.internal.acme.com", A));
+    long[] afterHashes = DomainDiff.bucketHashes(after.view());
+    int acmeBucket = DomainDiff.bucketOf("acme.com");
+    for (int bucket = 0; bucket < DomainDiff.BUCKETS; bucket++) {
+      boolean changed = afterHashes[bucket] != beforeHashes[bucket];
+      assertThat(changed).as("bucket %d", bucket).isEqualTo(bucket == acmeBucket);
+    }
+    assertThat(acmeAfter.getStructureHash()).isNotEqualTo(acmeBefore.getStructureHash());
+    assertThat(acmeAfter).isNotEqualTo(acmeBefore);
+    assertThat(Domain.of("acme.com", B)).isNotEqualTo(Domain.of("acme.com", A));
+  }
+
+  @Test
+  public void testChanges() {
+    DomainList before =
+        build(A, "acme.com", "www.acme.com", "one.internal.acme.com", "two.internal.acme.com");
+    before.mergeDomain(Domain.of("db.acme.com", A));
+    DomainList after = build(A, "acme.com", "internal.acme.com", "one.internal.acme.com");
+    after.mergeDomain(Domain.of("two.internal.acme.com", A));
+    after.mergeDomain(Domain.of("db.acme.com", A));
+    after.mergeDomain(Domain.of("db.acme.com", B));
+    after.mergeDomain(Domain.of("some.org", B));
+
+    DomainDiff diff = DomainDiff.compare(before, after);
+
+    assertThat(names(diff.getAdded())).containsOnly("internal.acme.com", "some.org");
+    assertThat(names(diff.getRemoved())).containsOnly("www.acme.com");
+    assertThat(diff.getMoved())
+        .extracting(Object::toString)
+        .containsOnly(
+            "one.internal.acme.com (acme.com -> internal.acme.com)",
+            "two.internal.acme.com (acme.com -> internal.acme.com)");
+    assertThat(names(diff.getSourcesChanged())).containsOnly("db.acme.com");
+
+    DomainDiff reversed = DomainDiff.compare(after, before);
+    assertThat(names(reversed.getAdded())).containsOnly("www.acme.com");
+    assertThat(names(reversed.getRemoved())).containsOnly("internal.acme.com", "some.org");
+    assertThat(reversed.getMoved()).hasSize(2);
+  }
+
+  @Test
+  public void testInPlaceModifications() {
+    DomainListMap before = build(A, "acme.com", "one.internal.acme.com");
+    DomainListMap after = build(A, "acme.com", "one.internal.acme.com");
+    assertThat(DomainDiff.compare(before, after).isEmpty()).isTrue();
+
+    DomainForests.mergeTree(after, Domain.of("www.acme.com", A));
+    assertThat(names(DomainDiff.compare(before, after).getAdded())).containsOnly("www.acme.com");
+
+    DomainForests.removeDomain(after, "one.internal.acme.com");
+    assertThat(names(DomainDiff.compare(before, after).getRemoved()))
+        .containsOnly("one.internal.acme.com");
+
+    after.findDomain("acme.com").mergeDomain(Domain.of("db.acme.com", A));
+    assertThat(names(DomainDiff.compare(before, after).getAdded()))
+        .containsOnly("www.acme.com", "db.acme.com");
+  }
+
+  @Test
+  public void testRandomChanges() {
+    Random random = new Random(3);
+    int moved = 0;
+    int sourcesChanged = 0;
+    for (int round = 0; round < 20; round++) {
+      List<NamedSource> beforeSources = DomainServiceTest.randomSources(3, 200, random.nextLong());
+      List<NamedSource> afterSources = new ArrayList<>(beforeSources);
+      afterSources.set(
+          random.nextInt(3), DomainServiceTest.randomSources(1, 200, random.nextLong()).get(0));
+      DomainList before = forest(beforeSources);
+      DomainList after = forest(afterSources);
+
+      DomainDiff diff = DomainDiff.compare(before, after);
+
+      Map<String, Domain> parentsBefore = parents(before);
+      Map<String, Domain> parentsAfter = parents(after);
+      Set<String> common = new HashSet<>(parentsBefore.keySet());
+      common.retainAll(parentsAfter.keySet());
+      assertThat(names(diff.getAdded()))
+          .containsOnlyElementsOf(minus(parentsAfter.keySet(), parentsBefore.keySet()))
+          .hasSize(minus(parentsAfter.keySet(), parentsBefore.keySet()).size());
+      assertThat(names(diff.getRemoved()))
+          .containsOnlyElementsOf(minus(parentsBefore.keySet(), parentsAfter.keySet()))
+          .hasSize(minus(parentsBefore.keySet(), parentsAfter.keySet()).size());
+      assertThat(diff.getMoved().stream().map(m -> m.getAfter().getDomainName()).collect(toSet()))
+          .isEqualTo(
+              common.stream()
+                  .filter(
+                      name ->
+                          !String.valueOf(parentsBefore.get(name))
+                              .equals(String.valueOf(parentsAfter.get(name))))
+                  .collect(toSet()));
+      assertThat(new HashSet<>(names(diff.getSourcesChanged())))
+          .isEqualTo(
+              common.stream()
+                  .filter(
+                      name ->
+                          !find(before, name).getSources().equals(find(after, name).getSources()))
+                  .collect(toSet()));
+      moved += diff.getMoved().size();
+      sourcesChanged += diff.getSourcesChanged().size();
+    }
+    assertThat(moved).isPositive();
+    assertThat(sourcesChanged).isPositive();
+  }
+
+  private static DomainListMap build(Path source, String... names) {
+    DomainListMap list = new DomainListMap();
+    for (String name : names) {
+      list.mergeDomain(Domain.of(name, source));
+    }
+    return list;
+  }
+
+  private static DomainList forest(List<NamedSource> sources) {
+    DomainList list = new DomainListMap();
+    for (NamedSource source : sources) {
+      source.lines().forEach(name -> list.mergeDomain(Domain.of(name, source.name())));
+    }
+    return list;
+  }
+
+  /** @return parent of every domain by its name, null for top-level ones */
+  private static Map<String, Domain> parents(DomainList forest) {
+    Map<String, Domain> parents = new HashMap<>();
+    Deque<Domain> path = new ArrayDeque<>();
+    DomainTraversal.walk(
+        forest.view(),
+        new DomainVisitor() {
+          @Override
+          public boolean preVisit(Domain domain, int depth) {
+            parents.put(domain.getDomainName(), path.peek());
+            path.push(domain);
+            return true;
+          }
+
+          @Override
+          public void postVisit(Domain domain, int depth) {
+            path.pop();
+          }
+        });
+    return parents;
+  }
+
+  private static Domain find(DomainList forest, String name) {
+    return DomainTraversal.stream(forest.view())
+        .filter(d -> d.getDomainName().equals(name))
+        .findFirst()
+        .orElse(null);
+  }
+
+  private static Set<String> minus(Set<String> a, Set<String> b) {
+    Set<String> result = new HashSet<>(a);
+    result.removeAll(b);
+    return result;
+  }
+
+  private static List<String> names(Collection<Domain> domains) {
+    return domains.stream().map(Domain::getDomainName).collect(toList());
+  }
+}
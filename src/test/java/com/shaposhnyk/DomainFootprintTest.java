@@ -0,0 +1,188 @@
+package com.shaposhnyk;
+
+import org.junit.Assume;
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+
+import static org.assertj.core.api.Java6Assertions.assertThat;
+
+/**
+ * Heap footprint of a hierarchy, measured as bytes allocated by the current thread while it is
+ * built. Names are created beforehand and building creates no garbage, so allocated bytes are the
+ * retained ones. The eager layout, which had a {@link DomainListMap} with all sub-domains in every
+ * domain, is measured by building such maps for the same hierarchy.
+ *
+ * <p>A {@link FrozenDomainSet} is compared by heap used after collecting garbage instead, since
+ * freezing does create garbage, with names included on both sides
+ */
+public class DomainFootprintTest {
+  private static final Path SOURCE = Paths.get("source");
+
+  @Test
+  public void testBytesPerDomain() {
+    Assume.assumeTrue(allocatedBytes() >= 0);
+    List<String> names = randomNames(100_000, 1);
+
+    long start = allocatedBytes();
+    List<Domain> topDomains = new ArrayList<>(names.size());
+    SortedDomainGrouper grouper = new SortedDomainGrouper(topDomains::add);
+    for (String name : names) {
+      grouper.add(Domain.of(name, SOURCE));
+    }
+    grouper.finish();
+    long compact = allocatedBytes() - start;
+
+    List<Domain> all = new ArrayList<>(names.size());
+    Deque<Domain> toVisit = new ArrayDeque<>(topDomains);
+    while (!toVisit.isEmpty()) {
+      Domain domain = toVisit.pop();
+      all.add(domain);
+      toVisit.addAll(domain.getSubDomains());
+    }
+    List<DomainList> lists = new ArrayList<>(all.size());
+
+    start = allocatedBytes();
+    for (Domain domain : all) {
+      domain.getSubDomains(); // the copy is garbage, subtracted from the lists below
+    }
+    long copies = allocatedBytes() - start;
+
+    start = allocatedBytes();
+    for (Domain domain : all) {
+      if (domain.hasSubDomains()) {
+        DomainList list = new DomainListCompact();
+        domain.getSubDomains().forEach(list::addDomain);
+        lists.add(list);
+      }
+    }
+    long compactLists = allocatedBytes() - start - copies;
+    lists.clear();
+
+    start = allocatedBytes();
+    for (Domain domain : all) {
+      DomainList list = new DomainListMap();
+      domain.getSubDomains().forEach(list::addDomain);
+      lists.add(list);
+    }
+    long eagerLists = allocatedBytes() - start - copies;
+    long eager = compact - compactLists + eagerLists;
+
+    assertThat(all).hasSize(names.size());
+    assertThat(compact * 2)
+        .as(
+            "bytes per domain: eager child maps %d, compact %d",
+            eager / all.size(), compact / all.size())
+        .isLessThan(eager);
+  }
+
+  @Test
+  public void testFrozenBytesPerDomain() {
+    long base = usedHeap();
+    List<Domain> topDomains = hierarchyOf(registrableNames(100_000, 1));
+    long compact = usedHeap() - base; // names included, they are retained by the domains
+
+    FrozenDomainSet frozen = FrozenDomainSet.freeze(topDomains);
+    topDomains = null;
+    long frozenBytes = usedHeap() - base;
+
+    assertThat(frozen.size()).isEqualTo(100_000);
+    assertThat(frozenBytes * 4)
+        .as(
+            "retained bytes per domain: compact %d, frozen %d (%d by its arrays) in %d states",
+            compact / frozen.size(),
+            frozenBytes / frozen.size(),
+            frozen.sizeInBytes() / frozen.size(),
+            frozen.stateCount())
+        .isLessThan(compact);
+  }
+
+  private static long allocatedBytes() {
+    java.lang.management.ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+    if (!(threads instanceof com.sun.management.ThreadMXBean)) {
+      return -1;
+    }
+    return ((com.sun.management.ThreadMXBean) threads)
+        .getThreadAllocatedBytes(Thread.currentThread().getId());
+  }
+
+  /** @return top-level domains of a hierarchy of names sorted by labels */
+  private static List<Domain> hierarchyOf(List<String> names) {
+    List<Domain> topDomains = new ArrayList<>();
+    SortedDomainGrouper grouper = new SortedDomainGrouper(topDomains::add);
+    for (String name : names) {
+      grouper.add(Domain.of(name, SOURCE));
+    }
+    grouper.finish();
+    return topDomains;
+  }
+
+  /** @return bytes of reachable objects after collecting garbage, the same the footprint is */
+  private static long usedHeap() {
+    MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+    long used = Long.MAX_VALUE;
+    for (int i = 0; i < 3; i++) { // the lowest of a few, garbage of other threads may come late
+      System.gc();
+      used = Math.min(used, memory.getHeapMemoryUsage().getUsed());
+    }
+    return used;
+  }
+
+  /**
+   * @return distinct names sorted by labels, as in zone files and block lists: every registered
+   *     domain has a second-level label of its own, a third of them have a few hosts below it
+   */
+  private static List<String> registrableNames(int count, long seed) {
+    Random random = new Random(seed);
+    String[] tlds = {"com", "com", "com", "com", "net", "org", "de", "io", "co.uk", "ru"};
+    String[] hosts = {"www", "mail", "api", "cdn", "m", "shop", "blog", "static"};
+    Set<String> names = new HashSet<>(count * 2);
+    while (names.size() < count) {
+      StringBuilder label = new StringBuilder();
+      for (int length = 4 + random.nextInt(10); label.length() < length; ) {
+        label.append((char) ('a' + random.nextInt(26)));
+      }
+      String domain = label + "." + tlds[random.nextInt(tlds.length)];
+      names.add(domain);
+      for (int h = random.nextInt(3) == 0 ? random.nextInt(4) : 0; h > 0; h--) {
+        if (names.size() < count) {
+          names.add(hosts[random.nextInt(hosts.length)] + "." + domain);
+        }
+      }
+    }
+    List<String> sorted = new ArrayList<>(names);
+    sorted.sort(DomainNames.LABEL_ORDER);
+    return sorted;
+  }
+
+  /** @return distinct names sorted by labels, most of them are leaves as in real data */
+  private static List<String> randomNames(int count, long seed) {
+    Random random = new Random(seed);
+    String[] tlds = {"com", "org", "net", "io"};
+    List<String> names = new ArrayList<>(count);
+    Deque<String> parents = new ArrayDeque<>();
+    for (int i = 0; names.size() < count; i++) {
+      if (parents.isEmpty()) {
+        parents.push("host" + i + "." + tlds[random.nextInt(tlds.length)]);
+        names.add(parents.peek());
+      }
+      String parent = parents.pop();
+      if (parent.length() - parent.replace(".", "").length() > 3) {
+        continue; // 5 levels at most
+      }
+      int percentile = random.nextInt(100);
+      int children = percentile < 70 ? 0 : percentile < 90 ? 3 : percentile < 98 ? 8 : 40;
+      for (int c = 0; c < children && names.size() < count; c++) {
+        String name = "host" + c + "." + parent;
+        names.add(name);
+        parents.push(name);
+      }
+    }
+    names.sort(DomainNames.LABEL_ORDER);
+    return names;
+  }
+}
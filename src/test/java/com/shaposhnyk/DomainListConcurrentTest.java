@@ -0,0 +1,115 @@
+package com.shaposhnyk;
+
+import org.junit.Test;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Java6Assertions.assertThat;
+
+public class DomainListConcurrentTest {
+  private static final Path SOURCE = Paths.get("source");
+
+  @Test
+  public void testConcurrentMergeIsSameAsSequential() throws Exception {
+    List<String> names = DomainServiceTest.randomNames(new Random(3), 20_000);
+    DomainList sequential = new DomainListMap();
+    names.forEach(name -> sequential.mergeDomain(Domain.of(name, SOURCE)));
+
+    for (int round = 0; round < 5; round++) {
+      DomainList concurrent = new DomainListConcurrent();
+      mergeConcurrently(concurrent, names, 8, round);
+
+      assertThat(DomainServiceTest.describe(concurrent.getDomains()))
+          .isEqualTo(DomainServiceTest.describe(sequential.getDomains()));
+    }
+  }
+
+  @Test
+  public void testConcurrentQueries() {
+    DomainList list = new DomainListConcurrent(DomainListTrie::new);
+    list.mergeDomain(Domain.of("one.internal.acme.com"));
+    list.mergeDomain(Domain.of("acme.com"));
+    list.mergeDomain(Domain.of("some.org"));
+
+    assertThat(list.getDomains())
+        .extracting(Domain::getDomainName)
+        .containsOnly("acme.com", "some.org");
+    assertThat(list.findParentsOf("www.acme.com"))
+        .extracting(Domain::getDomainName)
+        .containsOnly("acme.com");
+    assertThat(list.contains(Domain.of("some.org"))).isTrue();
+    assertThat(list.contains(Domain.of("some.net"))).isFalse();
+    assertThat(list.findSubDomains("net")).isEmpty();
+  }
+
+  @Test
+  public void testSingleLabelDomainMovesStripes() throws Exception {
+    List<String> names = DomainServiceTest.randomNames(new Random(5), 20_000);
+    names.add(names.size() / 2, "com");
+    DomainList sequential = new DomainListMap();
+    names.forEach(name -> sequential.mergeDomain(Domain.of(name, SOURCE)));
+
+    DomainList concurrent = new DomainListConcurrent();
+    mergeConcurrently(concurrent, names, 8, 1);
+
+    assertThat(DomainServiceTest.describe(concurrent.getDomains()))
+        .isEqualTo(DomainServiceTest.describe(sequential.getDomains()));
+    assertThat(concurrent.findParentsOf("new.acme.com"))
+        .extracting(Domain::getDomainName)
+        .containsOnly("com");
+  }
+
+  @Test
+  public void testMergeReturnsAllDomains() {
+    DomainList list = new DomainListConcurrent();
+    list.mergeDomain(Domain.of("acme.com"));
+    list.mergeDomain(Domain.of("some.org"));
+
+    assertThat(list.mergeDomain(Domain.of("www.some.com")))
+        .extracting(Domain::getDomainName)
+        .containsOnly("acme.com", "some.org", "www.some.com");
+    assertThat(list.findSubDomains("com"))
+        .extracting(Domain::getDomainName)
+        .containsOnly("acme.com", "www.some.com");
+
+    list.mergeDomain(Domain.of("com"));
+    assertThat(list.getDomains()).extracting(Domain::getDomainName).containsOnly("com", "some.org");
+    assertThat(list.findDomain("com").getSubDomains())
+        .extracting(Domain::getDomainName)
+        .containsOnly("acme.com", "www.some.com");
+  }
+
+  private static void mergeConcurrently(DomainList list, List<String> names, int threads, long seed)
+      throws Exception {
+    List<String> shuffled = new ArrayList<>(names);
+    Collections.shuffle(shuffled, new Random(seed));
+
+    ExecutorService executor = Executors.newFixedThreadPool(threads);
+    CountDownLatch start = new CountDownLatch(1);
+    List<Future<?>> futures = new ArrayList<>();
+    for (int t = 0; t < threads; t++) {
+      List<String> part =
+          shuffled.subList(t * names.size() / threads, (t + 1) * names.size() / threads);
+      futures.add(
+          executor.submit(
+              () -> {
+                start.await();
+                part.forEach(name -> list.mergeDomain(Domain.of(name, SOURCE)));
+                return null;
+              }));
+    }
+    start.countDown();
+    for (Future<?> future : futures) {
+      future.get();
+    }
+    executor.shutdown();
+    executor.awaitTermination(1, TimeUnit.MINUTES);
+  }
+}
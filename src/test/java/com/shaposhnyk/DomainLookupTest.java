@@ -0,0 +1,67 @@
+package com.shaposhnyk;
+
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.assertj.core.api.Java6Assertions.assertThat;
+
+public class DomainLookupTest {
+
+  @Test
+  public void testFindOwner() {
+    DomainLookup lookup = new DomainLookup(sampleDomains());
+
+    assertThat(lookup.findOwner("www.someservice-a.internal.acme.com").getDomainName())
+        .isEqualTo("www.someservice-a.internal.acme.com");
+    assertThat(lookup.findOwner("api.www.someservice-a.internal.acme.com").getDomainName())
+        .isEqualTo("www.someservice-a.internal.acme.com");
+    assertThat(lookup.findOwner("Host-1.SomeService-B.internal.acme.com").getDomainName())
+        .isEqualTo("someservice-b.internal.acme.com");
+    assertThat(lookup.findOwner(new StringBuilder("x.internal.acme.com")).getDomainName())
+        .isEqualTo("internal.acme.com");
+    assertThat(lookup.findOwner("acme.com")).isNull();
+    assertThat(lookup.findOwner("ternal.acme.com")).isNull();
+    assertThat(lookup.findOwner("")).isNull();
+    assertThat(lookup.size()).isEqualTo(16);
+  }
+
+  @Test
+  public void testCachedBatchLookup() {
+    DomainLookup lookup = new DomainLookup(sampleDomains(), 32);
+    String[] hostnames = {"a.mydb.acme.com", "unknown.org", "a.mydb.acme.com", "unknown.org"};
+    Domain[] owners = new Domain[hostnames.length];
+
+    lookup.lookupAll(hostnames, owners);
+
+    assertThat(owners[0].getDomainName()).isEqualTo("mydb.acme.com");
+    assertThat(owners[1]).isNull();
+    assertThat(owners[2]).isSameAs(owners[0]);
+    assertThat(owners[3]).isNull();
+    assertThat(lookup.cacheMisses()).isEqualTo(2);
+    assertThat(lookup.cacheHits()).isEqualTo(2);
+
+    for (int i = 0; i < 100; i++) {
+      lookup.lookup("host" + i + ".acme.com");
+    }
+    assertThat(lookup.cacheEvictions()).isPositive();
+  }
+
+  @Test
+  public void testDisabledCacheIsBypassed() {
+    DomainLookup lookup = new DomainLookup(sampleDomains(), 0);
+
+    assertThat(lookup.lookup("a.mydb.acme.com").getDomainName()).isEqualTo("mydb.acme.com");
+    assertThat(lookup.lookup("a.mydb.acme.com").getDomainName()).isEqualTo("mydb.acme.com");
+    assertThat(lookup.lookup("unknown.org")).isNull();
+    assertThat(lookup.cacheHits()).isZero();
+    assertThat(lookup.cacheMisses()).isZero();
+    assertThat(lookup.cacheEvictions()).isZero();
+  }
+
+  private static List<Domain> sampleDomains() {
+    return new DomainService()
+        .domainsWithSubDomains(
+            NamedSources.sourcesOf("/domains1.txt", "/domains2.txt", "/domains3.txt"));
+  }
+}
@@ -0,0 +1,50 @@
+package com.shaposhnyk;
+
+import org.junit.Test;
+
+import javax.management.ObjectName;
+import java.io.ByteArrayOutputStream;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.assertj.core.api.Java6Assertions.assertThat;
+
+public class DomainMetricsTest {
+  @Test
+  public void testMetrics() throws Exception {
+    DomainMetrics metrics = new DomainMetrics();
+    DomainService domainSrv = new DomainService(null, metrics);
+    List<NamedSource> src =
+        Arrays.asList(
+            NamedSources.of(
+                Paths.get("A"),
+                Arrays.asList("www.acme.com", "", " .bad", "one.internal.acme.com")),
+            NamedSources.of(
+                Paths.get("B"), Arrays.asList("acme.com", "www.acme.com", "internal.acme.com")));
+
+    ObjectName name = metrics.register("testMetrics");
+    try {
+      domainSrv.solveProblem(src, ReportSinks.text(new ByteArrayOutputStream()));
+
+      assertThat(metrics.getSourcesIngested()).isEqualTo(2);
+      assertThat(metrics.getLinesRead()).isEqualTo(7);
+      assertThat(metrics.getLinesRejected()).isEqualTo(2);
+      assertThat(metrics.getDuplicatesSkipped()).isEqualTo(1);
+      assertThat(metrics.getParentHits()).isEqualTo(2); // duplicate and internal under acme
+      assertThat(metrics.getReparentedSubDomains()).isEqualTo(3);
+      assertThat(metrics.getIndexSize()).isGreaterThanOrEqualTo(2);
+      assertThat(metrics.getIngestNanos()).isPositive();
+      assertThat(
+              ManagementFactory.getPlatformMBeanServer().getAttribute(name, "LinesRejected"))
+          .isEqualTo(2L);
+    } finally {
+      ManagementFactory.getPlatformMBeanServer().unregisterMBean(name);
+    }
+
+    // events are not recorded w/o a recording, but the listener has to work
+    new DomainService(null, new JfrDomainListener())
+        .solveProblem(src, ReportSinks.text(new ByteArrayOutputStream()));
+  }
+}
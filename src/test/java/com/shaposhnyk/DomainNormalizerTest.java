@@ -0,0 +1,53 @@
+package com.shaposhnyk;
+
+import org.junit.Test;
+
+import java.net.IDN;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Locale;
+
+import static org.assertj.core.api.Java6Assertions.assertThat;
+
+public class DomainNormalizerTest {
+  @Test
+  public void testNormalizer() {
+    String name = "acme.com";
+    assertThat(DomainNormalizer.normalize(name)).isSameAs(name);
+    assertThat(DomainNormalizer.toCanonicalCase(name)).isSameAs(name);
+    assertThat(DomainNormalizer.normalize(" \tWWW.Acme.COM\r")).isEqualTo("www.acme.com");
+    assertThat(DomainNormalizer.normalize("_dmarc.acme.com")).isEqualTo("_dmarc.acme.com");
+    for (String malformed : Arrays.asList("", "  ", ".acme.com", "acme.com.", "acme..com", ".")) {
+      assertThat(DomainNormalizer.normalize(malformed)).as(malformed).isNull();
+    }
+
+    String label = String.join("", Collections.nCopies(63, "a"));
+    assertThat(DomainNormalizer.normalize(label + ".com")).isNotNull();
+    assertThat(DomainNormalizer.normalize(label + "a.com")).isNull();
+    String longName = String.join(".", Collections.nCopies(4, label)); // 255 characters
+    assertThat(DomainNormalizer.normalize(longName.substring(2))).isNotNull();
+    assertThat(DomainNormalizer.normalize(longName.substring(1))).isNull();
+
+    // internationalized names, their ASCII forms and Unicode full stops
+    String unicodeEte = "\u00E9t\u00E9.com";
+    String ete = IDN.toASCII(unicodeEte);
+    assertThat(DomainNormalizer.normalize("\u00C9t\u00C9.COM")).isEqualTo(ete);
+    assertThat(DomainNormalizer.normalize(" " + ete.toUpperCase())).isEqualTo(ete);
+    assertThat(DomainNormalizer.normalize(ete)).isSameAs(ete);
+    assertThat(DomainNormalizer.normalize("\u00E9t\u00E9\u3002com")).isEqualTo(ete);
+    assertThat(DomainNormalizer.normalize("\u00E9t\u00E9..com")).isNull();
+    assertThat(DomainNormalizer.toCanonicalCase("WWW.\u00C9t\u00C9.com")).isEqualTo("www." + ete);
+    assertThat(DomainNormalizer.toCanonicalCase(ete)).isSameAs(ete);
+    assertThat(DomainNormalizer.toUnicode(ete)).isEqualTo(unicodeEte);
+    assertThat(Domain.of(unicodeEte).getDomainName()).isEqualTo(ete);
+
+    Locale locale = Locale.getDefault();
+    try {
+      Locale.setDefault(new Locale("tr"));
+      assertThat(DomainNormalizer.normalize("TITLE.COM")).isEqualTo("title.com");
+      assertThat(Domain.of("TITLE.COM").getDomainName()).isEqualTo("title.com");
+    } finally {
+      Locale.setDefault(locale);
+    }
+  }
+}
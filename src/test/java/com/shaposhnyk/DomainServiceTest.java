@@ -6,17 +6,40 @@
 
 package com.shaposhnyk;
 
+import org.junit.After;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Stream;
 
+import static java.util.stream.Collectors.toList;
 import static org.assertj.core.api.Java6Assertions.assertThat;
+import static org.assertj.core.api.Java6Assertions.assertThatThrownBy;
 
 public class DomainServiceTest {
+  @Rule public TemporaryFolder tmp = new TemporaryFolder();
+
+  private final ForkJoinPool pool = new ForkJoinPool(4);
+
+  @After
+  public void shutdownPool() {
+    pool.shutdownNow();
+  }
 
   @Test
   public void testDistinctDomains() {
@@ -173,6 +196,88 @@ public class DomainServiceTest {
         .isEmpty();
   }
 
+  @Test
+  public void testDuplicatesKeepTheirSources() {
+    List<DomainList> lists =
+        Arrays.asList(
+            new DomainListMap(), new DomainListTrie(), new DomainListLabels(new LabelDictionary()));
+    for (DomainList list : lists) {
+      list.mergeDomain(Domain.of("acme.com", Paths.get("A")));
+      list.mergeDomain(Domain.of("internal.acme.com", Paths.get("B")));
+      list.mergeDomain(Domain.of("acme.com", Paths.get("C")));
+      list.mergeDomain(Domain.of("internal.acme.com", Paths.get("D")));
+
+      Domain acme = list.findDomain("acme.com");
+      assertThat(acme.getSourceLocation().equals(Paths.get("A"))).isTrue();
+      assertThat(acme.getSources().sources()).containsOnly(Paths.get("A"), Paths.get("C"));
+      assertThat(acme.getSubtreeSources().sources())
+          .containsOnly(Paths.get("A"), Paths.get("B"), Paths.get("C"), Paths.get("D"));
+      assertThat(acme.getSubDomains().get(0).getSources().sources())
+          .containsOnly(Paths.get("B"), Paths.get("D"));
+    }
+  }
+
+  @Test
+  public void testSubtreeSourcesInAllModes() {
+    DomainService domainSrv = new DomainService();
+    List<NamedSource> src = randomSources(8, 2_000, 13);
+
+    assertSubtreeSources(domainSrv.domainsWithSubDomains(src));
+    assertSubtreeSources(domainSrv.domainsWithSubDomainsBulk(src));
+    assertSubtreeSources(domainSrv.domainsWithSubDomainsParallel(src, pool));
+  }
+
+  @Test
+  public void testSourceSet() {
+    SourceRegistry registry = new SourceRegistry();
+    for (int i = 0; i <= 200; i++) {
+      registry.idOf(Paths.get("source" + i));
+    }
+    SourceSet small = SourceSet.of(registry, 3).with(5);
+    SourceSet large = SourceSet.of(registry, 200).with(3);
+
+    assertThat(small.ids()).containsExactly(3, 5);
+    assertThat(large.ids()).containsExactly(3, 200);
+    assertThat(small.union(large).ids()).containsExactly(3, 5, 200);
+    assertThat(SourceSet.of(registry, 3).isSubsetOf(large)).isTrue();
+    assertThat(large.isSubsetOf(small)).isFalse();
+    assertThat(large.containsOnly(200)).isFalse();
+    assertThat(SourceSet.of(registry, 200).containsOnly(200)).isTrue();
+    assertThat(SourceSet.of(registry, 5).containsOnly(5)).isTrue();
+    assertThat(SourceSet.EMPTY.containsOnly(SourceRegistry.NO_SOURCE)).isTrue();
+    assertThat(small.with(5)).isSameAs(small);
+    assertThat(SourceSet.of(registry, 200).with(3)).isEqualTo(large);
+  }
+
+  @Test
+  public void testSourceRegistriesAreScoped() {
+    SourceRegistry registry = new SourceRegistry();
+    Path a = Paths.get("A");
+    Path b = Paths.get("B");
+    registry.idOf(b);
+    List<NamedSource> src = Arrays.asList(sourceOf(a, "acme.com"), sourceOf(b, "www.acme.com"));
+    new DomainService(null, DomainListener.NOOP, registry).domainsWithSubDomains(src);
+    assertThat(registry.size()).isEqualTo(2);
+    assertThat(registry.idOf(b)).isZero();
+
+    // a service does not register sources anywhere else
+    int shared = SourceRegistry.SHARED.size();
+    List<Domain> result = new DomainService().domainsWithSubDomains(src);
+    assertThat(SourceRegistry.SHARED.size()).isEqualTo(shared);
+
+    // domains of different registries are combined and compared by their locations
+    DomainList mixed = new DomainListMap();
+    mixed.mergeDomain(Domain.of("acme.com", a, registry));
+    mixed.mergeDomain(Domain.of("www.acme.com", b));
+    Domain acme = mixed.findDomain("acme.com");
+    assertThat(acme.getSubtreeSources().sources()).containsExactly(b, a);
+    assertThat(acme.getSubtreeSources()).isEqualTo(result.get(0).getSubtreeSources());
+    assertThat(acme).isEqualTo(result.get(0));
+    assertThat(
+            new DomainService().flatMapAndfilterDomainsWithDiffSourceSubDomains(mixed.getDomains()))
+        .hasSize(1);
+  }
+
   @Test
   public void testSubDomainsAreNormalized() {
     DomainService domainSrv = new DomainService();
@@ -272,6 +377,326 @@ public class DomainServiceTest {
     assertThat(list.findParentsOf("acme.com")).isEmpty();
   }
 
+  @Test
+  public void testFindSubDomainsTrie() {
+    DomainListTrie list = new DomainListTrie();
+    list.addDomain(Domain.of("one.internal.acme.com"));
+    list.addDomain(Domain.of("two.internal.acme.com"));
+    list.addDomain(Domain.of("some.com"));
+
+    assertThat(list.findSubDomains("acme.com"))
+        .hasSize(2)
+        .extracting(Domain::getDomainName)
+        .containsOnly("one.internal.acme.com", "two.internal.acme.com");
+
+    assertThat(list.findSubDomains("one.internal.acme.com"))
+        .hasSize(1)
+        .extracting(Domain::getDomainName)
+        .containsOnly("one.internal.acme.com");
+
+    assertThat(list.findSubDomains("ne.internal.acme.com")).isEmpty();
+    assertThat(list.findSubDomains("some-one.internal.acme.com")).isEmpty();
+
+    list.removeDomain(list.findSubDomains("one.internal.acme.com").get(0));
+    assertThat(list.findSubDomains("acme.com"))
+        .extracting(Domain::getDomainName)
+        .containsOnly("two.internal.acme.com");
+    assertThat(list.contains(Domain.of("one.internal.acme.com"))).isFalse();
+    assertThat(list.contains(Domain.of("internal.acme.com"))).isFalse();
+    assertThat(list.contains(Domain.of("two.internal.acme.com"))).isTrue();
+  }
+
+  @Test
+  public void testFindParentTrie() {
+    DomainListTrie list = new DomainListTrie();
+    list.addDomain(Domain.of("one.internal.acme.com"));
+    list.addDomain(Domain.of("two.internal.acme.com"));
+    list.addDomain(Domain.of("some.com"));
+
+    assertThat(list.findParentsOf("some.one.internal.some.com"))
+        .extracting(Domain::getDomainName)
+        .containsOnly("some.com");
+
+    assertThat(list.findParentsOf("some.one.internal.acme.com"))
+        .extracting(Domain::getDomainName)
+        .containsOnly("one.internal.acme.com");
+
+    assertThat(list.findParentsOf("some-one.internal.acme.com")).isEmpty();
+    assertThat(list.findParentsOf("one.internal.acme.com")).isEmpty();
+    assertThat(list.findParentsOf("acme.com")).isEmpty();
+  }
+
+  @Test
+  public void testMergeSubDomainsTrie() {
+    DomainList list = new DomainListTrie();
+    list.mergeDomain(Domain.of("two.internal.acme.com"));
+    list.mergeDomain(Domain.of("one.internal.acme.com"));
+    list.mergeDomain(Domain.of("acme.com"));
+    list.mergeDomain(Domain.of("internal.acme.com"));
+
+    assertThat(list.getDomains()).extracting(Domain::getDomainName).containsOnly("acme.com");
+    assertThat(list.getDomains().get(0).getSubDomains().get(0).getSubDomains())
+        .extracting(Domain::getDomainName)
+        .containsOnly("one.internal.acme.com", "two.internal.acme.com");
+  }
+
+  @Test
+  public void testSampleProblemWithLabelDictionary() {
+    LabelDictionary dictionary = new LabelDictionary();
+    DomainService domainSrv = new DomainService(dictionary);
+    List<NamedSource> src =
+        NamedSources.sourcesOf("/domains1.txt", "/domains2.txt", "/domains3.txt");
+    List<Domain> domains =
+        domainSrv.flatMapAndfilterDomainsWithDiffSourceSubDomains(
+            domainSrv.domainsWithSubDomains(src));
+
+    assertThat(domains)
+        .extracting(Domain::getDomainName)
+        .containsOnly("internal.acme.com", "mydb.acme.com");
+
+    assertThat(domains)
+        .filteredOn(d -> "internal.acme.com".equals(d.getDomainName()))
+        .flatExtracting(d -> d.getSubDomains())
+        .extracting(Domain::getDomainName)
+        .containsOnly(
+            "someservice-a.internal.acme.com",
+            "someservice-c.internal.acme.com",
+            "www.someservice-a.internal.acme.com");
+
+    assertThat(dictionary.find("acme")).isNotNegative();
+  }
+
+  @Test
+  public void testLabelEncodedSubDomains() {
+    LabelDictionary dictionary = new LabelDictionary();
+    Domain one = Domain.of("One.internal.acme.com", Paths.get("A"), dictionary);
+    Domain internal = Domain.of("internal.acme.com", Paths.get("A"), dictionary);
+
+    assertThat(one.getDomainName()).isEqualTo("one.internal.acme.com");
+    assertThat(one.isSubDomainOf(internal)).isTrue();
+    assertThat(one.isSubDomainOf("acme.com")).isTrue();
+    assertThat(one.isSubDomainOf("ne.internal.acme.com")).isFalse();
+    assertThat(internal.isSubDomainOf(one)).isFalse();
+    assertThat(one.hashCode())
+        .isEqualTo(Domain.of("one.internal.acme.com", Paths.get("A")).hashCode());
+  }
+
+  @Test
+  public void testParallelIsSameAsSequential() {
+    DomainService domainSrv = new DomainService();
+    List<NamedSource> src = randomSources(8, 2_000, 42);
+
+    List<Domain> sequential = domainSrv.domainsWithSubDomains(src);
+    List<Domain> parallel = domainSrv.domainsWithSubDomainsParallel(src, pool);
+
+    assertThat(describe(parallel)).isEqualTo(describe(sequential));
+    assertThat(describeInOrder(parallel)).isEqualTo(describeInOrder(sequential));
+  }
+
+  @Test
+  public void testPipelinedIsSameAsSequential() {
+    DomainService domainSrv = new DomainService();
+    List<NamedSource> src = randomSources(8, 2_000, 17);
+
+    List<Domain> sequential = domainSrv.domainsWithSubDomains(src);
+    // small batches and queues, so readers are blocked by the merger most of the time
+    assertThat(describe(domainSrv.domainsWithSubDomainsPipelined(src, 2, 3, 7, 2)))
+        .isEqualTo(describe(sequential));
+    assertThat(describe(domainSrv.domainsWithSubDomainsPipelined(src)))
+        .isEqualTo(describe(sequential));
+  }
+
+  @Test
+  public void testPipelinedSourceFailure() {
+    NamedSource failing =
+        new NamedSource() {
+          @Override
+          public Path name() {
+            return Paths.get("failing");
+          }
+
+          @Override
+          public Stream<String> lines() {
+            return Stream.of("acme.com", "www.acme.com").map(line -> {
+              throw new IllegalStateException("broken " + line);
+            });
+          }
+        };
+    List<NamedSource> src = new ArrayList<>(randomSources(2, 100, 1));
+    src.add(1, failing);
+
+    assertThatThrownBy(() -> new DomainService().domainsWithSubDomainsPipelined(src, 1, 1, 1, 1))
+        .isInstanceOf(IllegalStateException.class)
+        .hasMessage("broken acme.com");
+  }
+
+  @Test
+  public void testBulkIsSameAsSequential() {
+    DomainService domainSrv = new DomainService();
+    List<NamedSource> src = randomSources(8, 2_000, 5);
+
+    List<Domain> bulk = domainSrv.domainsWithSubDomainsBulk(src);
+    assertThat(describe(bulk)).isEqualTo(describe(domainSrv.domainsWithSubDomains(src)));
+    // sorted levels make the whole pre-order sorted, unlike the merge order
+    assertThat(DomainTraversal.stream(bulk).map(Domain::getDomainName).collect(toList()))
+        .isSortedAccordingTo(DomainNames.LABEL_ORDER);
+
+    List<NamedSource> unsorted = listSourceOf("some.com", "www.acme.com", "acme.com", "a.acme.com");
+    assertThat(domainSrv.domainsWithSubDomains(unsorted))
+        .extracting(Domain::getDomainName)
+        .containsExactly("some.com", "acme.com");
+    assertThat(domainSrv.domainsWithSubDomainsBulk(unsorted))
+        .extracting(Domain::getDomainName)
+        .containsExactly("acme.com", "some.com");
+    assertThat(domainSrv.domainsWithSubDomainsBulk(unsorted).get(0).getSubDomains())
+        .extracting(Domain::getDomainName)
+        .containsExactly("a.acme.com", "www.acme.com");
+  }
+
+  @Test
+  public void testBuildFrom() {
+    DomainList list =
+        DomainList.buildFrom(
+            Stream.of(
+                Domain.of("two.internal.acme.com", Paths.get("A")),
+                Domain.of("acme.com", Paths.get("A")),
+                Domain.of("one.internal.acme.com", Paths.get("A")),
+                Domain.of("acme.com", Paths.get("B")),
+                Domain.of("internal.acme.com", Paths.get("B")),
+                Domain.of("some.com", Paths.get("B"))));
+
+    assertThat(describe(list.getDomains()))
+        .isEqualTo(
+            "acme.com (A)\n"
+                + "  internal.acme.com (B)\n"
+                + "    one.internal.acme.com (A)\n"
+                + "    two.internal.acme.com (A)\n"
+                + "some.com (B)\n");
+  }
+
+  @Test
+  public void testMergeForests() {
+    Domain one = Domain.of("one.internal.acme.com", Paths.get("B"));
+    Domain internal = Domain.of("internal.acme.com", Paths.get("B"), one);
+    Domain two = Domain.of("two.internal.acme.com", Paths.get("B"));
+    Domain acme = Domain.of("acme.com", Paths.get("B"), two);
+
+    DomainList first = new DomainListMap();
+    first.addDomain(Domain.of("two.internal.acme.com", Paths.get("A")));
+    first.addDomain(Domain.of("www.acme.com", Paths.get("A")));
+    DomainForests.mergeForest(first, Arrays.asList(internal, acme));
+
+    assertThat(describe(first.getDomains()))
+        .isEqualTo(
+            "acme.com (B)\n"
+                + "  internal.acme.com (B)\n"
+                + "    one.internal.acme.com (B)\n"
+                + "    two.internal.acme.com (A)\n"
+                + "  www.acme.com (A)\n");
+  }
+
+  @Test
+  public void testRepeatsAreDroppedBeforeMerge() throws IOException {
+    Path file = tmp.newFile("repeats.txt").toPath();
+    List<String> lines = new ArrayList<>();
+    for (int i = 0; i < 1_000; i++) {
+      lines.add(i % 2 == 0 ? "www.acme.com" : " WWW.acme.com");
+      lines.add("host" + (i % 10) + ".acme.com");
+    }
+    lines.add("acme.com");
+    Files.write(file, lines, StandardCharsets.UTF_8);
+
+    for (NamedSource source : Arrays.asList(NamedSources.of(file), NamedSources.mapped(file))) {
+      DomainMetrics metrics = new DomainMetrics();
+      List<Domain> result =
+          new DomainService(null, metrics).domainsWithSubDomains(Arrays.asList(source));
+
+      assertThat(describe(result))
+          .isEqualTo(
+              describe(
+                  new DomainService()
+                      .domainsWithSubDomains(
+                          Arrays.asList(NamedSources.of(file, distinct(lines))))));
+      assertThat(metrics.getLinesRead()).isEqualTo(2_001);
+      assertThat(metrics.getDuplicatesSkipped()).isEqualTo(2_001 - 12); // all but distinct names
+      assertThat(metrics.getReparentedSubDomains()).isEqualTo(11);
+    }
+  }
+
+  @Test
+  public void testStreamingSortedSources() {
+    DomainService domainSrv = new DomainService();
+    List<NamedSource> src = randomSources(4, 1_000, 7);
+    List<NamedSource> sorted = new ArrayList<>();
+    for (NamedSource source : src) {
+      List<String> lines = source.lines().collect(toList());
+      lines.sort(DomainNames.LABEL_ORDER);
+      sorted.add(NamedSources.of(source.name(), lines));
+    }
+
+    List<Domain> streamed = new ArrayList<>();
+    domainSrv.streamDomainsWithDiffSourceSubDomains(sorted, streamed::add);
+
+    assertThat(streamed).isNotEmpty();
+    assertThat(describe(streamed))
+        .isEqualTo(
+            describe(
+                domainSrv.flatMapAndfilterDomainsWithDiffSourceSubDomains(
+                    domainSrv.domainsWithSubDomains(src))));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testStreamingUnsortedSource() {
+    new DomainService()
+        .streamDomainsWithDiffSourceSubDomains(
+            listSourceOf("internal.acme.com", "acme.com"), d -> {});
+  }
+
+  @Test
+  public void testExternalSort() throws IOException {
+    DomainService domainSrv = new DomainService();
+    List<NamedSource> src = randomSources(4, 1_000, 11);
+    File runs = tmp.newFolder();
+    ExternalDomainSorter sorter = new ExternalDomainSorter(runs.toPath(), 4_096, 3);
+
+    List<Domain> streamed = new ArrayList<>();
+    domainSrv.streamDomainsWithDiffSourceSubDomains(src, sorter, streamed::add);
+
+    List<Domain> expected =
+        domainSrv.flatMapAndfilterDomainsWithDiffSourceSubDomains(
+            domainSrv.domainsWithSubDomains(src));
+    assertThat(streamed).isNotEmpty();
+    assertThat(describe(streamed)).isEqualTo(describe(expected));
+    // domains are equal with all their sources, which the description does not show
+    assertThat(streamed).hasSameSizeAs(expected).containsOnlyElementsOf(expected);
+    assertThat(runs.list()).isEmpty();
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testExternalSortNeedsMemory() throws IOException {
+    new ExternalDomainSorter(tmp.newFolder().toPath(), 0);
+  }
+
+  @Test
+  public void testReversedOrder() {
+    List<String> names =
+        Arrays.asList("b.acme.com", "acme-x.com", "acme.com", "a.acme.com", "com", "x.org");
+    List<String> reversed = names.stream().map(DomainNames::reverse).collect(toList());
+    reversed.sort(DomainNames.REVERSED_ORDER);
+    names.sort(DomainNames.LABEL_ORDER);
+    assertThat(reversed.stream().map(DomainNames::reverse).collect(toList()))
+        .containsExactlyElementsOf(names);
+  }
+
+  @Test
+  public void testLabelOrder() {
+    List<String> names =
+        Arrays.asList("b.acme.com", "acme-x.com", "acme.com", "a.acme.com", "com", "x.org");
+    names.sort(DomainNames.LABEL_ORDER);
+    assertThat(names)
+        .containsExactly("com", "acme.com", "a.acme.com", "b.acme.com", "acme-x.com", "x.org");
+  }
+
   @Test
   public void runPrint() {
     DomainService domainSrv = new DomainService();
@@ -285,4 +710,82 @@ public class DomainServiceTest {
   private NamedSource sourceOf(Path path, String... lines) {
     return NamedSources.of(path, Arrays.asList(lines));
   }
+
+  static List<NamedSource> randomSources(int count, int linesPerSource, long seed) {
+    Random random = new Random(seed);
+    List<NamedSource> sources = new ArrayList<>();
+    for (int s = 0; s < count; s++) {
+      sources.add(NamedSources.of(Paths.get("source" + s), randomNames(random, linesPerSource)));
+    }
+    return sources;
+  }
+
+  /** @return names of 2 to 5 labels of a small alphabet, so they share parents and repeat */
+  static List<String> randomNames(Random random, int count) {
+    String[] labels = {"www", "internal", "acme", "portal", "db", "dev", "a", "b"};
+    String[] tlds = {"com", "org"};
+    List<String> names = new ArrayList<>();
+    for (int i = 0; i < count; i++) {
+      StringBuilder name = new StringBuilder(tlds[random.nextInt(tlds.length)]);
+      for (int depth = random.nextInt(4); depth >= 0; depth--) {
+        name.insert(0, labels[random.nextInt(labels.length)] + ".");
+      }
+      names.add(name.toString());
+    }
+    return names;
+  }
+
+  private static List<String> distinct(List<String> lines) {
+    return lines.stream().map(DomainNames::normalize).distinct().collect(toList());
+  }
+
+  /** Checks that subtree sources of every domain contain sources of all its sub-domains */
+  private static SourceSet assertSubtreeSources(Collection<Domain> domains) {
+    SourceSet all = SourceSet.EMPTY;
+    for (Domain d : domains) {
+      SourceSet actual = d.getSources().union(assertSubtreeSources(d.getSubDomains()));
+      assertThat(actual.isSubsetOf(d.getSubtreeSources())).as(d.getDomainName()).isTrue();
+      all = all.union(actual);
+    }
+    return all;
+  }
+
+  /** @return sorted textual representation of a hierarchy, ignoring order of siblings */
+  static String describe(Collection<Domain> domains) {
+    StringBuilder sb = new StringBuilder();
+    describe("", domains, sb);
+    return sb.toString();
+  }
+
+  /** @return description of domains in the order they are returned at every level */
+  static String describeInOrder(Collection<Domain> domains) {
+    StringBuilder sb = new StringBuilder();
+    DomainTraversal.walk(
+        domains,
+        new DomainVisitor() {
+          @Override
+          public boolean preVisit(Domain d, int depth) {
+            sb.append(String.join("", Collections.nCopies(depth, "  ")))
+                .append(d.getDomainName())
+                .append(" (")
+                .append(d.getSourceLocation())
+                .append(")\n");
+            return true;
+          }
+        });
+    return sb.toString();
+  }
+
+  private static void describe(String ident, Collection<Domain> domains, StringBuilder sb) {
+    List<Domain> sorted = new ArrayList<>(domains);
+    sorted.sort(Comparator.comparing(Domain::getDomainName));
+    for (Domain d : sorted) {
+      sb.append(ident)
+          .append(d.getDomainName())
+          .append(" (")
+          .append(d.getSourceLocation())
+          .append(")\n");
+      describe(ident + "  ", d.getSubDomains(), sb);
+    }
+  }
 }
@@ -0,0 +1,87 @@
+package com.shaposhnyk;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+
+import static java.util.stream.Collectors.toList;
+import static org.assertj.core.api.Java6Assertions.assertThat;
+
+public class DomainSnapshotTest {
+  @Rule public TemporaryFolder tmp = new TemporaryFolder();
+
+  @Test
+  public void testSnapshotQueries() throws IOException {
+    List<Domain> domains =
+        new DomainService()
+            .domainsWithSubDomains(
+                NamedSources.sourcesOf("/domains1.txt", "/domains2.txt", "/domains3.txt"));
+    Path file = tmp.newFile("domains.snapshot").toPath();
+    DomainSnapshot.write(domains, file);
+
+    DomainSnapshot snapshot = DomainSnapshot.open(file);
+    assertThat(DomainServiceTest.describe(snapshot.getDomains()))
+        .isEqualTo(DomainServiceTest.describe(domains));
+
+    int index = snapshot.indexOf("www.someservice-a.internal.acme.com");
+    assertThat(index).isNotNegative();
+    assertThat(snapshot.sourceAt(index).equals(Paths.get("/domains1.txt"))).isTrue();
+    assertThat(snapshot.nameAt(snapshot.parentOf(index)))
+        .isEqualTo("someservice-a.internal.acme.com");
+    assertThat(snapshot.indexOf("unknown.acme.com")).isNegative();
+
+    assertThat(snapshot.findParentsOf("www.dev.mydb.acme.com"))
+        .extracting(Domain::getDomainName)
+        .containsOnly("mydb.acme.com");
+    assertThat(snapshot.findSubDomains("acme.com"))
+        .extracting(Domain::getDomainName)
+        .containsOnlyElementsOf(domains.stream().map(Domain::getDomainName).collect(toList()));
+    assertThat(snapshot.contains(Domain.of("internal.acme.com"))).isTrue();
+    assertThat(snapshot.contains(Domain.of("one.internal.acme.com"))).isFalse();
+    assertThat(snapshot.findDomain("mydb.acme.com").getSubDomains())
+        .extracting(Domain::getDomainName)
+        .containsOnly("dev.mydb.acme.com");
+  }
+
+  @Test
+  public void testSnapshotKeepsAllSources() throws IOException {
+    Path a = Paths.get("A");
+    Path b = Paths.get("B");
+    DomainList list = new DomainListMap();
+    list.mergeDomain(Domain.of("acme.com", a));
+    list.mergeDomain(Domain.of("www.acme.com", b));
+    list.mergeDomain(Domain.of("acme.com", b));
+    list.mergeDomain(Domain.of("some.org", b));
+    list.mergeDomain(Domain.of("some.org", a));
+    Path file = tmp.newFile("sources.snapshot").toPath();
+    DomainSnapshot.write(list.getDomains(), file);
+
+    DomainSnapshot snapshot = DomainSnapshot.open(file);
+    assertThat(snapshot.sourcesAt(snapshot.indexOf("acme.com"))).containsExactly(a, b);
+    assertThat(snapshot.sourcesAt(snapshot.indexOf("some.org"))).containsExactly(b, a);
+    assertThat(snapshot.sourcesAt(snapshot.indexOf("www.acme.com"))).containsExactly(b);
+    for (Domain domain : DomainTraversal.stream(list.getDomains()).collect(toList())) {
+      Domain restored = snapshot.domainAt(snapshot.indexOf(domain.getDomainName()));
+      assertThat(restored.getSources()).isEqualTo(domain.getSources());
+      assertThat(restored.getSourceLocation().toString())
+          .isEqualTo(domain.getSourceLocation().toString());
+      assertThat(restored.getSubtreeSources()).isEqualTo(domain.getSubtreeSources());
+    }
+    assertThat(snapshot.getDomains()).containsOnlyElementsOf(list.getDomains());
+  }
+
+  @Test(expected = UnsupportedOperationException.class)
+  public void testSnapshotIsReadOnly() throws IOException {
+    Path file = tmp.newFile("empty.snapshot").toPath();
+    DomainSnapshot.write(Collections.emptyList(), file);
+
+    DomainSnapshot snapshot = DomainSnapshot.open(file);
+    assertThat(snapshot.isEmpty()).isTrue();
+    snapshot.mergeDomain(Domain.of("acme.com"));
+  }
+}
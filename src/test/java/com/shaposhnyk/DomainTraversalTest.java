@@ -0,0 +1,193 @@
+package com.shaposhnyk;
+
+import org.junit.Test;
+
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.StreamSupport;
+
+import static java.util.stream.Collectors.toList;
+import static org.assertj.core.api.Java6Assertions.assertThat;
+import static org.assertj.core.api.Java6Assertions.assertThatThrownBy;
+
+public class DomainTraversalTest {
+
+  @Test
+  public void testPreAndPostOrder() {
+    List<String> events = new ArrayList<>();
+    DomainTraversal.walk(
+        sampleDomains(),
+        new DomainVisitor() {
+          @Override
+          public boolean preVisit(Domain domain, int depth) {
+            events.add("+" + depth + " " + domain);
+            return !domain.getDomainName().equals("www.acme.com");
+          }
+
+          @Override
+          public void postVisit(Domain domain, int depth) {
+            events.add("-" + depth + " " + domain);
+          }
+        });
+
+    assertThat(events)
+        .containsExactly(
+            "+0 acme.com",
+            "+1 internal.acme.com",
+            "+2 one.internal.acme.com",
+            "-2 one.internal.acme.com",
+            "+2 two.internal.acme.com",
+            "-2 two.internal.acme.com",
+            "-1 internal.acme.com",
+            "+1 www.acme.com",
+            "-1 www.acme.com",
+            "-0 acme.com",
+            "+0 some.org",
+            "-0 some.org");
+  }
+
+  @Test
+  public void testDepthLimit() {
+    List<String> visited = new ArrayList<>();
+    DomainTraversal.walk(
+        sampleDomains(),
+        1,
+        new DomainVisitor() {
+          @Override
+          public void postVisit(Domain domain, int depth) {
+            visited.add(domain.getDomainName());
+          }
+        });
+
+    assertThat(visited)
+        .containsExactly("internal.acme.com", "www.acme.com", "acme.com", "some.org");
+  }
+
+  @Test
+  public void testSpliterator() {
+    List<Domain> domains = sampleDomains();
+
+    assertThat(DomainTraversal.stream(domains).map(Domain::getDomainName).collect(toList()))
+        .containsExactly(
+            "acme.com",
+            "internal.acme.com",
+            "one.internal.acme.com",
+            "two.internal.acme.com",
+            "www.acme.com",
+            "api.www.acme.com",
+            "some.org");
+    Spliterator<Domain> spliterator =
+        DomainTraversal.spliterator(domains, DomainTraversal.UNLIMITED);
+    assertThat(spliterator.hasCharacteristics(Spliterator.SIZED)).isFalse();
+    assertThat(spliterator.estimateSize()).isEqualTo(Long.MAX_VALUE);
+    assertThat(StreamSupport.stream(DomainTraversal.spliterator(domains, 0), false).count())
+        .isEqualTo(2);
+    assertThat(StreamSupport.stream(DomainTraversal.spliterator(domains, 1), true).count())
+        .isEqualTo(4);
+  }
+
+  @Test
+  public void testSubtreeSize() {
+    DomainList list = new DomainListMap();
+    sampleDomains().forEach(list::mergeDomain);
+    Domain acme = list.findDomain("acme.com");
+    assertThat(acme.getSubtreeSize()).isEqualTo(6);
+
+    list.mergeDomain(Domain.of("three.internal.acme.com"));
+    list.mergeDomain(Domain.of("www.acme.com")); // a duplicate
+    assertThat(acme.getSubtreeSize()).isEqualTo(7);
+
+    DomainForests.removeDomain(list, "internal.acme.com");
+    assertThat(acme.getSubtreeSize()).isEqualTo(6);
+    assertThat(list.findDomain("some.org").getSubtreeSize()).isEqualTo(1);
+  }
+
+  @Test
+  public void testViews() {
+    DomainList list = new DomainListMap();
+    Collection<Domain> view = list.view();
+    Domain acme = Domain.of("acme.com");
+    list.mergeDomain(acme);
+    Collection<Domain> subDomains = acme.getSubDomainsView();
+
+    for (int i = 0; i < DomainListCompact.INLINE_LIMIT + 2; i++) {
+      assertThat(list.mergeDomain(Domain.of("host" + i + ".acme.com"))).hasSize(1);
+      assertThat(acme.getSubDomainsView()).hasSize(i + 1);
+    }
+    list.mergeDomain(Domain.of("some.org"));
+
+    assertThat(view).extracting(Domain::getDomainName).containsExactly("acme.com", "some.org");
+    assertThat(acme.getSubDomainsView()).hasSize(DomainListCompact.INLINE_LIMIT + 2);
+    assertThat(subDomains).hasSize(DomainListCompact.INLINE_LIMIT + 2); // taken while a leaf
+    assertThatThrownBy(() -> view.remove(acme)).isInstanceOf(UnsupportedOperationException.class);
+    assertThatThrownBy(() -> acme.getSubDomainsView().clear())
+        .isInstanceOf(UnsupportedOperationException.class);
+  }
+
+  @Test
+  public void testDeepHierarchyWithSmallStack() throws InterruptedException {
+    int depth = 3_000;
+    StringBuilder name = new StringBuilder("com");
+    List<String> names = new ArrayList<>();
+    names.add(name.toString());
+    for (int i = 1; i < depth; i++) {
+      names.add(name.insert(0, "a.").toString());
+    }
+    // built bottom-up, since merging itself descends recursively
+    Domain deepest = Domain.of(names.get(depth - 1), Paths.get("A"));
+    for (int i = depth - 2; i >= 0; i--) {
+      deepest = Domain.of(names.get(i), Paths.get("A"), deepest);
+    }
+    Domain root = deepest;
+
+    AtomicInteger maxDepth = new AtomicInteger();
+    AtomicReference<Throwable> failure = new AtomicReference<>();
+    Thread thread =
+        new Thread(
+            null,
+            () -> {
+              try {
+                DomainTraversal.walk(
+                    Collections.singletonList(root),
+                    new DomainVisitor() {
+                      @Override
+                      public boolean preVisit(Domain domain, int depth) {
+                        maxDepth.accumulateAndGet(depth, Math::max);
+                        return true;
+                      }
+                    });
+                assertThat(root.getSubtreeSize()).isEqualTo(depth);
+              } catch (Throwable e) {
+                failure.set(e);
+              }
+            },
+            "small-stack",
+            64 * 1024);
+    thread.start(); // a recursive walk would overflow such a stack
+    thread.join();
+
+    assertThat(failure.get()).isNull();
+    assertThat(maxDepth.get()).isEqualTo(depth - 1);
+  }
+
+  private static List<Domain> sampleDomains() {
+    List<String> names =
+        Arrays.asList(
+            "acme.com",
+            "internal.acme.com",
+            "one.internal.acme.com",
+            "two.internal.acme.com",
+            "www.acme.com",
+            "api.www.acme.com",
+            "some.org");
+    return new DomainService()
+        .domainsWithSubDomains(Collections.singletonList(NamedSources.of(Paths.get("A"), names)));
+  }
+}
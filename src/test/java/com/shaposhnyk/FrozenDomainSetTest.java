@@ -0,0 +1,99 @@
+package com.shaposhnyk;
+
+import org.junit.Test;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+
+import static org.assertj.core.api.Java6Assertions.assertThat;
+
+public class FrozenDomainSetTest {
+  private static final Path A = Paths.get("A");
+
+  @Test
+  public void testLookups() {
+    FrozenDomainSet set =
+        freeze("acme.com", "www.acme.com", "one.internal.acme.com", "some.org", "www.some.org");
+
+    assertThat(set.size()).isEqualTo(5);
+    assertThat(set.contains("acme.com")).isTrue();
+    assertThat(set.contains("one.internal.acme.com")).isTrue();
+    assertThat(set.contains("internal.acme.com")).isFalse();
+    assertThat(set.contains("com")).isFalse();
+    assertThat(set.contains("acme.co")).isFalse();
+    assertThat(set.contains("www.acme")).isFalse();
+
+    assertThat(set.findParent("one.internal.acme.com")).isEqualTo("acme.com");
+    assertThat(set.findParent("db.www.acme.com")).isEqualTo("www.acme.com");
+    assertThat(set.findParent("acme.com")).isNull();
+    assertThat(set.findParent("acme.net")).isNull();
+    assertThat(set.findOwner("www.acme.com")).isEqualTo("www.acme.com");
+    assertThat(set.findOwner("db.internal.acme.com")).isEqualTo("acme.com");
+    assertThat(set.findOwner("example.com")).isNull();
+
+    List<String> subtree = new ArrayList<>();
+    set.forEachInSubtree("acme.com", subtree::add);
+    assertThat(subtree).containsExactly("acme.com", "one.internal.acme.com", "www.acme.com");
+    subtree.clear();
+    set.forEachInSubtree("internal.acme.com", subtree::add);
+    assertThat(subtree).containsExactly("one.internal.acme.com");
+    subtree.clear();
+    set.forEachInSubtree("acme.net", subtree::add);
+    assertThat(subtree).isEmpty();
+
+    // root, com, org, acme, some, internal and a single state for all leaves
+    assertThat(set.stateCount()).isEqualTo(7);
+  }
+
+  @Test
+  public void testSameAsHierarchy() {
+    Random random = new Random(7);
+    String[] labels = {"com", "org", "acme", "www", "db", "mail", "internal", "api"};
+    Set<String> names = new HashSet<>();
+    for (int i = 0; i < 2000; i++) {
+      StringBuilder name = new StringBuilder(labels[random.nextInt(2)]);
+      for (int level = random.nextInt(5); level >= 0; level--) {
+        name.insert(0, labels[random.nextInt(labels.length)] + ".");
+      }
+      names.add(name.toString());
+    }
+    DomainList hierarchy = new DomainListMap();
+    names.forEach(name -> hierarchy.mergeDomain(Domain.of(name, A)));
+    FrozenDomainSet set = FrozenDomainSet.freeze(hierarchy.view());
+
+    assertThat(set.size()).isEqualTo(names.size());
+    for (int i = 0; i < 2000; i++) {
+      String name = "www." + labels[random.nextInt(labels.length)] + ".acme.com";
+      assertThat(set.contains(name)).as(name).isEqualTo(names.contains(name));
+      assertThat(set.findParent(name)).as(name).isEqualTo(parentOf(names, name));
+    }
+
+    for (Domain top : hierarchy.view()) {
+      List<String> expected = new ArrayList<>();
+      DomainTraversal.stream(Collections.singleton(top))
+          .forEach(domain -> expected.add(domain.getDomainName()));
+      expected.sort(DomainNames.LABEL_ORDER);
+      List<String> subtree = new ArrayList<>();
+      set.forEachInSubtree(top.getDomainName(), subtree::add);
+      assertThat(subtree).isEqualTo(expected);
+    }
+  }
+
+  private static String parentOf(Set<String> names, String name) {
+    for (int dot = name.indexOf('.'); dot >= 0; dot = name.indexOf('.', dot + 1)) {
+      if (names.contains(name.substring(dot + 1))) {
+        return name.substring(dot + 1);
+      }
+    }
+    return null;
+  }
+
+  private static FrozenDomainSet freeze(String... names) {
+    DomainList hierarchy = new DomainListMap();
+    for (String name : names) {
+      hierarchy.mergeDomain(Domain.of(name, A));
+    }
+    return FrozenDomainSet.freeze(hierarchy.view());
+  }
+}
@@ -0,0 +1,100 @@
+package com.shaposhnyk;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+
+import static org.assertj.core.api.Java6Assertions.assertThat;
+
+public class IncrementalDomainServiceTest {
+  @Rule public TemporaryFolder folder = new TemporaryFolder();
+
+  @Test
+  public void testRefreshIsSameAsFullRun() throws Exception {
+    Path first = write("first.txt", "acme.com", "www.acme.com", "some.org");
+    Path second = write("second.txt", "dev.acme.com", "db.dev.acme.com", "portal.some.org");
+    List<Path> files = Arrays.asList(first, second);
+
+    Map<String, Domain> notified = new HashMap<>();
+    try (IncrementalDomainService service =
+        new IncrementalDomainService(files, notified::put)) {
+      assertSameAsFullRun(service, files);
+
+      // removed parent, its children are promoted to top-level domains
+      write("first.txt", "www.acme.com", "some.org");
+      notified.clear();
+      service.refresh(first);
+      assertSameAsFullRun(service, files);
+      assertThat(notified).containsKey("acme.com");
+      assertThat(notified.get("acme.com")).isNull();
+      assertThat(notified).doesNotContainKey("some.org");
+
+      // owner changes from the second source to the first one
+      write("first.txt", "www.acme.com", "some.org", "portal.some.org", "dev.acme.com");
+      service.refresh(first);
+      assertSameAsFullRun(service, files);
+
+      // removed middle domain, its child is re-parented to the remaining ancestor
+      write("second.txt", "acme.com", "db.dev.acme.com", "portal.some.org");
+      write("first.txt", "www.acme.com", "some.org");
+      service.refresh(second);
+      service.refresh(first);
+      assertSameAsFullRun(service, files);
+
+      Files.delete(second);
+      service.refresh(second);
+      assertSameAsFullRun(service, files);
+    }
+  }
+
+  @Test
+  public void testRandomChanges() throws Exception {
+    Random random = new Random(12);
+    List<Path> files = new ArrayList<>();
+    for (int i = 0; i < 3; i++) {
+      List<String> names = DomainServiceTest.randomNames(random, 200);
+      files.add(write("source" + i + ".txt", names.toArray(new String[0])));
+    }
+
+    try (IncrementalDomainService service = new IncrementalDomainService(files)) {
+      for (int round = 0; round < 10; round++) {
+        Path file = files.get(random.nextInt(files.size()));
+        List<String> names = new ArrayList<>(Files.readAllLines(file));
+        names.subList(0, random.nextInt(names.size() / 2)).clear();
+        names.addAll(DomainServiceTest.randomNames(random, 50));
+        Collections.shuffle(names, random);
+        Files.write(file, names);
+
+        service.refresh(file);
+        assertSameAsFullRun(service, files);
+      }
+    }
+  }
+
+  private static void assertSameAsFullRun(IncrementalDomainService service, List<Path> files) {
+    DomainService domainService = new DomainService();
+    List<Domain> expected = domainService.domainsWithSubDomains(NamedSources.sourcesOf(files));
+    List<Domain> expectedReport =
+        domainService.flatMapAndfilterDomainsWithDiffSourceSubDomains(expected);
+    List<Domain> domains = service.domains();
+    List<Domain> report = service.report();
+    assertThat(DomainServiceTest.describe(domains))
+        .isEqualTo(DomainServiceTest.describe(expected));
+    assertThat(DomainServiceTest.describe(report))
+        .isEqualTo(DomainServiceTest.describe(expectedReport));
+    // domains are equal with all their sources, which the description does not show
+    assertThat(domains).hasSameSizeAs(expected).containsOnlyElementsOf(expected);
+    assertThat(report).hasSameSizeAs(expectedReport).containsOnlyElementsOf(expectedReport);
+  }
+
+  private Path write(String fileName, String... lines) throws Exception {
+    Path file = folder.getRoot().toPath().resolve(fileName);
+    Files.write(file, Arrays.asList(lines), StandardCharsets.UTF_8);
+    return file;
+  }
+}
@@ -0,0 +1,92 @@
+package com.shaposhnyk;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.net.IDN;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+
+import static java.util.stream.Collectors.toList;
+import static org.assertj.core.api.Java6Assertions.assertThat;
+
+public class MappedNamedSourceTest {
+  @Rule public TemporaryFolder tmp = new TemporaryFolder();
+
+  @Test
+  public void testLines() throws IOException {
+    Path file = tmp.newFile("mapped.txt").toPath();
+    Files.write(
+        file,
+        ("internal.acme.com\r\n\n  \t\r\n.malformed.acme.com\n"
+                + "\tOne.Internal.acme.com  \n\u00C9t\u00C9.com")
+            .getBytes(StandardCharsets.UTF_8));
+
+    String ete = IDN.toASCII("\u00E9t\u00E9.com");
+    MappedNamedSource source = NamedSources.mapped(file);
+    assertThat(source.lines().collect(toList()))
+        .containsExactly("internal.acme.com", "one.internal.acme.com", ete);
+
+    List<Domain> result = new DomainService().domainsWithSubDomains(Arrays.asList(source));
+    assertThat(result).extracting(Domain::getDomainName).containsOnly("internal.acme.com", ete);
+  }
+
+  @Test
+  public void testSameLinesAndMetricsAsPlainSource() throws IOException {
+    String label = String.join("", Collections.nCopies(63, "a"));
+    String longName = String.join(".", Collections.nCopies(4, label)); // 255 characters
+    List<String> lines =
+        Arrays.asList(
+            "www.acme.com",
+            "",
+            "  \t",
+            ".bad.acme.com",
+            ".bad.acme.com",
+            "acme..com",
+            "acme.com.",
+            "acme.com. ",
+            " WWW.Acme.com\r",
+            label + ".com",
+            label + "a.com",
+            longName.substring(2),
+            longName.substring(1),
+            "ÉtÉ.com",
+            "été.com  ",
+            "été..com",
+            "été..com",
+            "db.acme.com");
+    Path file = tmp.newFile("lines.txt").toPath();
+    // the last line has no line feed
+    Files.write(file, String.join("\n", lines).getBytes(StandardCharsets.UTF_8));
+
+    NamedSource plain = NamedSources.of(file);
+    MappedNamedSource mapped = NamedSources.mapped(file);
+    assertThat(mapped.lines().collect(toList()))
+        .containsExactlyElementsOf(
+            plain.lines()
+                .map(DomainNormalizer::normalize)
+                .filter(Objects::nonNull)
+                .collect(toList()));
+
+    DomainMetrics plainMetrics = new DomainMetrics();
+    List<Domain> plainDomains =
+        new DomainService(null, plainMetrics).domainsWithSubDomains(Arrays.asList(plain));
+    DomainMetrics mappedMetrics = new DomainMetrics();
+    List<Domain> mappedDomains =
+        new DomainService(null, mappedMetrics).domainsWithSubDomains(Arrays.asList(mapped));
+
+    assertThat(mappedDomains).isEqualTo(plainDomains);
+    assertThat(mappedMetrics.getLinesRead()).isEqualTo(lines.size());
+    assertThat(mappedMetrics.getLinesRead()).isEqualTo(plainMetrics.getLinesRead());
+    assertThat(mappedMetrics.getLinesRejected()).isEqualTo(plainMetrics.getLinesRejected());
+    assertThat(mappedMetrics.getDuplicatesSkipped())
+        .isEqualTo(plainMetrics.getDuplicatesSkipped());
+  }
+}
@@ -0,0 +1,30 @@
+package com.shaposhnyk;
+
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.assertj.core.api.Java6Assertions.assertThat;
+
+public class NameDeduplicatorTest {
+  @Test
+  public void testNameDeduplicator() {
+    NameDeduplicator seen = new NameDeduplicator(4);
+    for (int i = 0; i < 10_000; i++) {
+      assertThat(seen.add("host" + i + ".acme.com")).isTrue();
+    }
+    for (int i = 0; i < 10_000; i++) {
+      assertThat(seen.add("host" + i + ".acme.com")).isFalse();
+    }
+    byte[] bytes = "host7.acme.com!".getBytes(StandardCharsets.US_ASCII);
+    assertThat(seen.add(bytes, bytes.length - 1)).isFalse();
+    assertThat(seen.add(bytes, bytes.length)).isTrue();
+    assertThat(seen.add("\u00E9t\u00E9.com")).isTrue();
+    assertThat(seen.add("\u00E9t\u00E9.com")).isFalse();
+    assertThat(seen.size()).isEqualTo(10_002);
+
+    seen.clear();
+    assertThat(seen.size()).isZero();
+    assertThat(seen.add("host7.acme.com")).isTrue();
+  }
+}
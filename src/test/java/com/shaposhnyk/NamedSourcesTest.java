@@ -0,0 +1,40 @@
+package com.shaposhnyk;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+
+import static java.util.stream.Collectors.toList;
+import static org.assertj.core.api.Java6Assertions.assertThat;
+
+public class NamedSourcesTest {
+  @Rule public TemporaryFolder tmp = new TemporaryFolder();
+
+  @Test
+  public void testGzipSource() throws IOException {
+    Path plain = tmp.newFile("plain.txt").toPath();
+    Path gzipped = tmp.newFile("gzipped.txt.gz").toPath();
+    List<String> lines = Arrays.asList("acme.com", " www.acme.com ", "", "some.org");
+    Files.write(plain, lines, StandardCharsets.UTF_8);
+    try (Writer writer =
+        new OutputStreamWriter(
+            new GZIPOutputStream(Files.newOutputStream(gzipped)), StandardCharsets.UTF_8)) {
+      for (String line : lines) {
+        writer.write(line + "\n");
+      }
+    }
+
+    assertThat(NamedSources.of(gzipped).lines().collect(toList()))
+        .isEqualTo(NamedSources.of(plain).lines().collect(toList()));
+  }
+}
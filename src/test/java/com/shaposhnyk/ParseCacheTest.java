@@ -0,0 +1,88 @@
+package com.shaposhnyk;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.Random;
+import java.util.stream.Stream;
+
+import static java.util.stream.Collectors.toList;
+import static org.assertj.core.api.Java6Assertions.assertThat;
+
+public class ParseCacheTest {
+  @Rule public TemporaryFolder tmp = new TemporaryFolder();
+
+  @Test
+  public void testCachedSource() throws IOException {
+    Path file = tmp.newFile("cached.txt").toPath();
+    List<String> lines =
+        Arrays.asList("www.acme.com", " WWW.Acme.com", "acme.com", "..bad", "", "db.acme.com");
+    Files.write(file, lines, StandardCharsets.UTF_8);
+    ParseCache cache = new ParseCache(tmp.getRoot().toPath().resolve("cache"));
+
+    assertThat(cache.isCached(file)).isFalse();
+    NamedSource source = cache.source(file);
+    assertThat(cache.isCached(file)).isTrue();
+    assertThat(source.name().toString()).isEqualTo(file.toString());
+    try (Stream<String> names = source.lines()) {
+      assertThat(names.collect(toList()))
+          .containsExactly("acme.com", "db.acme.com", "www.acme.com");
+    }
+    DomainService domainSrv = new DomainService();
+    List<Domain> parsed = domainSrv.domainsWithSubDomains(Arrays.asList(NamedSources.of(file)));
+    List<Domain> cached = domainSrv.domainsWithSubDomainsBulk(Arrays.asList(source));
+    assertThat(DomainServiceTest.describe(cached)).isEqualTo(DomainServiceTest.describe(parsed));
+
+    // a touched file has the same content
+    Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis() + 60_000));
+    assertThat(cache.isCached(file)).isTrue();
+
+    Files.write(file, Arrays.asList("mail.acme.com", "acme.org"), StandardCharsets.UTF_8);
+    assertThat(cache.isCached(file)).isFalse();
+    try (Stream<String> names = cache.source(file).lines()) {
+      assertThat(names.collect(toList()))
+          .containsExactly("mail.acme.com", "acme.org");
+    }
+
+    // a change of the same size and time right after parsing is found by the content
+    FileTime modified = Files.getLastModifiedTime(file);
+    Files.write(file, Arrays.asList("mail.acme.com", "acme.net"), StandardCharsets.UTF_8);
+    Files.setLastModifiedTime(file, modified);
+    assertThat(cache.isCached(file)).isFalse();
+  }
+
+  @Test
+  public void testFileLargerThanBudget() throws IOException {
+    Path file = tmp.newFile("large.txt").toPath();
+    List<String> lines = DomainServiceTest.randomNames(new Random(9), 5_000);
+    Files.write(file, lines, StandardCharsets.UTF_8);
+    Path directory = tmp.getRoot().toPath().resolve("cache");
+    ParseCache cache = new ParseCache(directory, 4_096);
+
+    List<String> expected =
+        lines.stream()
+            .map(DomainNames::normalize)
+            .filter(Objects::nonNull)
+            .distinct()
+            .sorted(DomainNames.LABEL_ORDER)
+            .collect(toList());
+    try (Stream<String> names = cache.source(file).lines()) {
+      assertThat(names.collect(toList())).containsExactlyElementsOf(expected);
+    }
+    assertThat(cache.isCached(file)).isTrue();
+    try (Stream<Path> entries = Files.list(directory)) {
+      assertThat(entries.map(entry -> entry.getFileName().toString()).collect(toList()))
+          .hasSize(1)
+          .allMatch(name -> name.endsWith(".names"));
+    }
+  }
+}
@@ -0,0 +1,103 @@
+package com.shaposhnyk;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.net.IDN;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Java6Assertions.assertThat;
+
+public class ReportSinkTest {
+  @Rule public TemporaryFolder folder = new TemporaryFolder();
+
+  private final DomainService domainSrv = new DomainService();
+  private final List<NamedSource> sources =
+      NamedSources.sourcesOf("/domains1.txt", "/domains2.txt", "/domains3.txt");
+
+  @Test
+  public void testTextIsSameAsPrinted() {
+    List<Domain> report =
+        domainSrv.flatMapAndfilterDomainsWithDiffSourceSubDomains(
+            domainSrv.domainsWithSubDomains(sources));
+    StringBuilder expected = new StringBuilder();
+    for (Domain d : report) { // the format of former printing with String.format
+      expected.append(String.format("%s%s (%s)%n", "", d, d.getSourceLocation().getFileName()));
+      for (Domain sd : d.getSubDomains()) {
+        expected.append(
+            String.format("%s%s (%s)%n", "  ", sd, sd.getSourceLocation().getFileName()));
+      }
+    }
+
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    try (ReportSink sink = ReportSinks.text(out)) {
+      domainSrv.solveProblem(sources, sink);
+    }
+
+    assertThat(report).isNotEmpty();
+    assertThat(new String(out.toByteArray(), StandardCharsets.UTF_8))
+        .isEqualTo(expected.toString());
+  }
+
+  @Test
+  public void testJsonLines() {
+    Domain acme =
+        Domain.of(
+            "acme.com",
+            Paths.get("dir/a.txt"),
+            Domain.of("www.acme.com", Paths.get("b\"1\".txt")),
+            Domain.of("\u0434\u043e\u043c.acme.com", null));
+
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    try (ReportSink sink = ReportSinks.jsonLines(out)) {
+      sink.write(acme);
+      sink.write(Domain.of("some.org", Paths.get("c.txt")));
+    }
+
+    assertThat(new String(out.toByteArray(), StandardCharsets.UTF_8))
+        .isEqualTo(
+            "{\"domain\":\"acme.com\",\"source\":\"dir/a.txt\",\"subDomains\":["
+                + "{\"domain\":\"www.acme.com\",\"source\":\"b\\\"1\\\".txt\"},"
+                + "{\"domain\":\""
+                + IDN.toASCII("\u0434\u043e\u043c.acme.com")
+                + "\",\"source\":null}]}\n"
+                + "{\"domain\":\"some.org\",\"source\":\"c.txt\",\"subDomains\":[]}\n");
+  }
+
+  @Test
+  public void testBinaryRoundTrip() throws Exception {
+    List<Domain> report =
+        domainSrv.flatMapAndfilterDomainsWithDiffSourceSubDomains(
+            domainSrv.domainsWithSubDomains(DomainServiceTest.randomSources(4, 2_000, 3)));
+
+    Path file = folder.newFile().toPath();
+    try (ReportSink sink =
+        ReportSinks.binary(FileChannel.open(file, StandardOpenOption.WRITE))) {
+      report.forEach(sink::write);
+    }
+
+    List<Domain> read = new ArrayList<>();
+    ReportSinks.readBinary(new ByteArrayInputStream(Files.readAllBytes(file)), read::add);
+
+    assertThat(report).isNotEmpty();
+    assertThat(text(read)).isEqualTo(text(report));
+  }
+
+  private static String text(List<Domain> report) {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    try (ReportSink sink = ReportSinks.text(out)) {
+      report.forEach(sink::write);
+    }
+    return new String(out.toByteArray(), StandardCharsets.UTF_8);
+  }
+}
@@ -0,0 +1,82 @@
+package com.shaposhnyk;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+import static org.assertj.core.api.Java6Assertions.assertThat;
+import static org.assertj.core.api.Java6Assertions.assertThatThrownBy;
+
+public class ShardedDomainJobTest {
+  @Rule public TemporaryFolder tmp = new TemporaryFolder();
+
+  @Test
+  public void testSameAsSingleProcess() throws IOException {
+    List<NamedSource> src = DomainServiceTest.randomSources(6, 2_000, 23);
+    ByteArrayOutputStream single = new ByteArrayOutputStream();
+    try (ReportSink sink = ReportSinks.text(single)) {
+      new DomainService().solveProblem(src, sink);
+    }
+
+    for (int labels = 1; labels <= 2; labels++) {
+      Path jobDir = tmp.newFolder().toPath();
+      ShardedDomainJob job = new ShardedDomainJob();
+      job.split(src, jobDir, 3, labels);
+      for (int shard = 2; shard >= 0; shard--) {
+        job.processShard(jobDir, shard);
+      }
+      Path report = jobDir.resolve("report.txt");
+      job.concat(jobDir, report);
+      byte[] sharded = Files.readAllBytes(report);
+
+      assertThat(reportGroups(new String(sharded, StandardCharsets.UTF_8)))
+          .isEqualTo(reportGroups(new String(single.toByteArray(), StandardCharsets.UTF_8)));
+      // deterministic regardless of the order shards are processed in
+      job.processShard(jobDir, 0);
+      job.concat(jobDir, report);
+      assertThat(Files.readAllBytes(report)).isEqualTo(sharded);
+    }
+  }
+
+  @Test
+  public void testShortNamesAreRejected() throws IOException {
+    assertThat(ShardedDomainJob.shardOf("www.acme.com", 5, 2))
+        .isEqualTo(ShardedDomainJob.shardOf("acme.com", 5, 2));
+    assertThatThrownBy(() -> ShardedDomainJob.shardOf("com", 5, 2))
+        .isInstanceOf(IllegalArgumentException.class);
+
+    // a short name at the end of the last source is found before any shard file is written
+    List<NamedSource> src = DomainServiceTest.randomSources(2, 1_000, 5);
+    src.add(NamedSources.of(Paths.get("short"), Arrays.asList("www.acme.com", " COM")));
+    Path jobDir = tmp.newFolder().toPath();
+    assertThatThrownBy(() -> new ShardedDomainJob().split(src, jobDir, 3, 2))
+        .isInstanceOf(IllegalArgumentException.class)
+        .hasMessageContaining("com of short");
+    assertThat(jobDir.toFile().list()).isEmpty();
+  }
+
+  /** @return report split into groups of a top-level domain, sorted */
+  private static List<String> reportGroups(String report) {
+    List<String> groups = new ArrayList<>();
+    for (String line : report.split(System.lineSeparator())) {
+      if (line.startsWith(" ")) {
+        groups.set(groups.size() - 1, groups.get(groups.size() - 1) + "\n" + line);
+      } else {
+        groups.add(line);
+      }
+    }
+    groups.sort(Comparator.naturalOrder());
+    return groups;
+  }
+}